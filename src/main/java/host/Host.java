@@ -6,6 +6,7 @@ import java.util.List;
 import client.Client;
 import client.SpectatorClient;
 
+import mafia.engine.config.loader.RuleSetWatcher;
 import mafia.engine.core.GameConfiguration;
 import mafia.engine.core.GameEngine;
 import mafia.engine.core.GameRules;
@@ -31,6 +32,8 @@ public class Host {
 
     private GameConfiguration gameConfig;
     private GameRules gameRules;
+    // when set, each game takes the configuration and rules of its current version
+    private RuleSetWatcher ruleSets;
 
     private List<Role> primaryRoles, secondaryRoles;
 
@@ -45,6 +48,15 @@ public class Host {
         this.gameRules = gameRules;
     }
 
+    /**
+     * Starts every later game with the configuration and rules of the
+     * version of {@code ruleSets} current at that time. A game keeps its
+     * version until it ends.
+     */
+    public void configure(RuleSetWatcher ruleSets) {
+        this.ruleSets = ruleSets;
+    }
+
     public void preset(Preset preset) {
         this.preset = preset;
     }
@@ -65,6 +77,11 @@ public class Host {
     }
 
     public void startGame() {
+        if (ruleSets != null) {
+            var ruleSet = ruleSets.current().ruleSet();
+            configure(ruleSet.configuration(), ruleSet.rules());
+        }
+
         var players = new ArrayList<>(StreamUtils.mapToList(clients, Client::player));
         players.forEach(p -> p.state(PlayerState.ALIVE));
         engine = new GameEngine(players, primaryRoles, secondaryRoles, preset, gameRules);
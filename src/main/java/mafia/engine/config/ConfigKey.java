@@ -0,0 +1,64 @@
+package mafia.engine.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * Interned name of a configuration within its category. There is one key per
+ * name, so keys compare by identity, and each has a small {@link #index()}
+ * under which a {@link mafia.engine.core.GameConfiguration} keeps the
+ * configuration.
+ */
+@Getter
+@Accessors(fluent = true)
+public final class ConfigKey {
+
+    private static final Map<String, Map<String, ConfigKey>> KEYS = new ConcurrentHashMap<>();
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private final String category;
+    private final String configurationName;
+    private final int index;
+
+    private ConfigKey(String category, String configurationName, int index) {
+        this.category = category;
+        this.configurationName = configurationName;
+        this.index = index;
+    }
+
+    public static ConfigKey of(String category, String configurationName) {
+        var names = KEYS.get(category);
+        var key = names == null ? null : names.get(configurationName);
+        if (key != null) {
+            return key;
+        }
+        return KEYS.computeIfAbsent(category, _ -> new ConcurrentHashMap<>())
+            .computeIfAbsent(configurationName, _ -> new ConfigKey(category, configurationName, COUNT.getAndIncrement()));
+    }
+
+    /**
+     * The key already interned for this name, or {@code null} if there is
+     * none. Unlike {@link #of} it never adds a key, so names that are only
+     * queried do not stay behind.
+     */
+    public static ConfigKey find(String category, String configurationName) {
+        var names = KEYS.get(category);
+        return names == null ? null : names.get(configurationName);
+    }
+
+    /**
+     * Number of keys interned so far, one more than the highest index.
+     */
+    public static int count() {
+        return COUNT.get();
+    }
+
+    @Override
+    public String toString() {
+        return category + "." + configurationName;
+    }
+}
@@ -2,14 +2,12 @@ package mafia.engine.config;
 
 import java.time.Duration;
 import java.util.List;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 import mafia.engine.property.Properties;
 import mafia.engine.property.PropertyHolder;
 
@@ -17,20 +15,51 @@ import mafia.engine.property.PropertyHolder;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Configuration implements PropertyHolder {
 
-    @Getter @Setter
+    @Getter
     private String configurationName, displayName;
 
-    @Getter @Setter
+    @Getter
     private ValueType valueType;
 
     private Object value;
+    // the value decoded once when it is set: 0 or 1 for booleans, integers as is
+    private long decoded;
+    private Duration duration;
 
-    @Getter @Setter
+    @Getter
     private List<Object> selectionValues;
 
-    @Getter @Setter
+    @Getter
     private List<String> configurationDescription;
 
+    // read-only view for expressions, built on first use and dropped on any change
+    private volatile Properties properties;
+
+    public void setConfigurationName(String configurationName) {
+        this.configurationName = configurationName;
+        properties = null;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+        properties = null;
+    }
+
+    public void setValueType(ValueType valueType) {
+        this.valueType = valueType;
+        properties = null;
+    }
+
+    public void setSelectionValues(List<Object> selectionValues) {
+        this.selectionValues = selectionValues;
+        properties = null;
+    }
+
+    public void setConfigurationDescription(List<String> configurationDescription) {
+        this.configurationDescription = configurationDescription;
+        properties = null;
+    }
+
     public void setValue(Object value) {
         if (!isValidValue(value)) {
             var message = "Invalid value for type of %s : %s in configuration %s"
@@ -38,29 +67,28 @@ public class Configuration implements PropertyHolder {
             throw new IllegalArgumentException(message);
         }
         this.value = value;
+        switch (valueType) {
+            case BOOLEAN -> decoded = (Boolean) value ? 1 : 0;
+            case INTEGER -> decoded = (Integer) value;
+            case DURATION -> duration = parseDuration((String) value);
+            default -> {}
+        }
+        properties = null;
     }
 
     public boolean getBooleanValue() {
         validateConvertion(valueType, ValueType.BOOLEAN);
-        return Boolean.valueOf(getStringValue());
+        return decoded != 0;
     }
 
     public int getIntegerValue() {
         validateConvertion(valueType, ValueType.INTEGER);
-        return Integer.parseInt(getStringValue());
+        return (int) decoded;
     }
 
     public Duration getDurationValue() {
         validateConvertion(valueType, ValueType.DURATION);
-        var durationString = getStringValue();
-        var pattern = Pattern.compile("[h|m|s|ms]", Pattern.CASE_INSENSITIVE);
-        var i = Integer.parseInt(pattern.matcher(getStringValue()).replaceAll(""));
-        return switch (durationString.charAt(durationString.length() - 1)) {
-            case 's', 'S' -> Duration.ofSeconds(i);
-            case 'm', 'M' -> Duration.ofMinutes(i);
-            case 'h', 'H' -> Duration.ofHours(i);
-            default -> throw new IllegalStateException("Unexpected duration: " + getStringValue());
-        };
+        return duration;
     }
 
     public String getStringValue() {
@@ -83,6 +111,16 @@ public class Configuration implements PropertyHolder {
         };
     }
 
+    private static Duration parseDuration(String durationString) {
+        var i = Integer.parseInt(durationString, 0, durationString.length() - 1, 10);
+        return switch (durationString.charAt(durationString.length() - 1)) {
+            case 's', 'S' -> Duration.ofSeconds(i);
+            case 'm', 'M' -> Duration.ofMinutes(i);
+            case 'h', 'H' -> Duration.ofHours(i);
+            default -> throw new IllegalStateException("Unexpected duration: " + durationString);
+        };
+    }
+
     private boolean isValidDuration(Object value) {
         return value instanceof String strValue && strValue.matches("\\d+[smh]");
     }
@@ -106,14 +144,24 @@ public class Configuration implements PropertyHolder {
             );
     }
 
+    /**
+     * A read-only snapshot of this configuration, the same object until one
+     * of its fields is set again.
+     */
     @Override
     public Properties getProperties() {
-        return new Properties("configuration")
-            .addProperty("configurationName", configurationName)
-            .addProperty("displayName", displayName)
-            .addProperty("valueType", valueType)
-            .addProperty("value", value)
-            .addProperty("selectionValues", selectionValues)
-            .addProperty("configurationDescription", configurationDescription);
+        var current = properties;
+        if (current == null) {
+            current = new Properties("configuration")
+                .addProperty("configurationName", configurationName)
+                .addProperty("displayName", displayName)
+                .addProperty("valueType", valueType)
+                .addProperty("value", value)
+                .addProperty("selectionValues", selectionValues)
+                .addProperty("configurationDescription", configurationDescription)
+                .snapshot();
+            properties = current;
+        }
+        return current;
     }
 }
@@ -0,0 +1,36 @@
+package mafia.engine.config;
+
+import java.util.List;
+
+import mafia.engine.core.GameConfiguration;
+import mafia.engine.core.GameRules;
+
+/**
+ * Everything a game is set up from, as read from the rule files of one
+ * directory.
+ */
+public record RuleSet(
+    RoleConfig primaryRoles,
+    RoleConfig secondaryRoles,
+    PresetsConfig presets,
+    GameConfiguration configuration,
+    GameRules rules
+) {
+
+    public static final String PRIMARY_ROLES = "PrimaryRoles.yaml";
+    public static final String SECONDARY_ROLES = "SecondaryRoles.yaml";
+    public static final String PRESETS = "Presets.yaml";
+    public static final String CONFIGURATION = "GameConfiguration.yaml";
+    public static final String RULES = "GameRules.yaml";
+
+    /**
+     * Names of the rule files, in the order of the components.
+     */
+    public static final List<String> FILES = List.of(
+        PRIMARY_ROLES,
+        SECONDARY_ROLES,
+        PRESETS,
+        CONFIGURATION,
+        RULES
+    );
+}
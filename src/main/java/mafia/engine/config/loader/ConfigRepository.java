@@ -0,0 +1,125 @@
+package mafia.engine.config.loader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import mafia.engine.config.PresetsConfig;
+import mafia.engine.config.RoleConfig;
+import mafia.engine.config.RuleSet;
+import mafia.engine.core.GameConfiguration;
+import mafia.engine.core.GameRules;
+
+/**
+ * Reads rule files with one YAML mapper and a reader per type, both of which
+ * are safe to share between threads. The files of a {@link RuleSet} do not
+ * depend on each other, so they are read at the same time.
+ */
+public final class ConfigRepository {
+
+    private final ObjectMapper mapper;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    // how long the last read of each file took, in the order they finished
+    private final Map<Path, Duration> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public ConfigRepository(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * The repository reading YAML, created on first use so that starting from
+     * a {@link RuleBundle} never loads the YAML parser.
+     */
+    public static ConfigRepository yaml() {
+        return Yaml.REPOSITORY;
+    }
+
+    public <T> T load(Path file, Class<T> type) throws IOException {
+        var reader = readers.computeIfAbsent(type, mapper::readerFor);
+        long start = System.nanoTime();
+        T value = reader.readValue(file.toFile());
+        timings.put(file, Duration.ofNanos(System.nanoTime() - start));
+        return value;
+    }
+
+    public JsonNode readTree(Path file) throws IOException {
+        long start = System.nanoTime();
+        var tree = mapper.readTree(file.toFile());
+        timings.put(file, Duration.ofNanos(System.nanoTime() - start));
+        return tree;
+    }
+
+    /**
+     * Reads the rule files of {@code directory}, each on its own virtual
+     * thread.
+     */
+    public RuleSet loadRuleSet(Path directory) throws IOException {
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var primaryRoles = executor.submit(loader(directory, RuleSet.PRIMARY_ROLES, RoleConfig.class));
+            var secondaryRoles = executor.submit(loader(directory, RuleSet.SECONDARY_ROLES, RoleConfig.class));
+            var presets = executor.submit(loader(directory, RuleSet.PRESETS, PresetsConfig.class));
+            var configuration = executor.submit(loader(directory, RuleSet.CONFIGURATION, GameConfiguration.class));
+            var rules = executor.submit(loader(directory, RuleSet.RULES, GameRules.class));
+            return new RuleSet(
+                join(primaryRoles),
+                join(secondaryRoles),
+                join(presets),
+                join(configuration),
+                join(rules)
+            );
+        }
+    }
+
+    /**
+     * How long the last read of each file took.
+     */
+    public Map<Path, Duration> timings() {
+        synchronized (timings) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+        }
+    }
+
+    private <T> Callable<T> loader(Path directory, String file, Class<T> type) {
+        var path = directory.resolve(file);
+        return () -> load(path, type);
+    }
+
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the rule files");
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static final class Yaml {
+        static final ConfigRepository REPOSITORY = new ConfigRepository(new ObjectMapper(new YAMLFactory()));
+    }
+}
@@ -2,13 +2,15 @@ package mafia.engine.config.loader;
 
 import java.nio.file.Path;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import mafia.engine.config.RuleSet;
 
 public class Loader {
     
     public static <T> T load(String path, Class<T> clazz) throws Exception {
-        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-        return mapper.readValue(Path.of(path).toFile(), clazz);
+        return ConfigRepository.yaml().load(Path.of(path), clazz);
     }
-}
\ No newline at end of file
+
+    public static RuleSet loadRuleSet(Path directory) throws Exception {
+        return ConfigRepository.yaml().loadRuleSet(directory);
+    }
+}
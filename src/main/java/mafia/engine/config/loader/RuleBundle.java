@@ -0,0 +1,399 @@
+package mafia.engine.config.loader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import mafia.engine.config.PresetsConfig;
+import mafia.engine.config.RoleConfig;
+import mafia.engine.config.RuleSet;
+import mafia.engine.core.GameConfiguration;
+import mafia.engine.core.GameRules;
+import mafia.engine.core.GameSchema;
+import mafia.engine.expression.ExpressionCache;
+import mafia.engine.expression.checker.EnumComparison;
+import mafia.engine.expression.checker.TypeChecker;
+import mafia.engine.expression.function.FunctionRegistry;
+import mafia.engine.expression.lexer.Lexer;
+import mafia.engine.expression.lexer.Token.Type;
+import mafia.engine.expression.optimizer.Optimizer;
+import mafia.engine.expression.optimizer.Optimizer.Optimization;
+import mafia.engine.expression.parser.Call;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.expression.parser.Parser;
+
+import tui.SplitPrinter;
+
+/**
+ * A {@link RuleSet} compiled ahead of time into one binary file, so that a
+ * starting process neither parses YAML nor lexes and parses the rules.
+ * <p>
+ * The bundle holds the documents of the rule files, and the optimized trees
+ * of the rules, type checked against {@link GameSchema}, and of the ability
+ * conditions and triggers. It is tagged with a hash of the rule files, of
+ * the schema and functions the trees were built against and of the versions
+ * of the optimizer and checker, and is only used while none of them change.
+ * Reading it maps the file and hands the trees to the shared
+ * {@link ExpressionCache}, which then compiles them without going through
+ * the text.
+ * </p>
+ */
+public final class RuleBundle {
+
+    public static final String FILE_NAME = "rules.bundle";
+
+    private static final int MAGIC = 0x4D524231;    // MRB1
+    // to be raised whenever the encoding changes
+    private static final int FORMAT = 2;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final byte NULL = 0, FALSE = 1, TRUE = 2, INT = 3, LONG = 4, DOUBLE = 5, DECIMAL = 6,
+        TEXT = 7, ARRAY = 8, OBJECT = 9, BIG_INTEGER = 10;
+    private static final byte NO_NODE = 0, NODE = 1, ENUM_COMPARISON = 2;
+
+    // the scope of an expression, or none when it is not type checked
+    private record Expression(String text, String scope, Optimization optimization) {}
+
+    private RuleBundle() {}
+
+    /**
+     * The rule set of {@code directory}, read from its bundle when it was
+     * compiled from the current rule files and from the rule files otherwise.
+     */
+    public static RuleSet open(Path directory) throws Exception {
+        var bundle = directory.resolve(FILE_NAME);
+        if (Files.isRegularFile(bundle)) {
+            try {
+                var ruleSet = read(bundle, hash(directory));
+                if (ruleSet != null) {
+                    return ruleSet;
+                }
+                SplitPrinter.println("engine", "Ignored " + bundle + ", it does not match the current rule files and engine");
+            } catch (IOException | RuntimeException e) {
+                SplitPrinter.println("engine", "Ignored " + bundle + ", it could not be read: " + e);
+            }
+        }
+        return Loader.loadRuleSet(directory);
+    }
+
+    /**
+     * Compiles the rule files of {@code directory} into {@code bundle},
+     * replacing it.
+     *
+     * @throws mafia.engine.expression.checker.TypeMismatchException if a rule
+     *         does not fit the schema
+     */
+    public static void compile(Path directory, Path bundle) throws Exception {
+        var repository = ConfigRepository.yaml();
+        var documents = new JsonNode[RuleSet.FILES.size()];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = repository.readTree(directory.resolve(RuleSet.FILES.get(i)));
+        }
+        var expressions = expressions(ruleSet(JSON, documents));
+
+        var temporary = bundle.resolveSibling(bundle.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.write(hash(directory));
+
+            out.writeInt(documents.length);
+            for (var document : documents) {
+                writeTree(out, document);
+            }
+
+            out.writeInt(expressions.size());
+            for (var expression : expressions) {
+                writeString(out, expression.text());
+                writeString(out, expression.scope() == null ? "" : expression.scope());
+                var rewrites = expression.optimization().rewrites();
+                out.writeInt(rewrites.size());
+                for (var rewrite : rewrites) {
+                    writeString(out, rewrite);
+                }
+                writeNode(out, expression.optimization().node());
+            }
+        }
+        // a process opening the bundle meanwhile sees the old or the new one
+        Files.move(temporary, bundle, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static RuleSet read(Path bundle, byte[] hash) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(bundle, StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.remaining() < 8 + hash.length || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+            return null;
+        }
+        var stored = new byte[hash.length];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, hash)) {
+            return null;
+        }
+
+        var documents = new JsonNode[buffer.getInt()];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = readTree(buffer);
+        }
+        // plain JSON binding, so the YAML parser is never loaded
+        var ruleSet = ruleSet(JSON, documents);
+
+        var expressions = new ArrayList<Expression>();
+        for (int count = buffer.getInt(); count > 0; count--) {
+            var text = readString(buffer);
+            var scope = readString(buffer);
+            var rewrites = new String[buffer.getInt()];
+            for (int i = 0; i < rewrites.length; i++) {
+                rewrites[i] = readString(buffer);
+            }
+            var optimization = new Optimization(readNode(buffer), List.of(rewrites));
+            expressions.add(new Expression(text, scope.isEmpty() ? null : scope, optimization));
+        }
+
+        // only once the whole bundle was read
+        var cache = ExpressionCache.shared();
+        for (var expression : expressions) {
+            var schema = expression.scope() == null ? null : GameSchema.SCHEMA;
+            cache.preload(expression.text(), schema, expression.scope(), expression.optimization());
+        }
+        return ruleSet;
+    }
+
+    private static RuleSet ruleSet(ObjectMapper mapper, JsonNode[] documents) throws IOException {
+        return new RuleSet(
+            mapper.treeToValue(document(documents, RuleSet.PRIMARY_ROLES), RoleConfig.class),
+            mapper.treeToValue(document(documents, RuleSet.SECONDARY_ROLES), RoleConfig.class),
+            mapper.treeToValue(document(documents, RuleSet.PRESETS), PresetsConfig.class),
+            mapper.treeToValue(document(documents, RuleSet.CONFIGURATION), GameConfiguration.class),
+            mapper.treeToValue(document(documents, RuleSet.RULES), GameRules.class)
+        );
+    }
+
+    // the documents are stored in the order of the rule files
+    private static JsonNode document(JsonNode[] documents, String file) {
+        return documents[RuleSet.FILES.indexOf(file)];
+    }
+
+    /**
+     * The rules, checked as the engine loads them, and the ability conditions
+     * and triggers, which the engine evaluates unchecked.
+     */
+    private static List<Expression> expressions(RuleSet ruleSet) {
+        var lexer = new Lexer();
+        var parser = new Parser();
+        var optimizer = new Optimizer();
+        var checker = new TypeChecker(GameSchema.SCHEMA);
+
+        var expressions = new LinkedHashMap<List<String>, Expression>();
+        ruleSet.rules().getRules().forEach((category, rules) -> {
+            var scope = GameSchema.scopeOf(category);
+            for (var rule : rules) {
+                var optimization = optimizer.optimize(parser.parse(lexer.tokenize(rule)));
+                var node = checker.check(rule, optimization.node(), scope);
+                expressions.put(
+                    Arrays.asList(rule, scope),
+                    new Expression(rule, scope, new Optimization(node, optimization.rewrites()))
+                );
+            }
+        });
+
+        var roles = new ArrayList<>(ruleSet.primaryRoles().getRoles());
+        roles.addAll(ruleSet.secondaryRoles().getRoles());
+        for (var role : roles) {
+            if (role.getAbilities() == null) {
+                continue;
+            }
+            for (var ability : role.getAbilities()) {
+                var texts = new ArrayList<String>();
+                if (ability.conditions() != null) {
+                    texts.addAll(ability.conditions());
+                }
+                if (ability.trigger() != null) {
+                    texts.add(ability.trigger());
+                }
+                for (var text : texts) {
+                    try {
+                        var optimization = optimizer.optimize(parser.parse(lexer.tokenize(text)));
+                        expressions.put(Arrays.asList(text, null), new Expression(text, null, optimization));
+                    } catch (RuntimeException e) {
+                        // left to the engine, which makes a malformed condition undefined
+                    }
+                }
+            }
+        }
+        return List.copyOf(expressions.values());
+    }
+
+    private static byte[] hash(Path directory) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (var file : RuleSet.FILES) {
+            var content = Files.readAllBytes(directory.resolve(file));
+            digest.update(file.getBytes(StandardCharsets.UTF_8));
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, content.length));
+            digest.update(content);
+        }
+
+        // what the stored trees were built with
+        digest.update(ByteBuffer.allocate(3 * Integer.BYTES).putInt(FORMAT).putInt(Optimizer.VERSION).putInt(TypeChecker.VERSION).array());
+        digest.update(GameSchema.SCHEMA.fingerprint().getBytes(StandardCharsets.UTF_8));
+        digest.update(FunctionRegistry.standard().fingerprint().getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    private static void writeTree(DataOutputStream out, JsonNode node) throws IOException {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            out.writeByte(NULL);
+        } else if (node.isBoolean()) {
+            out.writeByte(node.booleanValue() ? TRUE : FALSE);
+        } else if (node.isInt()) {
+            out.writeByte(INT);
+            out.writeInt(node.intValue());
+        } else if (node.isLong()) {
+            out.writeByte(LONG);
+            out.writeLong(node.longValue());
+        } else if (node.isDouble() || node.isFloat()) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(node.doubleValue());
+        } else if (node.isBigInteger()) {
+            out.writeByte(BIG_INTEGER);
+            writeString(out, node.bigIntegerValue().toString());
+        } else if (node.isNumber()) {
+            out.writeByte(DECIMAL);
+            writeString(out, node.decimalValue().toString());
+        } else if (node.isTextual()) {
+            out.writeByte(TEXT);
+            writeString(out, node.textValue());
+        } else if (node.isArray()) {
+            out.writeByte(ARRAY);
+            out.writeInt(node.size());
+            for (var element : node) {
+                writeTree(out, element);
+            }
+        } else if (node.isObject()) {
+            out.writeByte(OBJECT);
+            out.writeInt(node.size());
+            for (var field : node.properties()) {
+                writeString(out, field.getKey());
+                writeTree(out, field.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot bundle a value of type " + node.getNodeType());
+        }
+    }
+
+    private static JsonNode readTree(ByteBuffer buffer) {
+        var factory = JsonNodeFactory.instance;
+        return switch (buffer.get()) {
+            case NULL -> factory.nullNode();
+            case FALSE -> factory.booleanNode(false);
+            case TRUE -> factory.booleanNode(true);
+            case INT -> factory.numberNode(buffer.getInt());
+            case LONG -> factory.numberNode(buffer.getLong());
+            case DOUBLE -> factory.numberNode(buffer.getDouble());
+            case DECIMAL -> factory.numberNode(new BigDecimal(readString(buffer)));
+            case BIG_INTEGER -> factory.numberNode(new BigInteger(readString(buffer)));
+            case TEXT -> factory.textNode(readString(buffer));
+            case ARRAY -> {
+                ArrayNode array = factory.arrayNode();
+                for (int size = buffer.getInt(); size > 0; size--) {
+                    array.add(readTree(buffer));
+                }
+                yield array;
+            }
+            case OBJECT -> {
+                ObjectNode object = factory.objectNode();
+                for (int size = buffer.getInt(); size > 0; size--) {
+                    object.set(readString(buffer), readTree(buffer));
+                }
+                yield object;
+            }
+            default -> throw new IllegalStateException("Corrupt rule bundle");
+        };
+    }
+
+    private static void writeNode(DataOutputStream out, Node node) throws IOException {
+        if (node == null) {
+            out.writeByte(NO_NODE);
+            return;
+        }
+
+        if (node instanceof EnumComparison comparison) {
+            out.writeByte(ENUM_COMPARISON);
+            writeString(out, comparison.constant().getDeclaringClass().getName());
+            writeString(out, comparison.constant().name());
+        } else {
+            out.writeByte(NODE);
+        }
+        out.writeByte(node.type().ordinal());
+        writeString(out, node.value());
+        writeNode(out, node.left());
+        writeNode(out, node.right());
+    }
+
+    private static Node readNode(ByteBuffer buffer) {
+        var tag = buffer.get();
+        if (tag == NO_NODE) {
+            return null;
+        }
+
+        Enum<?> constant = tag == ENUM_COMPARISON ? constant(readString(buffer), readString(buffer)) : null;
+        var node = new Node(Type.values()[buffer.get()], readString(buffer), readNode(buffer), readNode(buffer));
+        if (node.type() == Type.CALL) {
+            var arguments = Call.unchain(node.right());
+            return new Call(FunctionRegistry.standard().resolve(node.left().value(), arguments.length), arguments);
+        }
+        return constant == null ? node : new EnumComparison(node, node.left(), constant);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Enum<?> constant(String className, String name) {
+        try {
+            return Enum.valueOf((Class) Class.forName(className), name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Corrupt rule bundle", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
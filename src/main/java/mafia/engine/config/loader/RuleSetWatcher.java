@@ -0,0 +1,152 @@
+package mafia.engine.config.loader;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import mafia.engine.config.RuleSet;
+import mafia.engine.core.GameConfiguration;
+import mafia.engine.core.GameSchema;
+import mafia.engine.expression.ExpressionEngine;
+import mafia.engine.expression.ExpressionEngine.Backend;
+
+import tui.SplitPrinter;
+
+/**
+ * The current {@link RuleSet} of a directory, reloaded whenever one of its
+ * rule files changes.
+ * <p>
+ * A reload reads and checks the files on the watching thread, compiling the
+ * rules into the shared expression cache, and only then replaces the current
+ * version. Files that fail to load or to check leave the current version in
+ * place until they are changed again. Every version is read into new
+ * objects, so a game started from one keeps playing by it while later games
+ * get the newer versions. Those objects are not copied for each game: games
+ * started from the same version share its configuration and rules.
+ * </p>
+ */
+public final class RuleSetWatcher implements AutoCloseable {
+
+    // events arriving this soon after one another are handled as one change
+    private static final long SETTLE_MILLIS = 200;
+
+    /**
+     * A published rule set, numbered from 1 in the order they were loaded.
+     */
+    public record Version(long number, RuleSet ruleSet) {}
+
+    private final Path directory;
+    private final AtomicReference<Version> current;
+    private final List<Consumer<Version>> listeners = new CopyOnWriteArrayList<>();
+    private final WatchService watchService;
+    // not synchronized: loading blocks on virtual threads, which must not pin a carrier
+    private final Lock reloading = new ReentrantLock();
+
+    private RuleSetWatcher(Path directory, RuleSet initial) throws IOException {
+        this.directory = directory;
+        this.current = new AtomicReference<>(new Version(1, initial));
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        Thread.ofPlatform().name("rule-watcher").daemon().start(this::watch);
+    }
+
+    /**
+     * Opens the rule set of {@code directory} as {@link RuleBundle#open}
+     * does and starts watching its files.
+     */
+    public static RuleSetWatcher watch(Path directory) throws Exception {
+        return new RuleSetWatcher(directory, RuleBundle.open(directory));
+    }
+
+    public Version current() {
+        return current.get();
+    }
+
+    /**
+     * Calls {@code listener} with every version published after this one.
+     */
+    public void onReload(Consumer<Version> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Reads and checks the rule files now, publishing them as the next
+     * version.
+     *
+     * @throws mafia.engine.expression.checker.TypeMismatchException if a rule
+     *         does not fit the schema
+     */
+    public Version reload() throws Exception {
+        reloading.lock();
+        try {
+            var ruleSet = ConfigRepository.yaml().loadRuleSet(directory);
+            validate(ruleSet);
+
+            var version = current.updateAndGet(previous -> new Version(previous.number() + 1, ruleSet));
+            listeners.forEach(listener -> listener.accept(version));
+            return version;
+        } finally {
+            reloading.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                var key = watchService.take();
+                var changed = false;
+                // an editor saving a file may write it several times
+                while (key != null) {
+                    for (var event : key.pollEvents()) {
+                        if (event.context() instanceof Path file && RuleSet.FILES.contains(file.toString())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (Exception e) {
+                        SplitPrinter.println("engine", "Kept rule set version " + current().number()
+                            + ", the rule files of " + directory + " were rejected: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private static void validate(RuleSet ruleSet) {
+        for (var key : GameConfiguration.REQUIRED) {
+            if (ruleSet.configuration().getConfiguration(key) == null) {
+                throw new IllegalStateException("Missing configuration: " + key);
+            }
+        }
+
+        // checks every rule and leaves it compiled by each backend for the games to come
+        var rules = GameSchema.rulesByScope(ruleSet.rules());
+        for (var backend : Backend.values()) {
+            new ExpressionEngine(backend).loadExpressions(rules, GameSchema.SCHEMA);
+        }
+    }
+}
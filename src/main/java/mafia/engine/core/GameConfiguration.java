@@ -5,40 +5,135 @@ import java.util.List;
 import java.util.Map;
 
 import lombok.Getter;
-import lombok.Setter;
+import mafia.engine.config.ConfigKey;
 import mafia.engine.config.Configuration;
 import mafia.engine.property.Properties;
 import mafia.engine.property.PropertyHolder;
-import mafia.engine.util.StreamUtils;
 
 public class GameConfiguration implements PropertyHolder {
+
+    public static final ConfigKey OVERKILL_RULE = ConfigKey.of("general", "overkillRule");
+    public static final ConfigKey ANONYMOUS_HEAL = ConfigKey.of("general", "anonymousHeal");
+    public static final ConfigKey ANONYMOUS_VOTING = ConfigKey.of("general", "anonymousVoting");
+    public static final ConfigKey SECRET_ROLES = ConfigKey.of("general", "secretRoles");
+    public static final ConfigKey SECRET_VOTE_OUT = ConfigKey.of("general", "secretVoteOut");
+    public static final ConfigKey NIGHT_TIME_ACTION_TIMER = ConfigKey.of("general", "nightTimeActionTimer");
+    public static final ConfigKey DAYTIME_DISCUSSION_TIMER = ConfigKey.of("general", "daytimeDiscussionTimer");
+    public static final ConfigKey DAY_TIME_VOTING_TIMER = ConfigKey.of("general", "dayTimeVotingTimer");
+    public static final ConfigKey MISCELLANEOUS_TIMER = ConfigKey.of("other", "miscellaneousTimer");
+
+    /**
+     * Configurations the engine reads during a game.
+     */
+    public static final List<ConfigKey> REQUIRED = List.of(
+        OVERKILL_RULE,
+        ANONYMOUS_HEAL,
+        ANONYMOUS_VOTING,
+        SECRET_ROLES,
+        SECRET_VOTE_OUT,
+        NIGHT_TIME_ACTION_TIMER,
+        DAYTIME_DISCUSSION_TIMER,
+        DAY_TIME_VOTING_TIMER,
+        MISCELLANEOUS_TIMER
+    );
     
-    @Getter @Setter
+    @Getter
     private String version;
 
-    @Getter @Setter
+    @Getter
     private Map<String, List<Configuration>> configurations;
 
-    public Configuration getConfiguration(String category, String configurationName) {
-        var list = StreamUtils.filter(
-            configurations.get(category), 
-            c -> c.getConfigurationName().equals(configurationName)
+    // configurations by ConfigKey.index(), rebuilt whenever they are set
+    private volatile Configuration[] index = new Configuration[0];
+    // read-only view for expressions, built on first use and dropped on any change
+    private volatile Properties properties;
+
+    public void setVersion(String version) {
+        this.version = version;
+        properties = null;
+    }
+
+    public void setConfigurations(Map<String, List<Configuration>> configurations) {
+        // interns every key first, so the index is large enough for all of them
+        configurations.forEach((category, list) ->
+            list.forEach(c -> ConfigKey.of(category, c.getConfigurationName()))
         );
-        return list.isEmpty() ? null : list.getFirst();
+
+        var indexed = new Configuration[ConfigKey.count()];
+        configurations.forEach((category, list) -> list.forEach(c -> {
+            var key = ConfigKey.of(category, c.getConfigurationName());
+            // the first one of a name wins, as it did when the list was searched
+            if (indexed[key.index()] == null) {
+                indexed[key.index()] = c;
+            }
+        }));
+
+        this.configurations = configurations;
+        this.index = indexed;
+        properties = null;
+    }
+
+    /**
+     * The configuration named by {@code key}, or {@code null} if there is
+     * none.
+     */
+    public Configuration getConfiguration(ConfigKey key) {
+        var current = index;
+        return key.index() < current.length ? current[key.index()] : null;
+    }
+
+    public Configuration getConfiguration(String category, String configurationName) {
+        // a name no configuration was loaded under has no key, and is not given one
+        var key = ConfigKey.find(category, configurationName);
+        return key == null ? null : getConfiguration(key);
+    }
+
+    public boolean getBooleanConfiguration(ConfigKey key) {
+        return require(key).getBooleanValue();
     }
 
     public boolean getBooleanConfiguration(String category, String configurationName) {
-        return getConfiguration(category, configurationName).getBooleanValue();
+        return require(category, configurationName).getBooleanValue();
+    }
+
+    public Duration getDurationConfiguration(ConfigKey key) {
+        return require(key).getDurationValue();
     }
 
     public Duration getDurationConfiguration(String category, String configurationName) {
-        return getConfiguration(category, configurationName).getDurationValue();
+        return require(category, configurationName).getDurationValue();
+    }
+
+    private Configuration require(ConfigKey key) {
+        var configuration = getConfiguration(key);
+        if (configuration == null) {
+            throw new IllegalStateException("Missing configuration: " + key);
+        }
+        return configuration;
+    }
+
+    private Configuration require(String category, String configurationName) {
+        var configuration = getConfiguration(category, configurationName);
+        if (configuration == null) {
+            throw new IllegalStateException("Missing configuration: " + category + "." + configurationName);
+        }
+        return configuration;
     }
 
+    /**
+     * A read-only snapshot of this configuration, the same object until the
+     * version or the configurations are set again.
+     */
     @Override
     public Properties getProperties() {
-        return new Properties("configuration")
-            .addProperty("version", version)
-            .addProperty("configurations", configurations);
+        var current = properties;
+        if (current == null) {
+            current = new Properties("configuration")
+                .addProperty("version", version)
+                .addProperty("configurations", configurations)
+                .snapshot();
+            properties = current;
+        }
+        return current;
     }
 }
@@ -4,12 +4,20 @@ import static mafia.engine.util.StreamUtils.combineLists;
 import static mafia.engine.util.StreamUtils.filter;
 import static mafia.engine.util.StreamUtils.mapToList;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
 
 import lombok.Getter;
@@ -41,10 +49,12 @@ import mafia.engine.game.event.VotingResultUpdate;
 import mafia.engine.player.Player;
 import mafia.engine.player.PlayerEngine;
 import mafia.engine.player.PlayerState;
+import mafia.engine.player.PlayerTable;
 import mafia.engine.player.action.PlayerActionContext;
 import mafia.engine.presets.Preset;
 import mafia.engine.property.Properties;
 import mafia.engine.property.PropertyHolder;
+import mafia.engine.property.PropertyListener;
 import mafia.engine.role.DistributionEngine;
 import mafia.engine.role.Role;
 import mafia.engine.role.RoleReveal;
@@ -59,7 +69,7 @@ public class GameEngine implements PropertyHolder {
     private volatile GameState gameState = GameState.INITIALIZING;
     private volatile GamePhase gamePhase = GamePhase.NIGHT;
 
-    @NonNull @Getter @Setter
+    @NonNull @Getter
     private List<Player> players;
     
     @NonNull
@@ -85,6 +95,10 @@ public class GameEngine implements PropertyHolder {
     private PlayerEngine playerEngine = new PlayerEngine();
     private DistributionEngine distributionEngine = new DistributionEngine();
     private ExpressionEngine expressionEngine = new ExpressionEngine();
+    // seconds between dumps of the rule profile, profiling is off when unset
+    private final long profileInterval = Long.getLong("mafia.expression.profile", 0);
+    // one instance, so that it can be removed from the players when the game ends
+    private final PropertyListener invalidation = this::invalidate;
     
     public GameEngine(
         @NonNull List<Player> players,
@@ -93,22 +107,46 @@ public class GameEngine implements PropertyHolder {
         @NonNull Preset preset,
         @NonNull GameRules gameRules
     ) {
-        this.players = players;
+        expressionEngine.bind(gameProperties);
+        gameProperties.addListener(invalidation);
+        players(players);
         this.primaryRoles = primaryRoles;
         this.secondaryRoles = secondaryRoles;
         this.preset = preset;
         this.gameRules = gameRules;
 
         gameProperties.addProperties(Map.of(
-            "players", players,
+            "players", this.players,
             "primaryRoles", primaryRoles,
             "secondaryRoles", secondaryRoles,
             "preset", preset
         ));
 
-        gameRules.getRules()
-            .values()
-            .forEach(expressionEngine::loadExpressions);
+        // fails here rather than mid-game when a rule does not fit the schema
+        expressionEngine.loadExpressions(GameSchema.rulesByScope(gameRules), GameSchema.SCHEMA);
+
+        expressionEngine.optimizations().forEach((rule, optimization) ->
+            SplitPrinter.println("engine",
+                "Optimized rule: " + rule + " -> " + optimization.node().flattenString()
+                    + " " + optimization.rewrites()
+            )
+        );
+    }
+
+    public GameEngine players(@NonNull List<Player> players) {
+        if (this.players != null) {
+            detach();
+        }
+        // shuffled while the roles are distributed, the table is built after that
+        this.players = new ArrayList<>(players);
+        gameProperties.addProperty("players", this.players);
+        // a change to a player the rules read starts a new epoch for the memoised aggregates
+        players.forEach(p -> {
+            expressionEngine.bind(p.getProperties());
+            p.getProperties().addListener(invalidation);
+        });
+        expressionEngine.invalidate();
+        return this;
     }
 
     public GameEngine configure(GameConfiguration configuration) {
@@ -117,6 +155,19 @@ public class GameEngine implements PropertyHolder {
         return this;
     }
 
+    /**
+     * The game and player properties as they are now. Each snapshot costs the
+     * same whatever the number of properties, and the engine keeps writing to
+     * the live ones. Taken between phases it is a consistent view of the game.
+     */
+    public GameSnapshot snapshot() {
+        var playerSnapshots = new LinkedHashMap<String, Properties>();
+        for (var player : players) {
+            playerSnapshots.put(player.name(), player.getProperties().snapshot());
+        }
+        return new GameSnapshot(gamePhase, gameProperties.snapshot(), Collections.unmodifiableMap(playerSnapshots));
+    }
+
     public Object getGameProperties(String key) {
         return gameProperties.getProperty(key);
     }
@@ -146,15 +197,18 @@ public class GameEngine implements PropertyHolder {
 
     public void start() {
         var durations = getDurations();
-        gameProperties.addProperty("nightCounter", 1);
-        gameProperties.addProperty("nightTimeLeft", durations.get("nightTimeActionTimer"));
-        gameProperties.addProperty("discussionTimeLeft", durations.get("daytimeDiscussionTimer"));
-        gameProperties.addProperty("miscellaneousTimeLeft", durations.get("miscellaneousTimer"));
-        gameProperties.addProperty("votingTimeLeft", durations.get("dayTimeVotingTimer"));
+        gameProperties.addLong("nightCounter", 1);
+        gameProperties.addLong("nightTimeLeft", durations.get("nightTimeActionTimer"));
+        gameProperties.addLong("discussionTimeLeft", durations.get("daytimeDiscussionTimer"));
+        gameProperties.addLong("miscellaneousTimeLeft", durations.get("miscellaneousTimer"));
+        gameProperties.addLong("votingTimeLeft", durations.get("dayTimeVotingTimer"));
 
         gameState = GameState.LOADING;
         distributionEngine.distributeRoles(preset, players, primaryRoles, "primary");
         distributionEngine.distributeRoles(preset, players, secondaryRoles, "secondary");
+        // rules over the players read the columns of the table, which keeps its rows in order
+        players = new PlayerTable(players);
+        gameProperties.addProperty("players", players);
 
         SplitPrinter.println("engine", "Player roles: ");
         for (var player : players) {
@@ -173,7 +227,26 @@ public class GameEngine implements PropertyHolder {
         gameState = GameState.STARTING;
 
         gameChannels.gameUpdateChannel().send(new PhasedChangedUpdate(null, GamePhase.NIGHT));
-        runGameLoop(durations);
+        try {
+            if (profileInterval <= 0) {
+                runGameLoop(durations);
+            } else {
+                runProfiledGameLoop(durations);
+            }
+        } finally {
+            detach();
+        }
+    }
+
+    private void runProfiledGameLoop(Map<String, Long> durations) {
+        var profiler = expressionEngine.enableProfiling();
+        var dumps = profiler.dumpEvery(Duration.ofSeconds(profileInterval), p -> SplitPrinter.println("engine", p));
+        try {
+            runGameLoop(durations);
+        } finally {
+            dumps.cancel(false);
+            SplitPrinter.println("engine", profiler.format());
+        }
     }
 
     @Override
@@ -214,10 +287,12 @@ public class GameEngine implements PropertyHolder {
         var dispatcher = new NightPhaseDispatcher(gameProperties, gameChannels);
         dispatcher.immediateAbilityResponseResolver(this::resolveImmediateAbilityResponse);
         var alivePlayers = alivePlayers();
-        for (var player : playersWithOptionalAbilities()) {
+        var playersWithOptionalAbilities = playersWithOptionalAbilities();
+        var validNightAbilities = validNightAbilities(playersWithOptionalAbilities);
+        for (var player : playersWithOptionalAbilities) {
             sendAbilityPrompt(
                 player,
-                validNightAbilities(player),
+                validNightAbilities.get(player),
                 alivePlayers
             );
         }
@@ -242,26 +317,38 @@ public class GameEngine implements PropertyHolder {
             ).toList();
     }
 
-    private List<Ability> validNightAbilities(Player player) {
-        var abilities = filter(player.role().getAbilities(), a -> a.optional() && a.abilityTime().equalsIgnoreCase("night"));
-        List<Ability> validOptionalAbilities = new ArrayList<>();
-        for (var ability : abilities) {
-            if (ability.conditions().isEmpty()) {
-                validOptionalAbilities.add(ability);
-                continue;
+    private Map<Player, List<Ability>> validNightAbilities(List<Player> players) {
+        var nightAbilities = new LinkedHashMap<Player, List<Ability>>();
+        // the players of each list of conditions, so that every list is tested once for all of them
+        var playersByConditions = new LinkedHashMap<List<String>, Set<Player>>();
+        for (var player : players) {
+            var abilities = filter(player.role().getAbilities(), a -> a.optional() && a.abilityTime().equalsIgnoreCase("night"));
+            nightAbilities.put(player, abilities);
+            for (var ability : abilities) {
+                if (!ability.conditions().isEmpty()) {
+                    playersByConditions.computeIfAbsent(ability.conditions(), _ -> new LinkedHashSet<>()).add(player);
+                }
             }
+        }
 
-            for (var condition : ability.conditions()) {
-                try {
-                    if ((Boolean) expressionEngine.evalaute(condition, player.getProperties()).result()) {
-                        validOptionalAbilities.add(ability);
-                        break;
-                    }
-                } catch (Exception e) {
-                    continue;
+        var satisfied = new HashMap<List<String>, Set<Player>>();
+        playersByConditions.forEach((conditions, holders) -> {
+            var candidates = new ArrayList<>(holders);
+            var matches = expressionEngine.firstMatch(conditions, candidates);
+            var matching = new HashSet<Player>();
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] >= 0) {
+                    matching.add(candidates.get(i));
                 }
             }
-        }
+            satisfied.put(conditions, matching);
+        });
+
+        var validOptionalAbilities = new LinkedHashMap<Player, List<Ability>>();
+        nightAbilities.forEach((player, abilities) -> validOptionalAbilities.put(player, filter(
+            abilities,
+            a -> a.conditions().isEmpty() || satisfied.get(a.conditions()).contains(player)
+        )));
         return validOptionalAbilities;
     }
 
@@ -274,7 +361,7 @@ public class GameEngine implements PropertyHolder {
         var contexts = dispatcher.resolve(this::resolveAbilityResponse);
         playerEngine.updatePlayersState(contexts, players, configuration);
 
-        var isAnonymousHeal = configuration.getBooleanConfiguration("general", "anonymousHeal");
+        var isAnonymousHeal = configuration.getBooleanConfiguration(GameConfiguration.ANONYMOUS_HEAL);
 
         List<Player> killedThisNight = filterPlayer(p -> p.state() == PlayerState.KILLED);
         var healedThisNight = isAnonymousHeal ? List.<Player>of() : filterPlayer(p -> p.state() == PlayerState.SAVED);
@@ -358,8 +445,9 @@ public class GameEngine implements PropertyHolder {
         long timeoutSeconds
     ) { 
         var triggeredPlayers = new ArrayList<Player>();
+        var triggeredAbilities = getTriggeredAbilities(sources);
         for (var player : sources) {
-            var ability = getTriggeredAbility(player);
+            var ability = triggeredAbilities.get(player);
             if (ability != null) {
                 sendAbilityPrompt(
                     player,
@@ -424,15 +512,9 @@ public class GameEngine implements PropertyHolder {
             return;
         }
 
-        var secretRoles = configuration.getBooleanConfiguration(
-                                "general", 
-                                "secretRoles"
-                            );
+        var secretRoles = configuration.getBooleanConfiguration(GameConfiguration.SECRET_ROLES);
         
-        var secretVoteOut = configuration.getBooleanConfiguration(
-            "general", 
-            "secretVoteOut"
-        );
+        var secretVoteOut = configuration.getBooleanConfiguration(GameConfiguration.SECRET_VOTE_OUT);
 
         if (secretRoles && secretVoteOut) {
             gameChannels.gameUpdateChannel().send(new RoleRevealUpdate(List.of()));
@@ -441,16 +523,11 @@ public class GameEngine implements PropertyHolder {
 
         List<RoleReveal> reveals = new ArrayList<>();
         if (!secretVoteOut) {
-            for (var p : playersToReveal) {
-                for (var rule : gameRules.getRules("roleRevealConditions")) {
-                    try {
-                        if ((Boolean) expressionEngine.evalaute(rule, p.getProperties()).result()) {
-                            reveals.add(new RoleReveal(p, p.role(), p.secondaryRole()));
-                            break;
-                        }
-                    } catch (IllegalStateException e) {
-                        continue;
-                    }
+            var matches = expressionEngine.firstMatch(gameRules.getRules("roleRevealConditions"), playersToReveal);
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] >= 0) {
+                    var p = playersToReveal.get(i);
+                    reveals.add(new RoleReveal(p, p.role(), p.secondaryRole()));
                 }
             }
         } else if (phase == GamePhase.VOTING && !secretRoles) {
@@ -489,17 +566,28 @@ public class GameEngine implements PropertyHolder {
         );
     }
 
-    private Ability getTriggeredAbility(Player player) {
-        for (var ability : player.role().getAbilities()) {
-            try {
-                if ((Boolean) expressionEngine.evalaute(ability.trigger(), player.getProperties()).result()) {
-                    return ability;
-                }
-            } catch (Exception e) {
-                continue;
+    // the first ability of each player whose trigger holds, players with the same triggers tested together
+    private Map<Player, Ability> getTriggeredAbilities(List<Player> players) {
+        var playersByTriggers = new LinkedHashMap<List<String>, List<Player>>();
+        for (var player : players) {
+            var triggers = mapToList(filter(player.role().getAbilities(), a -> a.trigger() != null), Ability::trigger);
+            if (!triggers.isEmpty()) {
+                playersByTriggers.computeIfAbsent(triggers, _ -> new ArrayList<>()).add(player);
             }
         }
-        return null;
+
+        var triggeredAbilities = new HashMap<Player, Ability>();
+        playersByTriggers.forEach((triggers, holders) -> {
+            var matches = expressionEngine.firstMatch(triggers, holders);
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] >= 0) {
+                    var player = holders.get(i);
+                    var triggered = filter(player.role().getAbilities(), a -> a.trigger() != null);
+                    triggeredAbilities.put(player, triggered.get(matches[i]));
+                }
+            }
+        });
+        return triggeredAbilities;
     }
 
     private PlayerActionContext resolveAbilityResponse(AbilityPromptResponse res) {
@@ -537,8 +625,8 @@ public class GameEngine implements PropertyHolder {
             gameState = GameState.ENDED;
         } else if (continueRound) {
             gameChannels.gameUpdateChannel().send(new PlayerRemainingUpdate(filterPlayer(p -> p.state() == PlayerState.ALIVE)));
-            var nightCounter = (int) gameProperties.getProperty("nightCounter");
-            gameProperties.addProperty("nightCounter", nightCounter + 1);
+            var nightCounter = gameProperties.getLong("nightCounter");
+            gameProperties.addLong("nightCounter", nightCounter + 1);
             setPhase(GamePhase.NIGHT);
         } else {
             gameChannels.gameUpdateChannel().send(new GameEnded("Good wins"));
@@ -550,26 +638,26 @@ public class GameEngine implements PropertyHolder {
         String propertyKey,
         String label,
         long seconds,
-        Predicate<Long> stopCondition
+        LongPredicate stopCondition
     ) {
-        gameProperties.addProperty(propertyKey, seconds);
+        gameProperties.addLong(propertyKey, seconds);
 
         for (long i = seconds; i >= 0; i--) {
             if (stopCondition != null && stopCondition.test(i)) {
-                gameProperties.addProperty(propertyKey, 0L);
+                gameProperties.addLong(propertyKey, 0L);
                 gameChannels.gameUpdateChannel().send(new TimeRemainingUpdate(label, 0));
                 break;
             }
 
             sleepInSeconds(1);
-            gameProperties.addProperty(propertyKey, i);
+            gameProperties.addLong(propertyKey, i);
             gameChannels.gameUpdateChannel().send(new TimeRemainingUpdate(label, i));
         }
     }
 
     private boolean evaluateBooleanExpression(String category) {
         for (var rule : gameRules.getRules(category)) {
-            if ((Boolean) expressionEngine.evalaute(rule, gameProperties).result()) {
+            if ((Boolean) expressionEngine.evaluateReactive(rule, gameProperties).result()) {
                 return true;
             }
         }
@@ -578,22 +666,10 @@ public class GameEngine implements PropertyHolder {
 
     private Map<String, Long> getDurations() {
         return Map.of(
-            "nightTimeActionTimer", configuration.getDurationConfiguration(
-                                        "general", 
-                                        "nightTimeActionTimer"
-                                    ).toSeconds(),
-            "daytimeDiscussionTimer", configuration.getDurationConfiguration(
-                                        "general", 
-                                        "daytimeDiscussionTimer"
-                                    ).toSeconds(),
-            "dayTimeVotingTimer", configuration.getDurationConfiguration(
-                                        "general", 
-                                        "dayTimeVotingTimer"
-                                    ).toSeconds(),
-            "miscellaneousTimer", configuration.getDurationConfiguration(
-                                        "other", 
-                                        "miscellaneousTimer"
-                                    ).toSeconds()
+            "nightTimeActionTimer", configuration.getDurationConfiguration(GameConfiguration.NIGHT_TIME_ACTION_TIMER).toSeconds(),
+            "daytimeDiscussionTimer", configuration.getDurationConfiguration(GameConfiguration.DAYTIME_DISCUSSION_TIMER).toSeconds(),
+            "dayTimeVotingTimer", configuration.getDurationConfiguration(GameConfiguration.DAY_TIME_VOTING_TIMER).toSeconds(),
+            "miscellaneousTimer", configuration.getDurationConfiguration(GameConfiguration.MISCELLANEOUS_TIMER).toSeconds()
         );
     }
 
@@ -618,4 +694,19 @@ public class GameEngine implements PropertyHolder {
         gameProperties.addProperty("phase", phase);
         gamePhase = phase;
     }
+
+    // the players outlive the game, so nothing may keep it reachable from them
+    private void detach() {
+        players.forEach(p -> p.getProperties().removeListener(invalidation));
+        if (players instanceof PlayerTable table) {
+            table.detach();
+        }
+    }
+
+    // only properties a rule reads can change a result, which leaves out the timers ticking every second
+    private void invalidate(Properties properties, String propertyName) {
+        if (expressionEngine.reads(propertyName)) {
+            expressionEngine.invalidate();
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package mafia.engine.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mafia.engine.expression.checker.PropertyType;
+import mafia.engine.expression.checker.Schema;
+import mafia.engine.player.PlayerState;
+
+/**
+ * Properties the engine sets on players, roles, abilities and the game, as
+ * seen by the rules.
+ */
+public final class GameSchema {
+
+    public static final Schema SCHEMA = new Schema()
+        .declare("player", "name", PropertyType.STRING)
+        .declare("player", "alignment", PropertyType.STRING)
+        .declare("player", "state", PropertyType.enumOf(PlayerState.class))
+        .declare("player", "role", PropertyType.holder("role"))
+        .declare("player", "secondaryRole", PropertyType.holder("role"))
+        .declare("player", "votedOut", PropertyType.BOOLEAN)
+        // false, true, or the player they killed
+        .declare("player", "killed", PropertyType.ANY)
+        .declare("player", "killer", PropertyType.list("player"))
+        .declare("player", "soulmate", PropertyType.holder("player"))
+        .declare("player", "takendown", PropertyType.BOOLEAN)
+
+        .declare("role", "roleName", PropertyType.STRING)
+        .declare("role", "alignment", PropertyType.STRING)
+        .declare("role", "roleDescription", PropertyType.STRING)
+        .declare("role", "abilities", PropertyType.list("ability"))
+        .declare("role", "cardImagePath", PropertyType.STRING)
+        .declare("role", "tokenImagePath", PropertyType.STRING)
+
+        .declare("ability", "name", PropertyType.STRING)
+        .declare("ability", "description", PropertyType.STRING)
+        .declare("ability", "required", PropertyType.BOOLEAN)
+        .declare("ability", "immediateResult", PropertyType.BOOLEAN)
+        .declare("ability", "optional", PropertyType.BOOLEAN)
+        .declare("ability", "trigger", PropertyType.STRING)
+        .declare("ability", "abilityProperties", PropertyType.ANY)
+        .declare("ability", "conditions", PropertyType.list(null))
+        .declare("ability", "abilityTime", PropertyType.STRING)
+
+        .declare("game", "players", PropertyType.list("player"))
+        .declare("game", "primaryRoles", PropertyType.list("role"))
+        .declare("game", "secondaryRoles", PropertyType.list("role"))
+        .declare("game", "preset", PropertyType.ANY)
+        .declare("game", "configuration", PropertyType.ANY)
+        .declare("game", "phase", PropertyType.enumOf(GamePhase.class))
+        .declare("game", "nightCounter", PropertyType.NUMBER)
+        .declare("game", "nightTimeLeft", PropertyType.NUMBER)
+        .declare("game", "discussionTimeLeft", PropertyType.NUMBER)
+        .declare("game", "miscellaneousTimeLeft", PropertyType.NUMBER)
+        .declare("game", "votingTimeLeft", PropertyType.NUMBER);
+
+    private GameSchema() {}
+
+    /**
+     * Receiver of the rules in {@code category}: role reveal conditions are
+     * evaluated for each player, every other rule for the game.
+     */
+    public static String scopeOf(String category) {
+        return category.equals("roleRevealConditions") ? "player" : "game";
+    }
+
+    /**
+     * The rules of every category, grouped by {@link #scopeOf(String) scope}.
+     */
+    public static Map<String, List<String>> rulesByScope(GameRules gameRules) {
+        var rules = new LinkedHashMap<String, List<String>>();
+        gameRules.getRules().forEach((category, categoryRules) ->
+            rules.computeIfAbsent(scopeOf(category), _ -> new ArrayList<>()).addAll(categoryRules)
+        );
+        return rules;
+    }
+}
@@ -0,0 +1,12 @@
+package mafia.engine.core;
+
+import java.util.Map;
+
+import mafia.engine.property.Properties;
+
+/**
+ * Read-only {@link Properties#snapshot() snapshots} of the game and of every
+ * player, by player name, taken together.
+ */
+public record GameSnapshot(GamePhase phase, Properties game, Map<String, Properties> players) {
+}
@@ -1,6 +1,6 @@
 package mafia.engine.core.dispatcher;
 
-import java.util.function.Predicate;
+import java.util.function.LongPredicate;
 
 import mafia.engine.core.GameChannels;
 import mafia.engine.game.event.TimeRemainingUpdate;
@@ -23,19 +23,19 @@ public abstract class PhaseDispatcher {
         String propertyKey,
         String label,
         long seconds,
-        Predicate<Long> stopCondition
+        LongPredicate stopCondition
     ) {
-        gameProperties.addProperty(propertyKey, seconds);
+        gameProperties.addLong(propertyKey, seconds);
 
         for (long i = seconds; i >= 0; i--) {
             if (stopCondition != null && stopCondition.test(i)) {
-                gameProperties.addProperty(propertyKey, 0L);
+                gameProperties.addLong(propertyKey, 0L);
                 gameChannels.gameUpdateChannel().send(new TimeRemainingUpdate(label, 0));
                 break;
             }
 
             sleepInSeconds(1);
-            gameProperties.addProperty(propertyKey, i);
+            gameProperties.addLong(propertyKey, i);
             gameChannels.gameUpdateChannel().send(new TimeRemainingUpdate(label, i));
         }
     }
@@ -0,0 +1,336 @@
+package mafia.engine.expression;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import mafia.engine.expression.ExpressionEngine.Backend;
+import mafia.engine.expression.checker.Schema;
+import mafia.engine.expression.checker.TypeChecker;
+import mafia.engine.expression.checker.TypeMismatchException;
+import mafia.engine.expression.compiler.CompiledExpression;
+import mafia.engine.expression.compiler.Compiler;
+import mafia.engine.expression.compiler.LenientCompiler;
+import mafia.engine.expression.compiler.SharedExpressions;
+import mafia.engine.expression.compiler.bytecode.BytecodeCompiler;
+import mafia.engine.expression.lexer.Lexer;
+import mafia.engine.expression.optimizer.Optimizer;
+import mafia.engine.expression.optimizer.Optimizer.Optimization;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.expression.parser.Parser;
+
+/**
+ * Compiled expressions keyed by rule text, shared by every
+ * {@link ExpressionEngine} in the process.
+ * <p>
+ * Each expression is parsed, optimized and compiled once per backend no
+ * matter how many games use it. Looking up a cached expression takes no lock
+ * and only marks it as used; an expression is compiled by the first thread
+ * asking for it, while threads asking for the same one wait and those asking
+ * for others go ahead. Engines keep the expressions they already use, so
+ * they come here once per expression.
+ * </p>
+ * <p>
+ * When more than {@code maximumSize} expressions are cached one that was not
+ * used lately is evicted, found by going round the expressions in the order
+ * they were added and skipping, once, those used since they were last passed
+ * over. Its preloaded tree and the aggregates no other cached expression
+ * shares go with it, which only costs a recompilation for the next game that
+ * asks for it.
+ * </p>
+ */
+public class ExpressionCache {
+
+    private static final ExpressionCache SHARED = new ExpressionCache(
+        Integer.getInteger("mafia.expression.cacheSize", 4096)
+    );
+
+    /**
+     * A compiled expression and the rewrites the optimizer applied to it.
+     * {@code lenient} is the same expression compiled by the
+     * {@link LenientCompiler}.
+     */
+    public record Entry(CompiledExpression compiled, CompiledExpression lenient, Optimization optimization) {}
+
+    // schema and scope are null for expressions that are not type checked
+    private record Key(String expression, Backend backend, Schema schema, String scope) {}
+
+    private record Source(String expression, Schema schema, String scope) {}
+
+    // node is the tree the aggregates of the entry were registered with
+    private record Compiled(Entry entry, Node node) {}
+
+    // a checked tree, not compiled yet
+    private record Tree(Node node, Optimization optimization) {}
+
+    // completed with null when compiling fails, after the slot is removed
+    private static final class Slot {
+        private final CompletableFuture<Compiled> compiled = new CompletableFuture<>();
+        // set by lookups, cleared when eviction passes the slot over
+        private volatile boolean used;
+    }
+
+    private final int maximumSize;
+    private final Map<Key, Slot> entries = new ConcurrentHashMap<>();
+    // keys in the order eviction goes round them
+    private final Queue<Key> order = new ConcurrentLinkedQueue<>();
+    // trees read from a rule bundle, compiled instead of the text
+    private final Map<Source, Optimization> preloaded = new ConcurrentHashMap<>();
+
+    private final Lexer lexer = new Lexer();
+    private final Parser parser = new Parser();
+    private final Optimizer optimizer = new Optimizer();
+    private final SharedExpressions sharedExpressions = new SharedExpressions();
+    private final SharedExpressions lenientExpressions = new SharedExpressions();
+
+    public ExpressionCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public static ExpressionCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the compiled form of {@code expression}, compiling it on the
+     * first request. Concurrent requests for the same expression compile it
+     * once.
+     */
+    public Entry get(String expression, Backend backend) {
+        return get(new Key(expression, backend, null, null));
+    }
+
+    /**
+     * Returns the compiled form of {@code expression} after checking it with
+     * {@code schema} for receivers named {@code scope}.
+     *
+     * @throws TypeMismatchException if the expression does not fit the schema
+     */
+    public Entry get(String expression, Backend backend, Schema schema, String scope) {
+        return get(new Key(expression, backend, schema, scope));
+    }
+
+    /**
+     * Returns the compiled forms of {@code expressionsByScope}, each checked
+     * with {@code schema} for receivers named by its scope. The aggregates of
+     * the whole batch are registered before any of them is compiled, so a
+     * call two of the expressions contain is shared by both.
+     *
+     * @throws TypeMismatchException if an expression does not fit the schema
+     */
+    public Map<String, Entry> getAll(Map<String, List<String>> expressionsByScope, Backend backend, Schema schema) {
+        var keys = new ArrayList<Key>();
+        expressionsByScope.forEach((scope, expressions) -> {
+            for (var expression : expressions) {
+                keys.add(new Key(expression, backend, schema, scope));
+            }
+        });
+
+        // checks the whole batch before registering any of it
+        var trees = new LinkedHashMap<Key, Tree>();
+        for (var key : keys) {
+            if (!entries.containsKey(key) && !trees.containsKey(key)) {
+                trees.put(key, tree(key));
+            }
+        }
+        trees.values().forEach(this::register);
+
+        var compiled = new LinkedHashMap<String, Entry>();
+        try {
+            for (var key : keys) {
+                var tree = trees.remove(key);
+                var slot = tree == null ? null : new Slot();
+                if (slot != null && entries.putIfAbsent(key, slot) == null) {
+                    compiled.put(key.expression(), load(key, slot, tree));
+                } else {
+                    if (tree != null) {
+                        // cached by another thread in the meantime
+                        release(tree);
+                    }
+                    compiled.put(key.expression(), get(key));
+                }
+            }
+        } finally {
+            // left over when compiling failed
+            trees.values().forEach(this::release);
+        }
+        return compiled;
+    }
+
+    private Entry get(Key key) {
+        while (true) {
+            var slot = entries.get(key);
+            if (slot == null) {
+                var added = new Slot();
+                slot = entries.putIfAbsent(key, added);
+                if (slot == null) {
+                    return load(key, added, null);
+                }
+            }
+
+            var compiled = slot.compiled.join();
+            if (compiled != null) {
+                if (!slot.used) {
+                    slot.used = true;
+                }
+                return compiled.entry();
+            }
+            // the thread compiling it failed, compiling again gives this one its own exception
+        }
+    }
+
+    // compiles the expression of a slot just added, with tree when it is already registered
+    private Entry load(Key key, Slot slot, Tree tree) {
+        Compiled compiled;
+        try {
+            if (tree == null) {
+                tree = tree(key);
+                register(tree);
+            }
+            compiled = compile(key, tree);
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, slot);
+            slot.compiled.complete(null);
+            throw e;
+        }
+        slot.compiled.complete(compiled);
+
+        order.add(key);
+        if (entries.size() > maximumSize) {
+            evict();
+        }
+        return compiled.entry();
+    }
+
+    /**
+     * Supplies the optimized tree of {@code expression}, already checked with
+     * {@code schema} for receivers named {@code scope} when a schema is given,
+     * so that compiling it skips the lexer, parser, optimizer and checker.
+     */
+    public void preload(String expression, Schema schema, String scope, Optimization optimization) {
+        preloaded.put(new Source(expression, schema, scope), optimization);
+        if (preloaded.size() > maximumSize) {
+            // any tree will do, one that is dropped is parsed from its text instead
+            var iterator = preloaded.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Hits and misses of the memoised aggregates of every cached expression.
+     */
+    public SharedExpressions.Statistics statistics() {
+        return sharedExpressions.statistics().plus(lenientExpressions.statistics());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        for (var key : entries.keySet()) {
+            var slot = entries.remove(key);
+            if (slot != null) {
+                // released once compiled when it still is being compiled
+                slot.compiled.thenAccept(compiled -> {
+                    if (compiled != null) {
+                        evicted(key, compiled);
+                    }
+                });
+            }
+        }
+        order.clear();
+        preloaded.clear();
+    }
+
+    private Tree tree(Key key) {
+        var optimization = preloaded.get(source(key));
+        if (optimization != null) {
+            return new Tree(optimization.node(), optimization);
+        }
+
+        optimization = optimizer.optimize(parser.parse(lexer.tokenize(key.expression())));
+        var node = optimization.node();
+        if (key.schema() != null) {
+            node = new TypeChecker(key.schema()).check(key.expression(), node, key.scope());
+        }
+        return new Tree(node, optimization);
+    }
+
+    // expects the tree to be registered, and releases it if compiling fails
+    private Compiled compile(Key key, Tree tree) {
+        try {
+            return new Compiled(compile(key.backend(), tree.node(), tree.optimization()), tree.node());
+        } catch (RuntimeException e) {
+            release(tree);
+            throw e;
+        }
+    }
+
+    // the compilers keep state while compiling, so each compilation has its own
+    private Entry compile(Backend backend, Node node, Optimization optimization) {
+        var lenient = new LenientCompiler(lenientExpressions).compile(node);
+        var compiler = new Compiler(sharedExpressions);
+
+        if (backend == Backend.BYTECODE) {
+            try {
+                return new Entry(new BytecodeCompiler(compiler).compile(node), lenient, optimization);
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                // fall back to closures, which support every expression
+            }
+        }
+        return new Entry(compiler.compileExpression(node), lenient, optimization);
+    }
+
+    private void register(Tree tree) {
+        sharedExpressions.register(tree.node());
+        lenientExpressions.register(tree.node());
+    }
+
+    private void release(Tree tree) {
+        sharedExpressions.release(tree.node());
+        lenientExpressions.release(tree.node());
+    }
+
+    // goes round the keys, giving those used since the last round another one
+    private void evict() {
+        for (int passes = 2 * maximumSize + 2; passes > 0 && entries.size() > maximumSize; passes--) {
+            var key = order.poll();
+            if (key == null) {
+                return;
+            }
+            var slot = entries.get(key);
+            if (slot == null) {
+                continue;
+            }
+            var compiled = slot.compiled.getNow(null);
+            if (slot.used || compiled == null) {
+                slot.used = false;
+                order.add(key);
+            } else if (entries.remove(key, slot)) {
+                evicted(key, compiled);
+            }
+        }
+    }
+
+    private void evicted(Key key, Compiled compiled) {
+        sharedExpressions.release(compiled.node());
+        lenientExpressions.release(compiled.node());
+        preloaded.remove(source(key));
+    }
+
+    private static Source source(Key key) {
+        return new Source(key.expression(), key.schema(), key.scope());
+    }
+}
@@ -1,36 +1,359 @@
 package mafia.engine.expression;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import mafia.engine.expression.checker.Schema;
+import mafia.engine.expression.checker.TypeMismatchException;
+import mafia.engine.expression.compiler.CompiledExpression;
+import mafia.engine.expression.compiler.Epoch;
+import mafia.engine.expression.compiler.ReactiveResult;
+import mafia.engine.expression.compiler.SharedExpressions;
+import mafia.engine.expression.evaluator.Condition;
 import mafia.engine.expression.evaluator.EvaluationResult;
 import mafia.engine.expression.evaluator.Evaluator;
+import mafia.engine.expression.evaluator.UndefinedReason;
 import mafia.engine.expression.lexer.Lexer;
+import mafia.engine.expression.lexer.Token.Type;
+import mafia.engine.expression.optimizer.Optimizer.Optimization;
 import mafia.engine.expression.parser.Node;
 import mafia.engine.expression.parser.Parser;
 import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyHolder;
 
 public class ExpressionEngine {
-    
+
+    /**
+     * How cached expressions are compiled. {@code BYTECODE} generates a hidden
+     * class per expression and falls back to closures when that fails.
+     */
+    public enum Backend {
+        CLOSURE,
+        BYTECODE
+    }
+
     private final Lexer lexer = new Lexer();
     private final Parser parser = new Parser();
     private final Evaluator evaluator = new Evaluator();
 
-    private Map<String, Node> cache = new HashMap<>();
+    private final Backend backend;
+    private final ExpressionCache cache;
+
+    // expressions this engine uses, kept even if the shared cache evicts them
+    private final Map<String, ExpressionCache.Entry> expressions = new ConcurrentHashMap<>();
+    private final Map<String, Map<Properties, ReactiveResult>> reactiveResults = new ConcurrentHashMap<>();
+    private final Map<String, Map<Properties, ReactiveResult>> reactiveConditions = new ConcurrentHashMap<>();
+
+    private final Epoch epoch = new Epoch();
+    // identifiers of the loaded expressions
+    private final Set<String> propertyNames = ConcurrentHashMap.newKeySet();
+
+    // null unless profiling, so that evaluating costs a single check otherwise
+    private volatile ExpressionProfiler profiler;
+
+    public ExpressionEngine() {
+        this(Backend.CLOSURE);
+    }
+
+    public ExpressionEngine(Backend backend) {
+        this(backend, ExpressionCache.shared());
+    }
+
+    public ExpressionEngine(Backend backend, ExpressionCache cache) {
+        this.backend = backend;
+        this.cache = cache;
+    }
 
     public void loadExpressions(List<String> expressions) {
         for (var expr : expressions) {
-            cache.put(expr, parse(expr));
+            entry(expr);
+        }
+    }
+
+    /**
+     * Loads {@code expressions} after checking them against {@code schema}
+     * for receivers named {@code scope}, so that later evaluations use the
+     * specialised form.
+     *
+     * @throws TypeMismatchException if an expression does not fit the schema
+     */
+    public void loadExpressions(List<String> expressions, Schema schema, String scope) {
+        for (var expr : expressions) {
+            this.expressions.put(expr, loaded(cache.get(expr, backend, schema, scope)));
         }
     }
 
+    /**
+     * Loads the expressions of every scope at once, as
+     * {@link #loadExpressions(List, Schema, String)} does for each, so that
+     * the aggregates they have in common are shared from the start.
+     *
+     * @throws TypeMismatchException if an expression does not fit the schema
+     */
+    public void loadExpressions(Map<String, List<String>> expressionsByScope, Schema schema) {
+        cache.getAll(expressionsByScope, backend, schema).forEach((expr, entry) -> this.expressions.put(expr, loaded(entry)));
+    }
+
     public EvaluationResult evalaute(String expression, Properties properties) {
-        if (!cache.containsKey(expression)) {
-            cache.put(expression, parse(expression));
+        return evaluate(expression, entry(expression).compiled(), properties);
+    }
+
+    /**
+     * Evaluates {@code expression} like {@link #evalaute(String, Properties)},
+     * but keeps the result and only recomputes it once a property read by the
+     * previous evaluation has changed.
+     */
+    public EvaluationResult evaluateReactive(String expression, Properties properties) {
+        return get(expression, reactive(reactiveResults, expression, properties, false));
+    }
+
+    /**
+     * Evaluates {@code expression} as a condition without throwing. Missing
+     * properties, type mismatches and any other error the strict
+     * {@link #evalaute(String, Properties)} would raise make the condition
+     * undefined, with the reason.
+     */
+    public Condition test(String expression, Properties properties) {
+        return Condition.of(evaluate(expression, lenient(expression), properties));
+    }
+
+    /**
+     * {@link #test(String, Properties)} with the result kept like
+     * {@link #evaluateReactive(String, Properties)}.
+     */
+    public Condition testReactive(String expression, Properties properties) {
+        return Condition.of(get(expression, reactive(reactiveConditions, expression, properties, true)));
+    }
+
+    /**
+     * Tests {@code expression} like {@link #test(String, Properties)} for each
+     * of {@code holders}, looking it up once. Bit {@code i} is set when the
+     * condition is true for {@code holders.get(i)}.
+     */
+    public BitSet evaluateAll(String expression, List<? extends PropertyHolder> holders) {
+        var candidates = new BitSet(holders.size());
+        candidates.set(0, holders.size());
+        return evaluateAll(expression, lenient(expression), holders, candidates);
+    }
+
+    /**
+     * For each of {@code holders}, the index of the first of
+     * {@code expressions} that is true for it as in
+     * {@link #test(String, Properties)}, or {@code -1} when none is. Every
+     * expression is looked up once and only tested for the holders no
+     * earlier one matched.
+     */
+    public int[] firstMatch(List<String> expressions, List<? extends PropertyHolder> holders) {
+        var matches = new int[holders.size()];
+        Arrays.fill(matches, -1);
+
+        var unmatched = new BitSet(holders.size());
+        unmatched.set(0, holders.size());
+        for (int i = 0; i < expressions.size() && !unmatched.isEmpty(); i++) {
+            var expression = expressions.get(i);
+            var matching = evaluateAll(expression, lenient(expression), holders, unmatched);
+            for (int h = matching.nextSetBit(0); h >= 0; h = matching.nextSetBit(h + 1)) {
+                matches[h] = i;
+            }
+            unmatched.andNot(matching);
+        }
+        return matches;
+    }
+
+    /**
+     * Starts a new evaluation epoch for the receivers {@link #bind(Properties)
+     * bound} to this engine. Aggregates shared between expressions are
+     * computed once per epoch, so this must be called whenever the state
+     * they read changes in a way their properties do not show.
+     */
+    public void invalidate() {
+        epoch.advance();
+    }
+
+    /**
+     * The current evaluation epoch. Within an epoch every aggregate call is
+     * computed at most once per receiver.
+     */
+    public long epoch() {
+        return epoch.current();
+    }
+
+    /**
+     * Makes the aggregates memoised for {@code receiver} follow the epoch of
+     * this engine.
+     */
+    public void bind(Properties receiver) {
+        epoch.bind(receiver);
+    }
+
+    /**
+     * Whether an expression loaded into this engine reads a property named
+     * {@code propertyName}. Changes to any other property cannot affect a
+     * result, so they need not start a new epoch.
+     */
+    public boolean reads(String propertyName) {
+        return propertyNames.contains(propertyName);
+    }
+
+    /**
+     * How often the aggregate calls of the cached expressions reused a result
+     * of the current epoch.
+     */
+    public SharedExpressions.Statistics memoStatistics() {
+        return cache.statistics();
+    }
+
+    /**
+     * Starts recording per rule statistics of the evaluations of this engine,
+     * or keeps the profiler already recording them.
+     */
+    public synchronized ExpressionProfiler enableProfiling() {
+        if (profiler == null) {
+            profiler = new ExpressionProfiler();
+        }
+        return profiler;
+    }
+
+    /**
+     * Stops recording statistics, returning the profiler that recorded them
+     * or {@code null} if profiling was not enabled.
+     */
+    public synchronized ExpressionProfiler disableProfiling() {
+        var previous = profiler;
+        profiler = null;
+        return previous;
+    }
+
+    /**
+     * The profiler recording this engine's evaluations, or {@code null} when
+     * profiling is disabled.
+     */
+    public ExpressionProfiler profiler() {
+        return profiler;
+    }
+
+    /**
+     * Expressions used by this engine that the optimizer changed, with the
+     * rewrites applied to each.
+     */
+    public Map<String, Optimization> optimizations() {
+        var optimizations = new TreeMap<String, Optimization>();
+        expressions.forEach((expression, entry) -> {
+            if (entry.optimization().changed()) {
+                optimizations.put(expression, entry.optimization());
+            }
+        });
+        return Collections.unmodifiableMap(optimizations);
+    }
+
+    /**
+     * Evaluates {@code expression} by walking its parse tree with the
+     * reference {@link Evaluator}, bypassing the compiled cache.
+     */
+    public EvaluationResult interpret(String expression, Properties properties) {
+        return evaluator.evaluate(parse(expression), properties, properties.propertyName());
+    }
+
+    private EvaluationResult evaluate(String expression, CompiledExpression compiled, Properties properties) {
+        var profiler = this.profiler;
+        if (profiler == null) {
+            return compiled.evaluate(properties);
+        }
+        return profiler.profile(expression, () -> compiled.evaluate(properties));
+    }
+
+    // the candidates for which the condition is true
+    private BitSet evaluateAll(String expression, CompiledExpression compiled, List<? extends PropertyHolder> holders, BitSet candidates) {
+        var matching = new BitSet(holders.size());
+        for (int h = candidates.nextSetBit(0); h >= 0; h = candidates.nextSetBit(h + 1)) {
+            if (Condition.of(evaluate(expression, compiled, holders.get(h).getProperties())).isTrue()) {
+                matching.set(h);
+            }
+        }
+        return matching;
+    }
+
+    private EvaluationResult get(String expression, ReactiveResult result) {
+        var profiler = this.profiler;
+        if (profiler == null) {
+            return result.get();
+        }
+        return profiler.profile(expression, result::get);
+    }
+
+    private ReactiveResult reactive(
+        Map<String, Map<Properties, ReactiveResult>> reactive,
+        String expression,
+        Properties properties,
+        boolean lenient
+    ) {
+        var results = reactive.computeIfAbsent(expression, _ -> new ConcurrentHashMap<>());
+        var result = results.get(properties);
+        if (result == null) {
+            var compiled = lenient ? lenient(expression) : entry(expression).compiled();
+            result = results.computeIfAbsent(properties, p -> new ReactiveResult(compiled, p));
+        }
+        return result;
+    }
+
+    private CompiledExpression lenient(String expression) {
+        var entry = expressions.get(expression);
+        if (entry == null) {
+            try {
+                entry = entry(expression);
+            } catch (RuntimeException e) {
+                // a malformed rule stays undefined instead of failing every caller
+                var invalid = EvaluationResult.undefined(UndefinedReason.INVALID_EXPRESSION);
+                // only the type and message are kept, each strict caller gets a new exception
+                var type = e.getClass();
+                var message = e.getMessage();
+                CompiledExpression strict = _ -> {
+                    throw error(type, message);
+                };
+                entry = new ExpressionCache.Entry(strict, _ -> invalid, new Optimization(null, List.of()));
+                expressions.putIfAbsent(expression, entry);
+            }
+        }
+        return entry.lenient();
+    }
+
+    // an exception of the given type, or an IllegalStateException if it has no message constructor
+    private static RuntimeException error(Class<? extends RuntimeException> type, String message) {
+        try {
+            return type.getConstructor(String.class).newInstance(message);
+        } catch (ReflectiveOperationException e) {
+            return new IllegalStateException(message);
+        }
+    }
+
+    private ExpressionCache.Entry entry(String expression) {
+        var entry = expressions.get(expression);
+        if (entry == null) {
+            entry = expressions.computeIfAbsent(expression, e -> loaded(cache.get(e, backend)));
+        }
+        return entry;
+    }
+
+    private ExpressionCache.Entry loaded(ExpressionCache.Entry entry) {
+        collectNames(entry.optimization().node());
+        return entry;
+    }
+
+    private void collectNames(Node node) {
+        if (node == null) {
+            return;
+        }
+        if (node.type() == Type.IDENTIFIER) {
+            propertyNames.add(node.value());
         }
-        
-        return evaluator.evaluate(cache.get(expression), properties, properties.propertyName());
+        collectNames(node.left());
+        collectNames(node.right());
     }
 
     private Node parse(String s) {
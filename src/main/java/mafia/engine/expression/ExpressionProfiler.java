@@ -0,0 +1,249 @@
+package mafia.engine.expression;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import mafia.engine.expression.evaluator.EvaluationResult;
+
+/**
+ * Per rule statistics of the evaluations an {@link ExpressionEngine} runs
+ * while profiling is enabled on it.
+ * <p>
+ * Latency and scanned items are inclusive: a rule evaluated inside another
+ * one, such as a shared aggregate, is also counted for the outer rule. Items
+ * are counted when a list function visits them one by one, so aggregates
+ * answered from a column or reused within an epoch scan nothing.
+ * </p>
+ */
+public final class ExpressionProfiler {
+
+    private static final ThreadLocal<Frame> CURRENT = new ThreadLocal<>();
+    // number of evaluations being profiled on any thread, so unprofiled scans stay cheap
+    private static final AtomicInteger PROFILING = new AtomicInteger();
+
+    private static final ScheduledExecutorService DUMPS = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("expression-profiler").daemon().factory()
+    );
+
+    private final Map<String, Profile> rules = new ConcurrentHashMap<>();
+
+    /**
+     * Statistics of one rule. Percentiles are accurate to within an eighth
+     * of their value.
+     */
+    public record RuleStatistics(
+        String rule,
+        long calls,
+        long totalNanos,
+        long maxNanos,
+        long p50Nanos,
+        long p90Nanos,
+        long p99Nanos,
+        long itemsScanned,
+        long thrown,
+        long swallowed
+    ) {
+
+        public long meanNanos() {
+            return calls == 0 ? 0 : totalNanos / calls;
+        }
+    }
+
+    /**
+     * Counts the items a list function visited, once per call, for the
+     * evaluation being profiled on this thread, if any.
+     */
+    public static void itemsScanned(int count) {
+        if (PROFILING.get() == 0) {
+            return;
+        }
+
+        var current = CURRENT.get();
+        if (current != null) {
+            current.scanned += count;
+        }
+    }
+
+    /**
+     * Runs {@code evaluation} of {@code rule}, recording its latency and the
+     * items it scanned. An exception is counted as thrown and rethrown, an
+     * undefined result is counted as an error the lenient evaluation
+     * swallowed.
+     */
+    public EvaluationResult profile(String rule, Supplier<EvaluationResult> evaluation) {
+        var profile = rules.get(rule);
+        if (profile == null) {
+            profile = rules.computeIfAbsent(rule, _ -> new Profile());
+        }
+
+        var parent = CURRENT.get();
+        var frame = new Frame();
+        CURRENT.set(frame);
+        PROFILING.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            var result = evaluation.get();
+            if (result.isUndefined()) {
+                profile.swallowed.increment();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            profile.thrown.increment();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            PROFILING.decrementAndGet();
+            CURRENT.set(parent);
+            if (parent != null) {
+                parent.scanned += frame.scanned;
+            }
+            profile.record(elapsed, frame.scanned);
+        }
+    }
+
+    /**
+     * The statistics of every rule evaluated so far, slowest in total first.
+     * Counters keep running while this reads them, so the figures of a rule
+     * may be a few evaluations apart.
+     */
+    public List<RuleStatistics> snapshot() {
+        var snapshot = new ArrayList<RuleStatistics>(rules.size());
+        rules.forEach((rule, profile) -> snapshot.add(profile.statistics(rule)));
+        snapshot.sort(Comparator.comparingLong(RuleStatistics::totalNanos).reversed());
+        return snapshot;
+    }
+
+    public void reset() {
+        rules.clear();
+    }
+
+    /**
+     * Passes {@link #format()} to {@code output} every {@code period} until
+     * the returned future is cancelled.
+     */
+    public ScheduledFuture<?> dumpEvery(Duration period, Consumer<String> output) {
+        long nanos = period.toNanos();
+        return DUMPS.scheduleAtFixedRate(() -> output.accept(format()), nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The {@link #snapshot()} as a table, one rule per line.
+     */
+    public String format() {
+        var table = new StringBuilder(
+            "%10s %10s %10s %10s %10s %10s %10s %10s %8s %9s  %s%n".formatted(
+                "calls", "total ms", "mean us", "p50 us", "p90 us", "p99 us", "max us", "scanned", "thrown", "swallowed", "rule"
+            )
+        );
+        for (var s : snapshot()) {
+            table.append("%10d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %10d %8d %9d  %s%n".formatted(
+                s.calls(),
+                s.totalNanos() / 1e6,
+                s.meanNanos() / 1e3,
+                s.p50Nanos() / 1e3,
+                s.p90Nanos() / 1e3,
+                s.p99Nanos() / 1e3,
+                s.maxNanos() / 1e3,
+                s.itemsScanned(),
+                s.thrown(),
+                s.swallowed(),
+                s.rule()
+            ));
+        }
+        return table.toString();
+    }
+
+    private static final class Frame {
+        long scanned;
+    }
+
+    private static final class Profile {
+
+        // below 8ns one bucket per nanosecond, then 8 buckets per power of two
+        private static final int SUB_BUCKETS = 8;
+        private static final int BUCKETS = (Long.SIZE - 3) * SUB_BUCKETS;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder thrown = new LongAdder();
+        private final LongAdder swallowed = new LongAdder();
+        private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos, long items) {
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (items != 0) {
+                scanned.add(items);
+            }
+            latencies.incrementAndGet(bucket(nanos));
+        }
+
+        RuleStatistics statistics(String rule) {
+            var counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = latencies.get(i);
+                total += counts[i];
+            }
+            return new RuleStatistics(
+                rule,
+                calls.sum(),
+                totalNanos.sum(),
+                maxNanos.get(),
+                percentile(counts, total, 0.50),
+                percentile(counts, total, 0.90),
+                percentile(counts, total, 0.99),
+                scanned.sum(),
+                thrown.sum(),
+                swallowed.sum()
+            );
+        }
+
+        private static long percentile(long[] counts, long total, double fraction) {
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) Math.max(nanos, 0);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return (exponent - 2) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + 2;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 3);
+            return lower + (1L << (exponent - 3)) - 1;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package mafia.engine.expression.checker;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import mafia.engine.expression.parser.Node;
+
+/**
+ * An {@code is} or {@code is not} whose left side is declared as an enum and
+ * whose right side names one of its constants. Compilers that know it can
+ * compare the enum by reference; everything else sees the original keyword.
+ */
+@Accessors(fluent = true)
+public final class EnumComparison extends Node {
+
+    @Getter
+    private final Enum<?> constant;
+
+    public EnumComparison(Node keyword, Node left, Enum<?> constant) {
+        super(keyword.type(), keyword.value(), left, keyword.right());
+        this.constant = constant;
+    }
+
+    public boolean negated() {
+        return value().equals("is not");
+    }
+
+    @Override
+    public Node clone() {
+        var copy = super.clone();
+        return new EnumComparison(copy, copy.left(), constant);
+    }
+}
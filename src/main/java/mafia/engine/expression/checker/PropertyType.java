@@ -0,0 +1,50 @@
+package mafia.engine.expression.checker;
+
+/**
+ * Static type of a property or expression. {@code enumType} is set for
+ * {@link Kind#ENUM}, {@code scope} names the receiver of a
+ * {@link Kind#HOLDER} or the items of a {@link Kind#LIST}.
+ */
+public record PropertyType(Kind kind, Class<? extends Enum<?>> enumType, String scope) {
+
+    public enum Kind {
+        // not known until the expression is evaluated
+        ANY,
+        BOOLEAN,
+        NUMBER,
+        STRING,
+        ENUM,
+        HOLDER,
+        LIST,
+        // an identifier that is not a property and evaluates to its own name
+        WORD
+    }
+
+    public static final PropertyType ANY = new PropertyType(Kind.ANY, null, null);
+    public static final PropertyType BOOLEAN = new PropertyType(Kind.BOOLEAN, null, null);
+    public static final PropertyType NUMBER = new PropertyType(Kind.NUMBER, null, null);
+    public static final PropertyType STRING = new PropertyType(Kind.STRING, null, null);
+    public static final PropertyType WORD = new PropertyType(Kind.WORD, null, null);
+
+    public static PropertyType enumOf(Class<? extends Enum<?>> enumType) {
+        return new PropertyType(Kind.ENUM, enumType, null);
+    }
+
+    public static PropertyType holder(String scope) {
+        return new PropertyType(Kind.HOLDER, null, scope);
+    }
+
+    public static PropertyType list(String scope) {
+        return new PropertyType(Kind.LIST, null, scope);
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case ENUM -> enumType.getSimpleName();
+            case HOLDER -> scope;
+            case LIST -> "list of " + (scope == null ? "any" : scope);
+            default -> kind.name().toLowerCase();
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package mafia.engine.expression.checker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Declared properties of each kind of receiver. Scopes are named after
+ * {@link mafia.engine.property.Properties#propertyName()}, so {@code player}
+ * describes the properties of every player.
+ * <p>
+ * A declared property may still be missing at runtime, but a property that
+ * is not declared for a declared scope is a mistake in the rule.
+ * </p>
+ */
+public class Schema {
+
+    private final Map<String, Map<String, PropertyType>> scopes = new HashMap<>();
+
+    public Schema declare(String scope, String propertyName, PropertyType type) {
+        scopes.computeIfAbsent(scope, _ -> new HashMap<>()).put(propertyName, type);
+        return this;
+    }
+
+    public boolean declares(String scope) {
+        return scope != null && scopes.containsKey(scope);
+    }
+
+    /**
+     * Type of {@code propertyName} in {@code scope}, or {@code null} when it
+     * is not declared.
+     */
+    public PropertyType type(String scope, String propertyName) {
+        var properties = scopes.get(scope);
+        return properties == null ? null : properties.get(propertyName);
+    }
+
+    /**
+     * Every declaration, in an order that does not depend on the order they
+     * were made in, so that equal schemas have equal fingerprints.
+     */
+    public String fingerprint() {
+        var fingerprint = new StringBuilder();
+        new TreeMap<>(scopes).forEach((scope, properties) ->
+            new TreeMap<>(properties).forEach((propertyName, type) -> {
+                fingerprint.append(scope).append('.').append(propertyName).append(": ").append(type);
+                if (type.enumType() != null) {
+                    fingerprint.append(' ').append(Arrays.toString(type.enumType().getEnumConstants()));
+                }
+                fingerprint.append('\n');
+            })
+        );
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package mafia.engine.expression.checker;
+
+import mafia.engine.expression.checker.PropertyType.Kind;
+import mafia.engine.expression.lexer.Token.Type;
+import mafia.engine.expression.parser.Call;
+import mafia.engine.expression.parser.Node;
+
+/**
+ * Infers the static type of every node of an expression from a
+ * {@link Schema}, once, when the rules are loaded.
+ * <p>
+ * Expressions that would always fail for a receiver of the given scope, such
+ * as arithmetic on a string or a property that is not declared, are rejected
+ * with a {@link TypeMismatchException}. Where the types are known the tree is
+ * rewritten with specialised nodes like {@link EnumComparison}. Anything of
+ * type {@link Kind#ANY} is left for the runtime checks.
+ * </p>
+ */
+public class TypeChecker {
+
+    // raised whenever the checked trees change, so that stored ones are rebuilt
+    public static final int VERSION = 1;
+
+    private final Schema schema;
+
+    public TypeChecker(Schema schema) {
+        this.schema = schema;
+    }
+
+    private record Typed(Node node, PropertyType type) {}
+
+    /**
+     * Checks {@code node}, the parsed form of {@code expression}, for a
+     * receiver named {@code scope}, and returns it with specialised nodes.
+     */
+    public Node check(String expression, Node node, String scope) {
+        try {
+            return check(node, scope).node();
+        } catch (TypeMismatchException e) {
+            throw new TypeMismatchException("Rule '" + expression.strip() + "': " + e.getMessage());
+        }
+    }
+
+    private Typed check(Node node, String scope) {
+        if (node == null) {
+            return new Typed(null, PropertyType.ANY);
+        }
+
+        return switch (node.type()) {
+            case NUMBER                 -> new Typed(node, PropertyType.NUMBER);
+            case BOOLEAN                -> new Typed(node, PropertyType.BOOLEAN);
+            case FUNCTION               -> new Typed(node, PropertyType.WORD);
+            case IDENTIFIER             -> new Typed(node, identifier(node.value(), scope));
+            case DOT                    -> checkDot(node, scope);
+            case CALL                   -> checkCall(node, scope);
+            case ARITHMETIC_OPERATOR    -> {
+                var message = node.left() == null
+                    ? "Unary '-' requires a number"
+                    : "Arithmetic operator '" + node.value() + "' requires numeric operands";
+                yield operator(node, scope, Kind.NUMBER, message, PropertyType.NUMBER);
+            }
+            case LOGICAL_OPERATOR       -> operator(node, scope, Kind.BOOLEAN, "Expected boolean", PropertyType.BOOLEAN);
+            case RELATIONAL_OPERATOR    -> switch (node.value()) {
+                case "==", "!=" -> operator(node, scope, null, null, PropertyType.BOOLEAN);
+                default -> operator(node, scope, Kind.NUMBER, "Numeric comparison required", PropertyType.BOOLEAN);
+            };
+            case KEYWORD                -> checkKeyword(node, scope);
+            default                     -> new Typed(node, PropertyType.ANY);
+        };
+    }
+
+    private PropertyType identifier(String name, String scope) {
+        if (!schema.declares(scope)) {
+            return PropertyType.ANY;
+        }
+
+        var type = schema.type(scope, name);
+        return type != null ? type : PropertyType.WORD;
+    }
+
+    private PropertyType property(String name, String scope) {
+        if (!schema.declares(scope)) {
+            return PropertyType.ANY;
+        }
+
+        var type = schema.type(scope, name);
+        if (type == null) {
+            throw new TypeMismatchException("Property '%s' is not declared for %s".formatted(name, scope));
+        }
+        return type;
+    }
+
+    private Typed checkDot(Node node, String scope) {
+        var left = check(node.left(), scope);
+        var name = node.right().value();
+
+        var type = switch (left.type().kind()) {
+            case ANY -> PropertyType.ANY;
+            case LIST -> {
+                if (!name.equals("size")) {
+                    throw new TypeMismatchException("Only 'size' property is supported for lists");
+                }
+                yield PropertyType.NUMBER;
+            }
+            case HOLDER -> property(name, left.type().scope());
+            // anything else that is not a property holder reads the receiver
+            case WORD, STRING, ENUM -> property(name, scope);
+            case BOOLEAN, NUMBER -> throw new TypeMismatchException(
+                "Left side of '.' must be an identifier, got " + left.type()
+            );
+        };
+        return new Typed(rebuild(node, left.node(), node.right()), type);
+    }
+
+    private Typed checkCall(Node node, String scope) {
+        var call = (Call) node;
+        var function = call.function();
+        var name = function.name();
+
+        var checked = new Node[call.arity()];
+        var changed = false;
+        String itemScope = null;
+        for (int i = 0; i < checked.length; i++) {
+            var parameter = function.parameters().get(i);
+            // conditions and values are evaluated against each item of the list
+            var argument = check(call.argument(i), parameter.perItem() ? itemScope : scope);
+            switch (parameter) {
+                case LIST -> {
+                    require(argument, Kind.LIST, ordinal(i) + " argument of " + name + "() must be a list");
+                    itemScope = argument.type().kind() == Kind.LIST ? argument.type().scope() : null;
+                }
+                case VALUE -> require(argument, Kind.NUMBER, "Values of " + name + "() must be numbers");
+                case NUMBER -> require(argument, Kind.NUMBER, ordinal(i) + " argument of " + name + "() must be a number");
+                case CONDITION -> {}
+            }
+            checked[i] = argument.node();
+            changed |= checked[i] != call.argument(i);
+        }
+
+        return new Typed(changed ? new Call(function, checked) : call, switch (function.returns()) {
+            case NUMBER -> PropertyType.NUMBER;
+            case LIST -> PropertyType.list(itemScope);
+            case BOOLEAN -> PropertyType.BOOLEAN;
+            default -> PropertyType.ANY;
+        });
+    }
+
+    private static String ordinal(int index) {
+        return switch (index) {
+            case 0 -> "First";
+            case 1 -> "Second";
+            case 2 -> "Third";
+            default -> (index + 1) + "th";
+        };
+    }
+
+    private Typed checkKeyword(Node node, String scope) {
+        var left = check(node.left(), scope);
+        var right = check(node.right(), scope);
+        var checked = rebuild(node, left.node(), right.node());
+
+        var isComparison = node.value().equals("is") || node.value().equals("is not");
+        if (isComparison
+            && left.type().kind() == Kind.ENUM
+            && right.type().kind() == Kind.WORD
+            && right.node().type() == Type.IDENTIFIER) {
+            var constant = constant(left.type().enumType(), right.node().value());
+            if (constant == null) {
+                throw new TypeMismatchException(
+                    "'%s' is not a %s".formatted(right.node().value(), left.type())
+                );
+            }
+
+            // the runtime compares names, so this only holds when toString is the name
+            if (printsName(left.type().enumType())) {
+                checked = new EnumComparison(checked, left.node(), constant);
+            }
+        }
+        return new Typed(checked, PropertyType.BOOLEAN);
+    }
+
+    private Typed operator(Node node, String scope, Kind operands, String message, PropertyType result) {
+        var left = check(node.left(), scope);
+        var right = check(node.right(), scope);
+
+        if (operands != null) {
+            if (left.node() != null) {
+                require(left, operands, message);
+            }
+            require(right, operands, message);
+        }
+        return new Typed(rebuild(node, left.node(), right.node()), result);
+    }
+
+    private static void require(Typed typed, Kind kind, String message) {
+        var actual = typed.type().kind();
+        if (actual != Kind.ANY && actual != kind) {
+            throw new TypeMismatchException(message + ", got " + typed.type());
+        }
+    }
+
+    private static Enum<?> constant(Class<? extends Enum<?>> enumType, String name) {
+        for (var constant : enumType.getEnumConstants()) {
+            if (constant.name().equals(name)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
+    private static boolean printsName(Class<? extends Enum<?>> enumType) {
+        for (var constant : enumType.getEnumConstants()) {
+            if (!constant.toString().equals(constant.name())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Node rebuild(Node node, Node left, Node right) {
+        if (left == node.left() && right == node.right()) {
+            return node;
+        }
+        return node.withChildren(left, right);
+    }
+}
@@ -0,0 +1,8 @@
+package mafia.engine.expression.checker;
+
+public class TypeMismatchException extends RuntimeException {
+
+    public TypeMismatchException(String message) {
+        super(message);
+    }
+}
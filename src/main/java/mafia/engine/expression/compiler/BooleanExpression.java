@@ -0,0 +1,9 @@
+package mafia.engine.expression.compiler;
+
+import mafia.engine.property.Properties;
+
+@FunctionalInterface
+public interface BooleanExpression {
+
+    boolean test(Properties properties);
+}
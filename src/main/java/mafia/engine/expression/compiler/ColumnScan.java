@@ -0,0 +1,128 @@
+package mafia.engine.expression.compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import mafia.engine.expression.lexer.Token.Type;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.property.PropertyTable;
+import mafia.engine.property.PropertyTable.Selection;
+
+/**
+ * The condition of a list function in a form the columns of a
+ * {@link PropertyTable} can answer, for lists that are one.
+ * <p>
+ * Only {@code is}, {@code is not}, flags read with {@code .} and the logical
+ * operators are translated. The table declines when a row would not evaluate
+ * to a boolean, so the rows it returns are exactly the items for which the
+ * condition is {@code true}.
+ * </p>
+ */
+record ColumnScan(Selection selection, Set<String> identifiers) {
+
+    /**
+     * Returns {@code condition} as a column scan, or {@code null} when it
+     * reads anything else.
+     */
+    static ColumnScan of(Node condition) {
+        var identifiers = new LinkedHashSet<String>();
+        var selection = selection(condition, identifiers);
+        return selection == null ? null : new ColumnScan(selection, Set.copyOf(identifiers));
+    }
+
+    /**
+     * The items matching the condition, or {@code null} when {@code items}
+     * have to be tested one by one.
+     */
+    BitSet rows(Collection<?> items) {
+        return items instanceof PropertyTable<?> table ? table.select(selection, identifiers) : null;
+    }
+
+    /**
+     * Result of {@code count} stopping at {@code limit} for {@code matches}
+     * matching items. The first match is counted even for a limit below one.
+     */
+    static int count(int matches, int limit) {
+        return matches == 0 ? 0 : Math.max(1, Math.min(matches, limit));
+    }
+
+    static List<Object> filter(BitSet rows, Collection<?> items) {
+        var table = (PropertyTable<?>) items;
+        var result = new ArrayList<Object>(rows.cardinality());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            result.add(table.get(row));
+        }
+        return result;
+    }
+
+    private static Selection selection(Node node, Set<String> identifiers) {
+        if (node == null) {
+            return null;
+        }
+
+        return switch (node.type()) {
+            case LOGICAL_OPERATOR -> switch (node.value().toLowerCase()) {
+                case "!", "not" -> {
+                    var right = node.left() == null ? selection(node.right(), identifiers) : null;
+                    yield right == null ? null : new Selection.Not(right);
+                }
+                case "&&", "and", "||", "or" -> {
+                    var left = selection(node.left(), identifiers);
+                    var right = left == null ? null : selection(node.right(), identifiers);
+                    if (right == null) {
+                        yield null;
+                    }
+                    var isAnd = node.value().equals("&&") || node.value().equalsIgnoreCase("and");
+                    yield isAnd ? new Selection.And(left, right) : new Selection.Or(left, right);
+                }
+                default -> null;
+            };
+            case KEYWORD -> {
+                var negated = node.value().equals("is not");
+                if (!negated && !node.value().equals("is")
+                    || node.right() == null || node.right().type() != Type.IDENTIFIER) {
+                    yield null;
+                }
+
+                var path = path(node.left(), identifiers);
+                if (path == null) {
+                    yield null;
+                }
+
+                identifiers.add(node.right().value());
+                Selection equals = new Selection.Equals(path, node.right().value());
+                yield negated ? new Selection.Not(equals) : equals;
+            }
+            case DOT -> {
+                var path = path(node, identifiers);
+                yield path == null ? null : new Selection.Flag(path);
+            }
+            default -> null;
+        };
+    }
+
+    /**
+     * The properties read by {@code item.a.b}, where {@code item} is any name
+     * the items do not have.
+     */
+    private static List<String> path(Node node, Set<String> identifiers) {
+        var path = new ArrayList<String>();
+        while (node != null && node.type() == Type.DOT) {
+            if (node.right() == null || node.right().type() != Type.IDENTIFIER) {
+                return null;
+            }
+            path.addFirst(node.right().value());
+            node = node.left();
+        }
+
+        if (node == null || node.type() != Type.IDENTIFIER || path.isEmpty()) {
+            return null;
+        }
+        identifiers.add(node.value());
+        return List.copyOf(path);
+    }
+}
@@ -0,0 +1,14 @@
+package mafia.engine.expression.compiler;
+
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.property.Properties;
+
+/**
+ * An expression whose {@link mafia.engine.expression.parser.Node} tree has been
+ * resolved into a tree of closures by the {@link Compiler}.
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+
+    EvaluationResult evaluate(Properties properties);
+}
@@ -0,0 +1,576 @@
+package mafia.engine.expression.compiler;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mafia.engine.expression.ExpressionProfiler;
+import mafia.engine.expression.checker.EnumComparison;
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.expression.evaluator.EvaluationType;
+import mafia.engine.expression.function.Builtins;
+import mafia.engine.expression.function.Function;
+import mafia.engine.expression.lexer.Token.Type;
+import mafia.engine.expression.parser.Call;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertySite;
+
+/**
+ * Turns a parsed {@link Node} tree into a tree of closures.
+ * <p>
+ * Operators, function names and literals are resolved once here instead of on
+ * every evaluation. The produced closures follow the semantics of the
+ * {@link mafia.engine.expression.evaluator.Evaluator}, which stays the reference
+ * implementation.
+ * </p>
+ */
+public class Compiler {
+
+    private final SharedExpressions shared;
+
+    // aggregates of the expression being compiled that are read from a fused scan
+    private Map<Node, Slot> fused = Map.of();
+
+    private record Slot(FusedScan scan, int index) {}
+
+    /**
+     * A compilation of a whole expression by a compiler that calls back into
+     * this one.
+     */
+    @FunctionalInterface
+    public interface Compilation<E extends Exception> {
+        CompiledExpression compile(Node node) throws E;
+    }
+
+    public Compiler() {
+        this(null);
+    }
+
+    /**
+     * Creates a compiler that routes aggregate calls through {@code shared},
+     * or compiles each one separately when it is {@code null}.
+     */
+    public Compiler(SharedExpressions shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * Whether {@code call} is compiled as a shared aggregate, which it is
+     * when another expression registered with the shared aggregates contains
+     * it too. Calls of a single expression keep their specialised form.
+     */
+    public boolean shares(Node call) {
+        return shared != null && call.type() == Type.CALL && shared.repeated(call);
+    }
+
+    /**
+     * Compiles a whole expression. Aggregates evaluated for the receiver of
+     * the expression that go over the same list are read from one
+     * {@link FusedScan}, so the list is only walked once per evaluation.
+     */
+    public CompiledExpression compileExpression(Node node) {
+        return fuse(node, this::compile);
+    }
+
+    /**
+     * Runs {@code compilation} with the aggregates of {@code node} fused as
+     * in {@link #compileExpression(Node)}.
+     */
+    public <E extends Exception> CompiledExpression fuse(Node node, Compilation<E> compilation) throws E {
+        var previous = fused;
+        fused = new IdentityHashMap<>();
+        try {
+            defineScans(node);
+            var compiled = compilation.compile(node);
+            return fused.isEmpty() ? compiled : FusedScan.framed(compiled);
+        } finally {
+            fused = previous;
+        }
+    }
+
+    public CompiledExpression compile(Node node) {
+        if (node == null) {
+            return _ -> EvaluationResult.VOID;
+        }
+
+        var value = node.value();
+        return switch (node.type()) {
+            case IDENTIFIER             -> compileIdentifier(value);
+            case FUNCTION               -> constant(new EvaluationResult(EvaluationType.LITERAL, value));
+            case NUMBER                 -> constant(new EvaluationResult(EvaluationType.NUMBER, Float.valueOf(value)));
+            case BOOLEAN                -> constant(EvaluationResult.of(Boolean.parseBoolean(value)));
+            case CALL                   -> shares(node) ? shared.share(node, this::compileShared) : compileCall(node);
+            case DOT                    -> compileDot(node);
+            case ARITHMETIC_OPERATOR    -> {
+                var number = compileArithmetic(value, node);
+                yield p -> Operations.number(number.evaluate(p));
+            }
+            case LOGICAL_OPERATOR,
+                RELATIONAL_OPERATOR,
+                KEYWORD                 -> {
+                var condition = compileBoolean(node);
+                yield p -> EvaluationResult.of(condition.test(p));
+            }
+            default                     -> throw new IllegalStateException("Unexpected type: " + node.type());
+        };
+    }
+
+    /**
+     * Compiles a node that must evaluate to a boolean, failing the same way
+     * the evaluator does when it does not.
+     */
+    public BooleanExpression compileBoolean(Node node) {
+        if (node != null) {
+            switch (node.type()) {
+                case BOOLEAN             -> {
+                    var b = Boolean.parseBoolean(node.value());
+                    return _ -> b;
+                }
+                case LOGICAL_OPERATOR    -> { return compileLogical(node.value(), node); }
+                case RELATIONAL_OPERATOR -> { return compileRelational(node.value(), node); }
+                case KEYWORD             -> { return compileKeyword(node.value(), node); }
+                case CALL                -> {
+                    if (!shares(node) && !fused.containsKey(node)) {
+                        var test = compileTest(functionName(node), ((Call) node).arguments());
+                        if (test != null) {
+                            return test;
+                        }
+                    }
+                }
+                default                  -> {}
+            }
+        }
+
+        var expression = compile(node);
+        return p -> Operations.requireBoolean(expression.evaluate(p));
+    }
+
+    /**
+     * Compiles a node that must evaluate to a number. {@code message} is the
+     * error raised when it does not.
+     */
+    public NumberExpression compileNumber(Node node, String message) {
+        if (node != null) {
+            switch (node.type()) {
+                case NUMBER -> {
+                    var f = Float.parseFloat(node.value());
+                    return _ -> f;
+                }
+                case ARITHMETIC_OPERATOR -> { return compileArithmetic(node.value(), node); }
+                case IDENTIFIER -> {
+                    var site = new PropertySite(node.value());
+                    return p -> Operations.identifierNumber(p, site, message);
+                }
+                case DOT -> {
+                    var left = compile(node.left());
+                    var site = new PropertySite(node.right().value());
+                    return p -> Operations.dotNumber(left.evaluate(p), p, site, message);
+                }
+                case CALL -> {
+                    if (functionName(node).equals("count") && !shares(node) && !fused.containsKey(node)) {
+                        var count = compileCount(((Call) node).arguments());
+                        return p -> count.count(p);
+                    }
+                }
+                default -> {}
+            }
+        }
+
+        var expression = compile(node);
+        return p -> Operations.requireNumber(expression.evaluate(p), message);
+    }
+
+    /**
+     * Compiles the condition of a list function, where anything but
+     * {@code true} counts as not matching.
+     */
+    private BooleanExpression compileCondition(Node node) {
+        if (node != null) {
+            switch (node.type()) {
+                case BOOLEAN, LOGICAL_OPERATOR, RELATIONAL_OPERATOR, KEYWORD -> { return compileBoolean(node); }
+                default -> {}
+            }
+        }
+
+        var expression = compile(node);
+        return p -> Operations.truthy(expression.evaluate(p));
+    }
+
+    private CompiledExpression compileIdentifier(String name) {
+        var site = new PropertySite(name);
+        var literal = new EvaluationResult(EvaluationType.LITERAL, name);
+        return p -> Operations.identifier(p, site, literal);
+    }
+
+    private CompiledExpression compileDot(Node node) {
+        var left = compile(node.left());
+        var site = new PropertySite(node.right().value());
+        return p -> Operations.dot(left.evaluate(p), p, site);
+    }
+
+    private NumberExpression compileArithmetic(String value, Node node) {
+        // Unary minus
+        if (value.equals("-") && node.left() == null) {
+            var right = compileNumber(node.right(), "Unary '-' requires a number");
+            return p -> -right.evaluate(p);
+        }
+
+        var message = "Arithmetic operator '" + value + "' requires numeric operands";
+        var left = compileNumber(node.left(), message);
+        var right = compileNumber(node.right(), message);
+
+        return switch (value) {
+            case "+" -> p -> left.evaluate(p) + right.evaluate(p);
+            case "-" -> p -> left.evaluate(p) - right.evaluate(p);
+            case "*" -> p -> left.evaluate(p) * right.evaluate(p);
+            case "/" -> p -> Operations.divide(left.evaluate(p), right.evaluate(p));
+            default -> throw new IllegalStateException("Unexpected arithmetic: " + value);
+        };
+    }
+
+    private BooleanExpression compileLogical(String value, Node node) {
+        var right = compileBoolean(node.right());
+
+        return switch (value.toLowerCase()) {
+            case "&&", "and" -> {
+                var left = compileBoolean(node.left());
+                yield p -> left.test(p) && right.test(p);
+            }
+            case "||", "or" -> {
+                var left = compileBoolean(node.left());
+                yield p -> left.test(p) || right.test(p);
+            }
+            case "!", "not" -> p -> !right.test(p);
+            default -> throw new IllegalStateException("Unexpected logical: " + value);
+        };
+    }
+
+    private BooleanExpression compileRelational(String value, Node node) {
+        switch (value) {
+            case "==", "!=" -> {
+                var left = compile(node.left());
+                var right = compile(node.right());
+                return value.equals("==")
+                    ? p -> Operations.equal(left.evaluate(p), right.evaluate(p))
+                    : p -> !Operations.equal(left.evaluate(p), right.evaluate(p));
+            }
+            default -> {}
+        }
+
+        var message = "Numeric comparison required";
+        var left = compileNumber(node.left(), message);
+        var right = compileNumber(node.right(), message);
+
+        return switch (value) {
+            case "<" -> p -> left.evaluate(p) < right.evaluate(p);
+            case ">" -> p -> left.evaluate(p) > right.evaluate(p);
+            case "<=" -> p -> left.evaluate(p) <= right.evaluate(p);
+            case ">=" -> p -> left.evaluate(p) >= right.evaluate(p);
+            default -> throw new IllegalStateException("Unexpected relational: " + value);
+        };
+    }
+
+    private BooleanExpression compileKeyword(String value, Node node) {
+        var left = compile(node.left());
+        var right = compile(node.right());
+
+        if (node instanceof EnumComparison comparison) {
+            var constant = comparison.constant();
+            var name = node.right().value();
+            return comparison.negated()
+                ? p -> !Operations.sameConstant(left.evaluate(p), right.evaluate(p), constant, name)
+                : p -> Operations.sameConstant(left.evaluate(p), right.evaluate(p), constant, name);
+        }
+
+        return switch (value) {
+            case "is in" -> {
+                var site = membership(node.right());
+                yield p -> site.isIn(left.evaluate(p), right.evaluate(p));
+            }
+            case "is" -> p -> Operations.same(left.evaluate(p), right.evaluate(p));
+            case "is not" -> p -> !Operations.same(left.evaluate(p), right.evaluate(p));
+            default -> throw new IllegalStateException("Unexpected keyword: " + value);
+        };
+    }
+
+    private CompiledExpression compileCall(Node node) {
+        var slot = fused.get(node);
+        var direct = compileAggregate(node);
+        return slot == null ? direct : slot.scan().read(slot.index(), direct);
+    }
+
+    // a shared call is reused by other expressions, so it reads nothing from the scans of this one
+    private CompiledExpression compileShared(Node node) {
+        var previous = fused;
+        fused = Map.of();
+        try {
+            return compileAggregate(node);
+        } finally {
+            fused = previous;
+        }
+    }
+
+    private CompiledExpression compileAggregate(Node node) {
+        var call = (Call) node;
+        var name = functionName(call);
+        var args = call.arguments();
+
+        return switch (name) {
+            case "count" -> {
+                var count = compileCount(args);
+                yield p -> Operations.count(count.count(p));
+            }
+            case "filter" -> compileFilter(args);
+            case "contains", "exists", "any", "all", "none" -> {
+                var test = compileTest(name, args);
+                yield p -> EvaluationResult.of(test.test(p));
+            }
+            default -> {
+                // any other function runs its own implementation on the compiled arguments
+                var function = call.function();
+                var arguments = new CompiledExpression[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    arguments[i] = compile(args[i]);
+                }
+                Function.Arguments evaluated = (i, p) -> arguments[i].evaluate(p);
+                yield p -> function.apply(evaluated, p);
+            }
+        };
+    }
+
+    /**
+     * Compiles the list functions returning a boolean, or returns
+     * {@code null} for any other function.
+     */
+    private BooleanExpression compileTest(String name, Node[] args) {
+        return switch (name) {
+            case "contains", "exists", "any" -> compileAnyMatch(name, args, true);
+            case "all" -> {
+                var anyFails = compileAnyMatch(name, args, false);
+                yield p -> !anyFails.test(p);
+            }
+            case "none" -> {
+                var anyMatches = compileAnyMatch(name, args, true);
+                yield p -> !anyMatches.test(p);
+            }
+            default -> null;
+        };
+    }
+
+    private Counter compileCount(Node[] args) {
+        var list = compile(args[0]);
+        var condition = compileCondition(args[1]);
+        var columns = ColumnScan.of(args[1]);
+
+        if (args.length == 3) {
+            var limit = compile(args[2]);
+            return p -> {
+                var items = Operations.collection(list.evaluate(p), "count");
+                var max = Operations.limit(limit.evaluate(p), "count");
+                var rows = columns == null ? null : columns.rows(items);
+                if (rows != null) {
+                    return ColumnScan.count(rows.cardinality(), max);
+                }
+
+                var counter = 0;
+                var scanned = 0;
+                for (var item : items) {
+                    scanned++;
+                    if (condition.test(Operations.propertiesOf(item)) && ++counter >= max) {
+                        break;
+                    }
+                }
+                ExpressionProfiler.itemsScanned(scanned);
+                return counter;
+            };
+        }
+
+        return p -> {
+            var items = Operations.collection(list.evaluate(p), "count");
+            var rows = columns == null ? null : columns.rows(items);
+            if (rows != null) {
+                return rows.cardinality();
+            }
+
+            var counter = 0;
+            for (var item : items) {
+                if (condition.test(Operations.propertiesOf(item))) {
+                    counter++;
+                }
+            }
+            ExpressionProfiler.itemsScanned(items.size());
+            return counter;
+        };
+    }
+
+    private CompiledExpression compileFilter(Node[] args) {
+        var list = compile(args[0]);
+        var condition = compileCondition(args[1]);
+        var columns = ColumnScan.of(args[1]);
+
+        return p -> {
+            var items = Operations.collection(list.evaluate(p), "filter");
+            var rows = columns == null ? null : columns.rows(items);
+            if (rows != null) {
+                return Operations.list(ColumnScan.filter(rows, items));
+            }
+
+            var result = new ArrayList<Object>();
+            for (var item : items) {
+                if (condition.test(Operations.propertiesOf(item))) {
+                    result.add(item);
+                }
+            }
+            ExpressionProfiler.itemsScanned(items.size());
+            return Operations.list(result);
+        };
+    }
+
+    /**
+     * Whether the condition of some item is {@code expected}, stopping at the
+     * first one that is.
+     */
+    private BooleanExpression compileAnyMatch(String name, Node[] args, boolean expected) {
+        var list = compile(args[0]);
+        var condition = compileCondition(args[1]);
+        var columns = ColumnScan.of(args[1]);
+
+        return p -> {
+            var items = Operations.collection(list.evaluate(p), name);
+            var rows = columns == null ? null : columns.rows(items);
+            if (rows != null) {
+                return expected ? !rows.isEmpty() : rows.cardinality() < items.size();
+            }
+
+            var scanned = 0;
+            for (var item : items) {
+                scanned++;
+                if (condition.test(Operations.propertiesOf(item)) == expected) {
+                    ExpressionProfiler.itemsScanned(scanned);
+                    return true;
+                }
+            }
+            ExpressionProfiler.itemsScanned(scanned);
+            return false;
+        };
+    }
+
+    /**
+     * Groups the aggregates evaluated for the receiver of {@code node} by the
+     * list they go over, and defines a scan for every list shared by more
+     * than one of them.
+     */
+    private void defineScans(Node node) {
+        var groups = new LinkedHashMap<String, Map<String, List<Node>>>();
+        collectAggregates(node, groups);
+
+        var scans = new ArrayList<FusedScan>();
+        var members = new ArrayList<Map<String, List<Node>>>();
+        for (var group : groups.values()) {
+            if (group.size() < 2) {
+                continue;
+            }
+
+            var scan = new FusedScan();
+            var index = 0;
+            for (var calls : group.values()) {
+                for (var call : calls) {
+                    fused.put(call, new Slot(scan, index));
+                }
+                index++;
+            }
+            scans.add(scan);
+            members.add(group);
+        }
+
+        // lists may contain fused aggregates themselves, so they are compiled last
+        for (int i = 0; i < scans.size(); i++) {
+            var aggregates = new ArrayList<FusedScan.Aggregate>();
+            CompiledExpression list = null;
+            for (var calls : members.get(i).values()) {
+                var call = calls.getFirst();
+                var args = ((Call) call).arguments();
+                if (list == null) {
+                    list = compile(args[0]);
+                }
+                aggregates.add(aggregate(functionName(call), args));
+            }
+            scans.get(i).define(list, aggregates);
+        }
+    }
+
+    private void collectAggregates(Node node, Map<String, Map<String, List<Node>>> groups) {
+        if (node == null) {
+            return;
+        }
+
+        if (node.type() != Type.CALL) {
+            collectAggregates(node.left(), groups);
+            collectAggregates(node.right(), groups);
+            return;
+        }
+        if (shares(node)) {
+            return;
+        }
+
+        var args = ((Call) node).arguments();
+        var fusable = switch (functionName(node)) {
+            case "count", "filter", "contains", "exists", "any", "all", "none" -> true;
+            default -> false;
+        };
+
+        if (fusable) {
+            groups.computeIfAbsent(args[0].detailedString(), _ -> new LinkedHashMap<>())
+                .computeIfAbsent(node.detailedString(), _ -> new ArrayList<>())
+                .add(node);
+        }
+
+        // the condition is evaluated for the items, everything else for the receiver
+        for (int i = 0; i < args.length; i++) {
+            if (i != 1) {
+                collectAggregates(args[i], groups);
+            }
+        }
+    }
+
+    private FusedScan.Aggregate aggregate(String name, Node[] args) {
+        var condition = compileCondition(args[1]);
+        var columns = ColumnScan.of(args[1]);
+        return switch (name) {
+            case "count" -> new FusedScan.Aggregate(name, FusedScan.Kind.COUNT, condition, columns,
+                args.length == 3 ? compile(args[2]) : null, false, false);
+            case "filter" -> new FusedScan.Aggregate(name, FusedScan.Kind.FILTER, condition, columns, null, false, false);
+            case "all" -> new FusedScan.Aggregate(name, FusedScan.Kind.ANY_MATCH, condition, columns, null, false, true);
+            case "none" -> new FusedScan.Aggregate(name, FusedScan.Kind.ANY_MATCH, condition, columns, null, true, true);
+            default -> new FusedScan.Aggregate(name, FusedScan.Kind.ANY_MATCH, condition, columns, null, true, false);
+        };
+    }
+
+    /**
+     * The site of an {@code is in} whose right side is {@code list}, split
+     * now when it is a word.
+     */
+    public static MembershipSite membership(Node list) {
+        return list != null && list.type() == Type.IDENTIFIER
+            ? new MembershipSite(list.value())
+            : new MembershipSite();
+    }
+
+    // the name of a built-in list function, which is specialised, or nothing for any other function
+    private static String functionName(Node call) {
+        var function = ((Call) call).function();
+        return Builtins.isListFunction(function) ? function.name() : "";
+    }
+
+    private static CompiledExpression constant(EvaluationResult result) {
+        return _ -> result;
+    }
+
+    @FunctionalInterface
+    private interface Counter {
+        int count(Properties properties);
+    }
+}
@@ -0,0 +1,42 @@
+package mafia.engine.expression.compiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import mafia.engine.property.Properties;
+
+/**
+ * Evaluation epoch of the receivers of one game. Aggregates shared between
+ * expressions are memoised per receiver until a property they read changes
+ * or the epoch of that receiver advances. Receivers bound to no epoch, such
+ * as snapshots, only follow their properties.
+ */
+public final class Epoch {
+
+    private static final Epoch NONE = new Epoch();
+
+    private final AtomicLong value = new AtomicLong();
+
+    /**
+     * Starts a new epoch, discarding the remembered results of every bound
+     * receiver.
+     */
+    public void advance() {
+        value.incrementAndGet();
+    }
+
+    public long current() {
+        return value.get();
+    }
+
+    /**
+     * Makes the aggregates memoised for {@code receiver} follow this epoch.
+     */
+    public void bind(Properties receiver) {
+        receiver.attach(Epoch.class, this);
+    }
+
+    static Epoch of(Properties receiver) {
+        Epoch epoch = receiver.attachment(Epoch.class);
+        return epoch == null ? NONE : epoch;
+    }
+}
@@ -0,0 +1,260 @@
+package mafia.engine.expression.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mafia.engine.expression.ExpressionProfiler;
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.property.Dependencies;
+import mafia.engine.property.Properties;
+
+/**
+ * Aggregates of one expression that go over the same list, evaluated in a
+ * single pass.
+ * <p>
+ * The first of them read during an evaluation of the expression runs the
+ * scan for all of them, and the others reuse its results until that
+ * evaluation returns. Every aggregate keeps its own outcome: a condition
+ * that fails only fails its own aggregate, when that one is read, and the
+ * scan stops once every aggregate is decided.
+ * </p>
+ */
+final class FusedScan {
+
+    enum Kind {
+        COUNT,
+        FILTER,
+        ANY_MATCH
+    }
+
+    /**
+     * One aggregate of the scan. {@code columns} is set when the condition
+     * can be answered by a {@link mafia.engine.property.PropertyTable},
+     * {@code limit} only for a bounded count; {@code expected} and
+     * {@code negate} describe an any-match.
+     */
+    record Aggregate(
+        String name,
+        Kind kind,
+        BooleanExpression condition,
+        ColumnScan columns,
+        CompiledExpression limit,
+        boolean expected,
+        boolean negate
+    ) {}
+
+    /**
+     * Outcome of every aggregate of the scan for one receiver.
+     */
+    static final class Results {
+
+        private final EvaluationResult[] values;
+        private final RuntimeException[] failures;
+        private final Dependencies dependencies = new Dependencies();
+
+        private Results(int size) {
+            values = new EvaluationResult[size];
+            failures = new RuntimeException[size];
+        }
+
+        EvaluationResult get(int index) {
+            if (failures[index] != null) {
+                throw failures[index];
+            }
+            return values[index];
+        }
+    }
+
+    private record Frame(Properties receiver, Map<FusedScan, Results> results) {}
+
+    private static final ThreadLocal<Frame> FRAME = new ThreadLocal<>();
+
+    private CompiledExpression list;
+    private Aggregate[] aggregates;
+
+    /**
+     * Sets what the scan computes. Called once, before the expression using
+     * it is published.
+     */
+    void define(CompiledExpression list, List<Aggregate> aggregates) {
+        this.list = list;
+        this.aggregates = aggregates.toArray(Aggregate[]::new);
+    }
+
+    /**
+     * Wraps a whole expression so that each of its evaluations shares one set
+     * of results per scan.
+     */
+    static CompiledExpression framed(CompiledExpression expression) {
+        return p -> {
+            var parent = FRAME.get();
+            FRAME.set(new Frame(p, new IdentityHashMap<>(4)));
+            try {
+                return expression.evaluate(p);
+            } finally {
+                FRAME.set(parent);
+            }
+        };
+    }
+
+    /**
+     * Reads aggregate {@code index}, or evaluates {@code direct} when not
+     * called from an evaluation of the expression for {@code receiver}.
+     */
+    CompiledExpression read(int index, CompiledExpression direct) {
+        return p -> {
+            var results = results(p);
+            return results == null ? direct.evaluate(p) : results.get(index);
+        };
+    }
+
+    private Results results(Properties receiver) {
+        var frame = FRAME.get();
+        if (frame == null || frame.receiver() != receiver) {
+            return null;
+        }
+
+        var results = frame.results().get(this);
+        if (results == null) {
+            var scanned = new Results(aggregates.length);
+            // the reads of every aggregate are reported for each of them
+            Dependencies.track(scanned.dependencies, () -> {
+                scan(receiver, scanned);
+                return null;
+            });
+            frame.results().put(this, scanned);
+            return scanned;
+        }
+
+        Dependencies.replay(results.dependencies);
+        return results;
+    }
+
+    private void scan(Properties receiver, Results results) {
+        var failures = results.failures;
+
+        EvaluationResult value;
+        try {
+            value = list.evaluate(receiver);
+        } catch (RuntimeException e) {
+            Arrays.fill(failures, e);
+            return;
+        }
+
+        var size = aggregates.length;
+        var active = new boolean[size];
+        var counts = new int[size];
+        var limits = new int[size];
+        var matched = new boolean[size];
+        @SuppressWarnings("unchecked")
+        var filtered = (List<Object>[]) new List<?>[size];
+
+        Collection<?> items = null;
+        var remaining = 0;
+        for (int i = 0; i < size; i++) {
+            var aggregate = aggregates[i];
+            try {
+                items = Operations.collection(value, aggregate.name());
+                limits[i] = aggregate.limit() == null
+                    ? Integer.MAX_VALUE
+                    : Operations.limit(aggregate.limit().evaluate(receiver), aggregate.name());
+            } catch (RuntimeException e) {
+                failures[i] = e;
+                continue;
+            }
+
+            var rows = aggregate.columns() == null ? null : aggregate.columns().rows(items);
+            if (rows != null) {
+                // answered by the columns, without taking part in the scan
+                switch (aggregate.kind()) {
+                    case COUNT -> counts[i] = ColumnScan.count(rows.cardinality(), limits[i]);
+                    case FILTER -> filtered[i] = ColumnScan.filter(rows, items);
+                    case ANY_MATCH -> matched[i] = aggregate.expected()
+                        ? !rows.isEmpty()
+                        : rows.cardinality() < items.size();
+                }
+                continue;
+            }
+
+            if (aggregate.kind() == Kind.FILTER) {
+                filtered[i] = new ArrayList<>();
+            }
+            active[i] = true;
+            remaining++;
+        }
+
+        if (remaining > 0) {
+            var scanned = 0;
+            for (var item : items) {
+                scanned++;
+                Properties properties;
+                try {
+                    properties = Operations.propertiesOf(item);
+                } catch (RuntimeException e) {
+                    for (int i = 0; i < size; i++) {
+                        if (active[i]) {
+                            failures[i] = e;
+                            active[i] = false;
+                        }
+                    }
+                    break;
+                }
+
+                for (int i = 0; i < size; i++) {
+                    if (!active[i]) {
+                        continue;
+                    }
+
+                    var aggregate = aggregates[i];
+                    boolean test;
+                    try {
+                        test = aggregate.condition().test(properties);
+                    } catch (RuntimeException e) {
+                        failures[i] = e;
+                        active[i] = false;
+                        remaining--;
+                        continue;
+                    }
+
+                    var decided = switch (aggregate.kind()) {
+                        case COUNT -> test && ++counts[i] >= limits[i];
+                        case FILTER -> {
+                            if (test) {
+                                filtered[i].add(item);
+                            }
+                            yield false;
+                        }
+                        case ANY_MATCH -> matched[i] = test == aggregate.expected();
+                    };
+
+                    if (decided) {
+                        active[i] = false;
+                        remaining--;
+                    }
+                }
+
+                if (remaining == 0) {
+                    break;
+                }
+            }
+            ExpressionProfiler.itemsScanned(scanned);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (failures[i] != null) {
+                continue;
+            }
+
+            var aggregate = aggregates[i];
+            results.values[i] = switch (aggregate.kind()) {
+                case COUNT -> Operations.count(counts[i]);
+                case FILTER -> Operations.list(filtered[i]);
+                case ANY_MATCH -> EvaluationResult.of(matched[i] != aggregate.negate());
+            };
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package mafia.engine.expression.compiler;
+
+import java.util.List;
+
+import mafia.engine.expression.checker.EnumComparison;
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.expression.evaluator.EvaluationType;
+import mafia.engine.expression.evaluator.UndefinedReason;
+import mafia.engine.expression.function.Function;
+import mafia.engine.expression.parser.Call;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyHolder;
+import mafia.engine.property.PropertySite;
+
+/**
+ * Compiles expressions that never throw while they are evaluated.
+ * <p>
+ * Where the {@link mafia.engine.expression.evaluator.Evaluator} raises an
+ * error, the closures produced here return {@link EvaluationResult#undefined}
+ * with the reason, and every operation passes an undefined operand through.
+ * Otherwise the results are the same, so an expression is undefined exactly
+ * when its strict evaluation fails.
+ * </p>
+ */
+public class LenientCompiler {
+
+    private static final EvaluationResult MISSING_PROPERTY = EvaluationResult.undefined(UndefinedReason.MISSING_PROPERTY);
+    private static final EvaluationResult NULL_VALUE = EvaluationResult.undefined(UndefinedReason.NULL_VALUE);
+    private static final EvaluationResult TYPE_MISMATCH = EvaluationResult.undefined(UndefinedReason.TYPE_MISMATCH);
+    private static final EvaluationResult DIVISION_BY_ZERO = EvaluationResult.undefined(UndefinedReason.DIVISION_BY_ZERO);
+    private static final EvaluationResult UNSUPPORTED = EvaluationResult.undefined(UndefinedReason.UNSUPPORTED);
+
+    private final SharedExpressions shared;
+
+    public LenientCompiler() {
+        this(null);
+    }
+
+    /**
+     * Creates a compiler that routes aggregate calls
+     * {@link SharedExpressions#repeated(Node) repeated} between expressions
+     * through {@code shared}. It must not be shared with a strict
+     * {@link Compiler}, whose closures throw.
+     */
+    public LenientCompiler(SharedExpressions shared) {
+        this.shared = shared;
+    }
+
+    public CompiledExpression compile(Node node) {
+        if (node == null) {
+            return _ -> EvaluationResult.VOID;
+        }
+
+        var value = node.value();
+        return switch (node.type()) {
+            case IDENTIFIER             -> {
+                var site = new PropertySite(value);
+                var literal = new EvaluationResult(EvaluationType.LITERAL, value);
+                yield p -> Operations.identifier(p, site, literal);
+            }
+            case FUNCTION               -> constant(new EvaluationResult(EvaluationType.LITERAL, value));
+            case NUMBER                 -> constant(new EvaluationResult(EvaluationType.NUMBER, Float.valueOf(value)));
+            case BOOLEAN                -> constant(EvaluationResult.of(Boolean.parseBoolean(value)));
+            case CALL                   -> shared != null && shared.repeated(node) ? shared.share(node, this::compileCall) : compileCall(node);
+            case DOT                    -> {
+                var left = compile(node.left());
+                var site = new PropertySite(node.right().value());
+                yield p -> dot(left.evaluate(p), p, site);
+            }
+            case ARITHMETIC_OPERATOR    -> compileArithmetic(value, node);
+            case LOGICAL_OPERATOR       -> compileLogical(value, node);
+            case RELATIONAL_OPERATOR    -> compileRelational(value, node);
+            case KEYWORD                -> compileKeyword(value, node);
+            default                     -> throw new IllegalStateException("Unexpected type: " + node.type());
+        };
+    }
+
+    private CompiledExpression compileArithmetic(String value, Node node) {
+        var right = compile(node.right());
+
+        // Unary minus
+        if (value.equals("-") && node.left() == null) {
+            return p -> {
+                var r = right.evaluate(p);
+                if (r.isUndefined()) {
+                    return r;
+                }
+                return r.type() == EvaluationType.NUMBER ? Operations.number(-number(r)) : TYPE_MISMATCH;
+            };
+        }
+
+        var left = compile(node.left());
+        var operator = switch (value) {
+            case "+", "-", "*", "/" -> value.charAt(0);
+            default -> throw new IllegalStateException("Unexpected arithmetic: " + value);
+        };
+
+        return p -> {
+            var l = left.evaluate(p);
+            if (l.isUndefined()) {
+                return l;
+            }
+            var r = right.evaluate(p);
+            if (r.isUndefined()) {
+                return r;
+            }
+            if (l.type() != EvaluationType.NUMBER || r.type() != EvaluationType.NUMBER) {
+                return TYPE_MISMATCH;
+            }
+
+            float a = number(l), b = number(r);
+            return switch (operator) {
+                case '+' -> Operations.number(a + b);
+                case '-' -> Operations.number(a - b);
+                case '*' -> Operations.number(a * b);
+                default -> b == 0f ? DIVISION_BY_ZERO : Operations.number(a / b);
+            };
+        };
+    }
+
+    private CompiledExpression compileLogical(String value, Node node) {
+        var right = compile(node.right());
+
+        return switch (value.toLowerCase()) {
+            case "&&", "and" -> {
+                var left = compile(node.left());
+                yield p -> {
+                    var l = left.evaluate(p);
+                    if (l.type() != EvaluationType.BOOLEAN) {
+                        return notBoolean(l);
+                    }
+                    return (Boolean) l.result() ? bool(right.evaluate(p)) : EvaluationResult.FALSE;
+                };
+            }
+            case "||", "or" -> {
+                var left = compile(node.left());
+                yield p -> {
+                    var l = left.evaluate(p);
+                    if (l.type() != EvaluationType.BOOLEAN) {
+                        return notBoolean(l);
+                    }
+                    return (Boolean) l.result() ? EvaluationResult.TRUE : bool(right.evaluate(p));
+                };
+            }
+            case "!", "not" -> p -> {
+                var r = right.evaluate(p);
+                if (r.type() != EvaluationType.BOOLEAN) {
+                    return notBoolean(r);
+                }
+                return EvaluationResult.of(!(Boolean) r.result());
+            };
+            default -> throw new IllegalStateException("Unexpected logical: " + value);
+        };
+    }
+
+    private CompiledExpression compileRelational(String value, Node node) {
+        var left = compile(node.left());
+        var right = compile(node.right());
+
+        return switch (value) {
+            case "==", "!=" -> {
+                var negate = value.equals("!=");
+                yield p -> {
+                    var l = left.evaluate(p);
+                    if (l.isUndefined()) {
+                        return l;
+                    }
+                    var r = right.evaluate(p);
+                    if (r.isUndefined()) {
+                        return r;
+                    }
+                    if (l.result() == null) {
+                        return NULL_VALUE;
+                    }
+                    return EvaluationResult.of(Operations.equal(l, r) != negate);
+                };
+            }
+            case "<", ">", "<=", ">=" -> p -> {
+                var l = left.evaluate(p);
+                if (l.isUndefined()) {
+                    return l;
+                }
+                var r = right.evaluate(p);
+                if (r.isUndefined()) {
+                    return r;
+                }
+                if (l.type() != EvaluationType.NUMBER || r.type() != EvaluationType.NUMBER) {
+                    return TYPE_MISMATCH;
+                }
+
+                float a = number(l), b = number(r);
+                return EvaluationResult.of(switch (value) {
+                    case "<" -> a < b;
+                    case ">" -> a > b;
+                    case "<=" -> a <= b;
+                    default -> a >= b;
+                });
+            };
+            default -> throw new IllegalStateException("Unexpected relational: " + value);
+        };
+    }
+
+    private CompiledExpression compileKeyword(String value, Node node) {
+        var left = compile(node.left());
+        var right = compile(node.right());
+
+        var negate = switch (value) {
+            case "is in", "is" -> false;
+            case "is not" -> true;
+            default -> throw new IllegalStateException("Unexpected keyword: " + value);
+        };
+        var constant = node instanceof EnumComparison comparison ? comparison.constant() : null;
+        var name = node.right() == null ? null : node.right().value();
+        var site = value.equals("is in") ? Compiler.membership(node.right()) : null;
+
+        return p -> {
+            var l = left.evaluate(p);
+            if (l.isUndefined()) {
+                return l;
+            }
+            var r = right.evaluate(p);
+            if (r.isUndefined()) {
+                return r;
+            }
+
+            if (value.equals("is in")) {
+                if (!(r.result() instanceof String)) {
+                    return TYPE_MISMATCH;
+                }
+                return l.result() == null ? NULL_VALUE : EvaluationResult.of(site.isIn(l, r));
+            }
+
+            if (l.type() == r.type() && (l.result() == null || r.result() == null)) {
+                return NULL_VALUE;
+            }
+            if (constant != null) {
+                return EvaluationResult.of(Operations.sameConstant(l, r, constant, name) != negate);
+            }
+            return EvaluationResult.of(Operations.same(l, r) != negate);
+        };
+    }
+
+    /**
+     * A call of any function, run on the compiled arguments by
+     * {@link Function#applyLenient}, which passes an undefined argument on
+     * and is undefined where the strict call fails.
+     */
+    private CompiledExpression compileCall(Node node) {
+        var call = (Call) node;
+        var function = call.function();
+        var args = call.arguments();
+        var arguments = new CompiledExpression[args.length];
+        for (int i = 0; i < args.length; i++) {
+            arguments[i] = compile(args[i]);
+        }
+
+        Function.Arguments evaluated = (i, p) -> arguments[i].evaluate(p);
+        return p -> function.applyLenient(evaluated, p);
+    }
+
+    private static EvaluationResult dot(EvaluationResult left, Properties properties, PropertySite site) {
+        if (left.isUndefined()) {
+            return left;
+        }
+        if (left.type() != EvaluationType.LIST && left.type() != EvaluationType.LITERAL) {
+            return TYPE_MISMATCH;
+        }
+
+        if (left.type() == EvaluationType.LIST) {
+            if (!site.name().equals("size")) {
+                return UNSUPPORTED;
+            }
+            return Operations.number(((List<?>) left.result()).size());
+        }
+
+        if (left.result() instanceof PropertyHolder ph) {
+            properties = ph.getProperties();
+        }
+
+        var raw = properties.getProperty(site);
+        if (raw == null && !properties.containsProperty(site)) {
+            return MISSING_PROPERTY;
+        }
+        return EvaluationResult.inferValue(raw);
+    }
+
+    /**
+     * {@code r} if it is a boolean, otherwise the reason it is not.
+     */
+    private static EvaluationResult bool(EvaluationResult r) {
+        return r.type() == EvaluationType.BOOLEAN ? r : notBoolean(r);
+    }
+
+    private static EvaluationResult notBoolean(EvaluationResult r) {
+        return r.isUndefined() ? r : TYPE_MISMATCH;
+    }
+
+    private static float number(EvaluationResult r) {
+        return ((Number) r.result()).floatValue();
+    }
+
+    private static CompiledExpression constant(EvaluationResult result) {
+        return _ -> result;
+    }
+}
@@ -0,0 +1,89 @@
+package mafia.engine.expression.compiler;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import mafia.engine.expression.evaluator.EvaluationResult;
+
+/**
+ * An {@code is in} of a compiled expression, with the comma separated list on
+ * its right side split into a set once instead of on every evaluation.
+ * <p>
+ * A literal list is split when the expression is compiled. A list read from
+ * a property is split the first time it is seen and kept for as long as the
+ * property holds the same string instance, which is the case for
+ * configuration constants. Enums are looked up in an {@link EnumSet} of the
+ * constants printing as one of the words.
+ * </p>
+ */
+public final class MembershipSite {
+
+    private record Membership(String list, Set<String> words, Class<?> enumType, EnumSet<?> constants) {
+
+        static Membership of(String list) {
+            var words = Arrays.stream(list.split(","))
+                .map(String::trim)
+                .collect(Collectors.toUnmodifiableSet());
+            return new Membership(list, words, null, null);
+        }
+
+        Membership withConstants(Class<? extends Enum<?>> enumType) {
+            return new Membership(list, words, enumType, constants(enumType));
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private EnumSet<?> constants(Class<? extends Enum<?>> enumType) {
+            var constants = EnumSet.noneOf((Class) enumType);
+            for (var constant : enumType.getEnumConstants()) {
+                if (words.contains(constant.toString())) {
+                    constants.add(constant);
+                }
+            }
+            return constants;
+        }
+    }
+
+    private volatile Membership membership;
+
+    /**
+     * A site whose list is only known when it is evaluated.
+     */
+    public MembershipSite() {}
+
+    /**
+     * A site whose right side is the word {@code literal}, split now.
+     */
+    public MembershipSite(String literal) {
+        this.membership = Membership.of(literal);
+    }
+
+    /**
+     * Whether {@code item} prints as one of the words of {@code list}.
+     *
+     * @throws IllegalStateException if {@code list} is not a string
+     */
+    public boolean isIn(EvaluationResult item, EvaluationResult list) {
+        if (!(list.result() instanceof String s)) {
+            throw new IllegalStateException("'in' requires a list");
+        }
+
+        var current = membership;
+        if (current == null || current.list() != s) {
+            current = Membership.of(s);
+            membership = current;
+        }
+
+        var value = item.result();
+        if (value instanceof Enum<?> e) {
+            var enumType = e.getDeclaringClass();
+            if (current.enumType() != enumType) {
+                current = current.withConstants(enumType);
+                membership = current;
+            }
+            return current.constants().contains(e);
+        }
+        return current.words().contains(value.toString());
+    }
+}
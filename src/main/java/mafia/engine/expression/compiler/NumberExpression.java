@@ -0,0 +1,9 @@
+package mafia.engine.expression.compiler;
+
+import mafia.engine.property.Properties;
+
+@FunctionalInterface
+public interface NumberExpression {
+
+    float evaluate(Properties properties);
+}
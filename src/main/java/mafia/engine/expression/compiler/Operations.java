@@ -0,0 +1,193 @@
+package mafia.engine.expression.compiler;
+
+import java.util.Collection;
+import java.util.List;
+
+import mafia.engine.expression.evaluator.ArgumentMismatchException;
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.expression.evaluator.EvaluationType;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertySite;
+import mafia.engine.property.PropertyHolder;
+
+/**
+ * Runtime operations shared by compiled closures and generated classes. Each
+ * one mirrors the matching step of the {@link mafia.engine.expression.evaluator.Evaluator}.
+ */
+public final class Operations {
+
+    private Operations() {}
+
+    public static EvaluationResult identifier(Properties properties, PropertySite site, EvaluationResult literal) {
+        var raw = properties.getProperty(site);
+        if (raw != null) {
+            return EvaluationResult.inferValue(raw);
+        }
+        return properties.containsProperty(site) ? EvaluationResult.NULL : literal;
+    }
+
+    public static EvaluationResult dot(EvaluationResult left, Properties properties, PropertySite site) {
+        if (left.type() != EvaluationType.LIST && left.type() != EvaluationType.LITERAL) {
+            throw new IllegalStateException("Left side of '.' must be an identifier");
+        }
+
+        if (left.result() instanceof PropertyHolder ph) {
+            properties = ph.getProperties();
+        }
+
+        if (left.type() == EvaluationType.LIST) {
+            if (!site.name().equals("size")) {
+                throw new IllegalStateException("Only 'size' property is supported for lists");
+            }
+            return new EvaluationResult(EvaluationType.NUMBER, Float.valueOf(((List<?>) left.result()).size()));
+        }
+
+        var raw = properties.getProperty(site);
+        if (raw == null && !properties.containsProperty(site)) {
+            throw new IllegalStateException(
+                "Property '%s' not found for %s".formatted(
+                    site.name(),
+                    properties.propertyName()
+                )
+            );
+        }
+        return EvaluationResult.inferValue(raw);
+    }
+
+    /**
+     * {@link #identifier} followed by {@link #requireNumber}, without boxing
+     * the value or creating a result.
+     */
+    public static float identifierNumber(Properties properties, PropertySite site, String message) {
+        if (properties.isNumber(site)) {
+            return properties.getFloat(site);
+        }
+        throw new IllegalStateException(message);
+    }
+
+    /**
+     * {@link #dot} followed by {@link #requireNumber}, without boxing the
+     * value or creating a result.
+     */
+    public static float dotNumber(EvaluationResult left, Properties properties, PropertySite site, String message) {
+        if (left.type() != EvaluationType.LIST && left.type() != EvaluationType.LITERAL) {
+            throw new IllegalStateException("Left side of '.' must be an identifier");
+        }
+
+        if (left.type() == EvaluationType.LIST) {
+            return requireNumber(dot(left, properties, site), message);
+        }
+
+        if (left.result() instanceof PropertyHolder ph) {
+            properties = ph.getProperties();
+        }
+
+        if (properties.isNumber(site)) {
+            return properties.getFloat(site);
+        }
+
+        if (!properties.containsProperty(site)) {
+            throw new IllegalStateException(
+                "Property '%s' not found for %s".formatted(
+                    site.name(),
+                    properties.propertyName()
+                )
+            );
+        }
+        throw new IllegalStateException(message);
+    }
+
+    public static boolean requireBoolean(EvaluationResult r) {
+        if (r.type() != EvaluationType.BOOLEAN) {
+            throw new IllegalStateException("Expected boolean but got " + r.type());
+        }
+        return (Boolean) r.result();
+    }
+
+    public static float requireNumber(EvaluationResult r, String message) {
+        if (r.type() != EvaluationType.NUMBER) {
+            throw new IllegalStateException(message);
+        }
+        return ((Number) r.result()).floatValue();
+    }
+
+    /**
+     * Condition of a list function: anything but {@code true} does not match.
+     */
+    public static boolean truthy(EvaluationResult r) {
+        return r.result() instanceof Boolean b && b;
+    }
+
+    public static float divide(float l, float r) {
+        if (r == 0f) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return l / r;
+    }
+
+    public static boolean equal(EvaluationResult l, EvaluationResult r) {
+        return l.result().equals(r.result());
+    }
+
+    public static boolean same(EvaluationResult l, EvaluationResult r) {
+        return l.type() == r.type() && l.result().toString().equals(r.result().toString());
+    }
+
+    /**
+     * {@link #same} for an enum compared with the constant {@code constant}
+     * spelled {@code name}. It is a reference check unless the operands are
+     * not what the type checker expected, such as a property shadowing the
+     * constant's name.
+     */
+    public static boolean sameConstant(EvaluationResult l, EvaluationResult r, Enum<?> constant, String name) {
+        if (r.result() == name
+            && l.result() instanceof Enum<?> e
+            && e.getDeclaringClass() == constant.getDeclaringClass()) {
+            return e == constant;
+        }
+        return same(l, r);
+    }
+
+    public static Collection<?> collection(EvaluationResult list, String functionName) {
+        var listObj = list.result();
+        if (!(listObj instanceof Collection<?> collection)) {
+            throw new ArgumentMismatchException(functionName, List.class, 1, listObj);
+        }
+        return collection;
+    }
+
+    /**
+     * The optional limit of {@code count}, the number of matches after which
+     * it stops.
+     */
+    public static int limit(EvaluationResult limit, String functionName) {
+        if (!(limit.result() instanceof Number n)) {
+            throw new ArgumentMismatchException(functionName, Number.class, 3, limit.result());
+        }
+        return n.intValue();
+    }
+
+    /**
+     * The properties of an item visited by a list function.
+     */
+    public static Properties propertiesOf(Object item) {
+        if (item instanceof PropertyHolder p) {
+            return p.getProperties();
+        }
+        throw new IllegalStateException(
+            "item " + item + " of type " + item.getClass() + "  does not contain any properties"
+        );
+    }
+
+    public static EvaluationResult number(float f) {
+        return new EvaluationResult(EvaluationType.NUMBER, f);
+    }
+
+    public static EvaluationResult count(int count) {
+        return new EvaluationResult(EvaluationType.NUMBER, count);
+    }
+
+    public static EvaluationResult list(List<?> list) {
+        return new EvaluationResult(EvaluationType.LIST, list);
+    }
+}
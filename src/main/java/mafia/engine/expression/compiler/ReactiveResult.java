@@ -0,0 +1,94 @@
+package mafia.engine.expression.compiler;
+
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.property.Dependencies;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyListener;
+
+/**
+ * Result of a compiled expression for one receiver. It is only recomputed
+ * after one of the properties read by the previous evaluation has changed.
+ * A failed evaluation is cached the same way, and each caller gets a copy
+ * of the exception it threw.
+ */
+public final class ReactiveResult implements PropertyListener {
+
+    private final CompiledExpression expression;
+    private final Properties receiver;
+
+    private volatile boolean dirty = true;
+    // written under the lock of get, read by listeners on the writing threads
+    private volatile Dependencies dependencies = new Dependencies();
+    private EvaluationResult result;
+    private RuntimeException failure;
+
+    public ReactiveResult(CompiledExpression expression, Properties receiver) {
+        this.expression = expression;
+        this.receiver = receiver;
+    }
+
+    public synchronized EvaluationResult get() {
+        if (dirty) {
+            recompute();
+        } else {
+            Dependencies.replay(dependencies);
+        }
+
+        if (failure != null) {
+            throw copy(failure);
+        }
+        return result;
+    }
+
+    public boolean dirty() {
+        return dirty;
+    }
+
+    public void invalidate() {
+        dirty = true;
+    }
+
+    @Override
+    public void propertyChanged(Properties properties, String propertyName) {
+        if (!dirty && dependencies.dependsOn(properties, propertyName)) {
+            dirty = true;
+        }
+    }
+
+    private void recompute() {
+        for (var source : dependencies.sources()) {
+            source.removeListener(this);
+        }
+
+        var tracked = new Dependencies();
+        dirty = false;
+        try {
+            result = Dependencies.track(tracked, () -> expression.evaluate(receiver));
+            failure = null;
+        } catch (RuntimeException e) {
+            result = null;
+            failure = e;
+        }
+
+        dependencies = tracked;
+        for (var source : tracked.sources()) {
+            source.addListener(this);
+        }
+
+        // a write during the evaluation may have been missed by the listeners
+        if (tracked.changedSinceRead()) {
+            dirty = true;
+        }
+    }
+
+    // an exception of the same type and message, caused by the cached one
+    private static RuntimeException copy(RuntimeException failure) {
+        try {
+            var copy = failure.getClass().getConstructor(String.class).newInstance(failure.getMessage());
+            copy.initCause(failure);
+            return copy;
+        } catch (ReflectiveOperationException | IllegalStateException e) {
+            return new IllegalStateException(failure.getMessage(), failure);
+        }
+    }
+}
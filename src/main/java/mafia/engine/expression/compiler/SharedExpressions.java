@@ -0,0 +1,140 @@
+package mafia.engine.expression.compiler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.expression.lexer.Token.Type;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.property.Properties;
+
+/**
+ * Memoised aggregate calls of the compiled expressions.
+ * <p>
+ * Structurally identical calls share one compiled closure, and its result is
+ * remembered per receiver as a {@link ReactiveResult} until one of the
+ * properties it read changes or the {@link Epoch} the receiver is bound to
+ * advances. Each scan therefore runs at most once per epoch and
+ * receiver, no matter how many rules contain it or how often they are
+ * evaluated.
+ * </p>
+ * <p>
+ * A call is only kept while an expression containing it is
+ * {@link #register(Node) registered}, so the memoised calls are bounded by
+ * the expressions their owner caches.
+ * </p>
+ */
+public class SharedExpressions {
+
+    /**
+     * Number of evaluations of memoised calls that reused a remembered result
+     * and that had to compute one.
+     */
+    public record Statistics(long hits, long misses) {
+
+        public Statistics plus(Statistics other) {
+            return new Statistics(hits + other.hits, misses + other.misses);
+        }
+    }
+
+    private final Map<String, Shared> expressions = new HashMap<>();
+    // number of registered expressions containing each call
+    private final Map<String, Integer> uses = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public Statistics statistics() {
+        return new Statistics(hits.sum(), misses.sum());
+    }
+
+    /**
+     * Counts the calls of {@code expression} as used until it is
+     * {@link #release(Node) released}.
+     */
+    public synchronized void register(Node expression) {
+        for (var call : calls(expression)) {
+            uses.merge(call, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Forgets the calls of a registered {@code expression}, dropping those no
+     * other registered expression contains. Expressions already compiled
+     * keep working with the closures they hold.
+     */
+    public synchronized void release(Node expression) {
+        for (var call : calls(expression)) {
+            if (uses.merge(call, -1, Integer::sum) <= 0) {
+                uses.remove(call);
+                expressions.remove(call);
+            }
+        }
+    }
+
+    /**
+     * Whether more than one registered expression contains {@code call}.
+     */
+    public synchronized boolean repeated(Node call) {
+        return uses.getOrDefault(call.detailedString(), 0) > 1;
+    }
+
+    synchronized CompiledExpression share(Node call, Function<Node, CompiledExpression> compile) {
+        var key = call.detailedString();
+        var shared = expressions.get(key);
+        if (shared == null) {
+            // compiled outside of the map since nested aggregates are shared too
+            shared = new Shared(compile.apply(call));
+            expressions.put(key, shared);
+        }
+        return shared;
+    }
+
+    // detailed strings of the distinct calls within a tree
+    private static Set<String> calls(Node node) {
+        var calls = new HashSet<String>();
+        collect(node, calls);
+        return calls;
+    }
+
+    private static void collect(Node node, Set<String> calls) {
+        if (node == null) {
+            return;
+        }
+        if (node.type() == Type.CALL) {
+            calls.add(node.detailedString());
+        }
+        collect(node.left(), calls);
+        collect(node.right(), calls);
+    }
+
+    private record Memo(long epoch, ReactiveResult result) {}
+
+    private final class Shared implements CompiledExpression {
+
+        private final CompiledExpression expression;
+
+        Shared(CompiledExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public EvaluationResult evaluate(Properties properties) {
+            var current = Epoch.of(properties).current();
+            // kept on the receiver so that nothing outlives the game it belongs to
+            Memo memo = properties.attachment(this);
+            if (memo == null || memo.epoch() != current) {
+                var result = memo == null ? new ReactiveResult(expression, properties) : memo.result();
+                result.invalidate();
+                memo = new Memo(current, result);
+                properties.attach(this, memo);
+            }
+
+            (memo.result().dirty() ? misses : hits).increment();
+            return memo.result().get();
+        }
+    }
+}
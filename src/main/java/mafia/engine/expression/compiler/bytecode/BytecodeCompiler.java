@@ -0,0 +1,539 @@
+package mafia.engine.expression.compiler.bytecode;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+import mafia.engine.expression.checker.EnumComparison;
+import mafia.engine.expression.compiler.CompiledExpression;
+import mafia.engine.expression.compiler.Compiler;
+import mafia.engine.expression.compiler.bytecode.ClassFileWriter.Code;
+import mafia.engine.expression.compiler.bytecode.ClassFileWriter.Label;
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.expression.evaluator.EvaluationType;
+import mafia.engine.expression.function.Builtins;
+import mafia.engine.expression.parser.Call;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.property.PropertySite;
+
+/**
+ * Compiles a {@link Node} tree into a hidden class implementing
+ * {@link CompiledExpression}, with operators and the {@code count},
+ * {@code filter} and {@code contains} loops emitted as straight-line bytecode.
+ * <p>
+ * Nodes the generator does not handle, and aggregates the closure
+ * {@link Compiler} shares between expressions, are compiled by that compiler
+ * and called from the generated code.
+ * </p>
+ */
+public class BytecodeCompiler {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+    private static final String ENUM = "java/lang/Enum";
+    private static final String ITERATOR = "java/util/Iterator";
+    private static final String COLLECTION = "java/util/Collection";
+    private static final String ARRAY_LIST = "java/util/ArrayList";
+    private static final String PROPERTIES = "mafia/engine/property/Properties";
+    private static final String SITE = "mafia/engine/property/PropertySite";
+    private static final String RESULT = "mafia/engine/expression/evaluator/EvaluationResult";
+    private static final String COMPILED = "mafia/engine/expression/compiler/CompiledExpression";
+    private static final String OPERATIONS = "mafia/engine/expression/compiler/Operations";
+    private static final String PROFILER = "mafia/engine/expression/ExpressionProfiler";
+    private static final String MEMBERSHIP = "mafia/engine/expression/compiler/MembershipSite";
+    private static final String GENERATED = "mafia/engine/expression/compiler/bytecode/GeneratedExpression";
+
+    private static final String PROPERTIES_DESC = "L" + PROPERTIES + ";";
+    private static final String RESULT_DESC = "L" + RESULT + ";";
+    private static final String SITE_DESC = "L" + SITE + ";";
+
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class, Object[].class);
+
+    private final Compiler fallback;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    public BytecodeCompiler(Compiler fallback) {
+        this.fallback = fallback;
+    }
+
+    public CompiledExpression compile(Node node) throws ReflectiveOperationException {
+        return fallback.fuse(node, this::define);
+    }
+
+    private CompiledExpression define(Node node) throws ReflectiveOperationException {
+        var generator = new Generator();
+        var bytes = generator.generate(node);
+        var hidden = lookup.defineHiddenClass(bytes, true);
+        var constructor = hidden.findConstructor(hidden.lookupClass(), CONSTRUCTOR);
+        try {
+            return (CompiledExpression) constructor.invoke((Object) generator.constants.toArray());
+        } catch (ReflectiveOperationException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * What an emitted node leaves on the operand stack.
+     */
+    private enum Kind {
+        BOOLEAN,    // int 0 or 1
+        NUMBER,     // float
+        COUNT,      // int, boxed as Integer like the count function
+        RESULT      // EvaluationResult
+    }
+
+    private final class Generator {
+
+        private final ClassFileWriter writer = new ClassFileWriter();
+        private final List<Object> constants = new ArrayList<>();
+        private Code code;
+
+        byte[] generate(Node node) {
+            writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "constants", "[Ljava/lang/Object;");
+
+            var init = writer.new Code(2);
+            init.aload(0)
+                .invokespecial(OBJECT, "<init>", "()V")
+                .aload(0)
+                .aload(1)
+                .putfield(GENERATED, "constants", "[Ljava/lang/Object;")
+                .op(0xB1, 0); // return
+            writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", init);
+
+            code = writer.new Code(2);
+            emitAs(node, 1, Kind.RESULT, null);
+            code.op(0xB0, -1); // areturn
+            writer.method(
+                ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+                "evaluate",
+                "(" + PROPERTIES_DESC + ")" + RESULT_DESC,
+                code
+            );
+
+            return writer.toBytes(GENERATED, OBJECT, COMPILED);
+        }
+
+        private Kind emit(Node node, int properties) {
+            if (node == null) {
+                code.getstatic(RESULT, "VOID", RESULT_DESC);
+                return Kind.RESULT;
+            }
+
+            var value = node.value();
+            return switch (node.type()) {
+                case IDENTIFIER -> {
+                    code.aload(properties);
+                    constant(new PropertySite(value), SITE);
+                    constant(new EvaluationResult(EvaluationType.LITERAL, value), RESULT);
+                    code.invokestatic(OPERATIONS, "identifier",
+                        "(" + PROPERTIES_DESC + SITE_DESC + RESULT_DESC + ")" + RESULT_DESC);
+                    yield Kind.RESULT;
+                }
+                case FUNCTION -> {
+                    constant(new EvaluationResult(EvaluationType.LITERAL, value), RESULT);
+                    yield Kind.RESULT;
+                }
+                case NUMBER -> {
+                    code.fconst(Float.parseFloat(value));
+                    yield Kind.NUMBER;
+                }
+                case BOOLEAN -> {
+                    code.iconst(Boolean.parseBoolean(value) ? 1 : 0);
+                    yield Kind.BOOLEAN;
+                }
+                case DOT -> {
+                    emitAs(node.left(), properties, Kind.RESULT, null);
+                    code.aload(properties);
+                    constant(new PropertySite(node.right().value()), SITE);
+                    code.invokestatic(OPERATIONS, "dot",
+                        "(" + RESULT_DESC + PROPERTIES_DESC + SITE_DESC + ")" + RESULT_DESC);
+                    yield Kind.RESULT;
+                }
+                case ARITHMETIC_OPERATOR -> emitArithmetic(value, node, properties);
+                case LOGICAL_OPERATOR -> emitLogical(value, node, properties);
+                case RELATIONAL_OPERATOR -> emitRelational(value, node, properties);
+                case KEYWORD -> emitKeyword(value, node, properties);
+                case CALL -> emitCall(node, properties);
+                default -> emitFallback(node, properties);
+            };
+        }
+
+        /**
+         * Emits {@code node} and converts it to {@code kind}. {@code message}
+         * is the error raised when a number is required but not produced.
+         */
+        private void emitAs(Node node, int properties, Kind kind, String message) {
+            if (kind == Kind.NUMBER && emitNumberAccess(node, properties, message)) {
+                return;
+            }
+
+            var actual = emit(node, properties);
+            if (actual == kind) {
+                return;
+            }
+
+            if (actual == Kind.COUNT && kind == Kind.NUMBER) {
+                code.op(0x86, 0); // i2f
+                return;
+            }
+
+            if (actual != Kind.RESULT) {
+                toResult(actual);
+            }
+
+            switch (kind) {
+                case BOOLEAN -> code.invokestatic(OPERATIONS, "requireBoolean", "(" + RESULT_DESC + ")Z");
+                case NUMBER -> code.sconst(message)
+                    .invokestatic(OPERATIONS, "requireNumber", "(" + RESULT_DESC + "L" + STRING + ";)F");
+                case RESULT -> {}
+                case COUNT -> throw new IllegalStateException("Cannot convert " + actual + " to a count");
+            }
+        }
+
+        /**
+         * Emits a property read that must produce a number as a direct float
+         * read, returning {@code false} for other nodes.
+         */
+        private boolean emitNumberAccess(Node node, int properties, String message) {
+            if (node == null) {
+                return false;
+            }
+
+            switch (node.type()) {
+                case IDENTIFIER -> {
+                    code.aload(properties);
+                    constant(new PropertySite(node.value()), SITE);
+                    code.sconst(message)
+                        .invokestatic(OPERATIONS, "identifierNumber",
+                            "(" + PROPERTIES_DESC + SITE_DESC + "L" + STRING + ";)F");
+                    return true;
+                }
+                case DOT -> {
+                    emitAs(node.left(), properties, Kind.RESULT, null);
+                    code.aload(properties);
+                    constant(new PropertySite(node.right().value()), SITE);
+                    code.sconst(message)
+                        .invokestatic(OPERATIONS, "dotNumber",
+                            "(" + RESULT_DESC + PROPERTIES_DESC + SITE_DESC + "L" + STRING + ";)F");
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        private void toResult(Kind kind) {
+            switch (kind) {
+                case BOOLEAN -> code.invokestatic(RESULT, "of", "(Z)" + RESULT_DESC);
+                case NUMBER -> code.invokestatic(OPERATIONS, "number", "(F)" + RESULT_DESC);
+                case COUNT -> code.invokestatic(OPERATIONS, "count", "(I)" + RESULT_DESC);
+                case RESULT -> {}
+            }
+        }
+
+        /**
+         * Emits the condition of a list function, where anything but
+         * {@code true} counts as not matching.
+         */
+        private void emitCondition(Node node, int properties) {
+            var kind = emit(node, properties);
+            if (kind == Kind.BOOLEAN) {
+                return;
+            }
+            toResult(kind);
+            code.invokestatic(OPERATIONS, "truthy", "(" + RESULT_DESC + ")Z");
+        }
+
+        private Kind emitArithmetic(String value, Node node, int properties) {
+            // Unary minus
+            if (value.equals("-") && node.left() == null) {
+                emitAs(node.right(), properties, Kind.NUMBER, "Unary '-' requires a number");
+                code.op(0x76, 0); // fneg
+                return Kind.NUMBER;
+            }
+
+            var message = "Arithmetic operator '" + value + "' requires numeric operands";
+            switch (value) {
+                case "+", "-", "*", "/" -> {}
+                default -> throw new IllegalStateException("Unexpected arithmetic: " + value);
+            }
+
+            emitAs(node.left(), properties, Kind.NUMBER, message);
+            emitAs(node.right(), properties, Kind.NUMBER, message);
+            switch (value) {
+                case "+" -> code.op(0x62, -1); // fadd
+                case "-" -> code.op(0x66, -1); // fsub
+                case "*" -> code.op(0x6A, -1); // fmul
+                default -> code.invokestatic(OPERATIONS, "divide", "(FF)F");
+            }
+            return Kind.NUMBER;
+        }
+
+        private Kind emitLogical(String value, Node node, int properties) {
+            switch (value.toLowerCase()) {
+                case "&&", "and" -> emitShortCircuit(node, properties, 0x99); // ifeq
+                case "||", "or" -> emitShortCircuit(node, properties, 0x9A);  // ifne
+                case "!", "not" -> {
+                    emitAs(node.right(), properties, Kind.BOOLEAN, null);
+                    negate();
+                }
+                default -> throw new IllegalStateException("Unexpected logical: " + value);
+            }
+            return Kind.BOOLEAN;
+        }
+
+        /**
+         * {@code and} jumps out on the first false operand, {@code or} on the
+         * first true one; the operand that decides is also the result.
+         */
+        private void emitShortCircuit(Node node, int properties, int exitJump) {
+            var exit = new Label();
+            var end = new Label();
+            var depth = code.stack();
+
+            emitAs(node.left(), properties, Kind.BOOLEAN, null);
+            code.jump(exitJump, exit);
+            emitAs(node.right(), properties, Kind.BOOLEAN, null);
+            code.jump(0xA7, end);
+            code.mark(exit).stack(depth);
+            code.iconst(exitJump == 0x99 ? 0 : 1);
+            code.mark(end);
+        }
+
+        private Kind emitRelational(String value, Node node, int properties) {
+            switch (value) {
+                case "==", "!=" -> {
+                    emitAs(node.left(), properties, Kind.RESULT, null);
+                    emitAs(node.right(), properties, Kind.RESULT, null);
+                    code.invokestatic(OPERATIONS, "equal", "(" + RESULT_DESC + RESULT_DESC + ")Z");
+                    if (value.equals("!=")) {
+                        negate();
+                    }
+                    return Kind.BOOLEAN;
+                }
+                default -> {}
+            }
+
+            // compare, then jump away when the comparison does not hold
+            int compare, jumpIfFalse;
+            switch (value) {
+                case "<" -> { compare = 0x96; jumpIfFalse = 0x9C; }  // fcmpg, ifge
+                case ">" -> { compare = 0x95; jumpIfFalse = 0x9E; }  // fcmpl, ifle
+                case "<=" -> { compare = 0x96; jumpIfFalse = 0x9D; } // fcmpg, ifgt
+                case ">=" -> { compare = 0x95; jumpIfFalse = 0x9B; } // fcmpl, iflt
+                default -> throw new IllegalStateException("Unexpected relational: " + value);
+            }
+
+            var message = "Numeric comparison required";
+            emitAs(node.left(), properties, Kind.NUMBER, message);
+            emitAs(node.right(), properties, Kind.NUMBER, message);
+            code.op(compare, -1);
+            pushBoolean(jumpIfFalse);
+            return Kind.BOOLEAN;
+        }
+
+        private Kind emitKeyword(String value, Node node, int properties) {
+            switch (value) {
+                case "is in", "is", "is not" -> {}
+                default -> throw new IllegalStateException("Unexpected keyword: " + value);
+            }
+
+            if (value.equals("is in")) {
+                constant(Compiler.membership(node.right()), MEMBERSHIP);
+            }
+            emitAs(node.left(), properties, Kind.RESULT, null);
+            emitAs(node.right(), properties, Kind.RESULT, null);
+            if (value.equals("is in")) {
+                code.invokevirtual(MEMBERSHIP, "isIn", "(" + RESULT_DESC + RESULT_DESC + ")Z");
+            } else if (node instanceof EnumComparison comparison) {
+                constant(comparison.constant(), ENUM);
+                constant(node.right().value(), STRING);
+                code.invokestatic(OPERATIONS, "sameConstant",
+                    "(" + RESULT_DESC + RESULT_DESC + "L" + ENUM + ";L" + STRING + ";)Z");
+            } else {
+                code.invokestatic(OPERATIONS, "same", "(" + RESULT_DESC + RESULT_DESC + ")Z");
+            }
+            if (value.equals("is not")) {
+                negate();
+            }
+            return Kind.BOOLEAN;
+        }
+
+        private Kind emitCall(Node node, int properties) {
+            var call = (Call) node;
+            var name = call.function().name();
+            var args = call.arguments();
+
+            // functions other than the built-in list functions run their own implementation
+            if (fallback.shares(node) || !Builtins.isListFunction(call.function())) {
+                return emitFallback(node, properties);
+            }
+
+            return switch (name) {
+                case "count" -> emitCount(args, properties);
+                case "filter" -> emitFilter(args, properties);
+                case "contains", "exists", "any" -> emitAnyMatch(name, args, properties, true);
+                case "all" -> {
+                    emitAnyMatch(name, args, properties, false);
+                    negate();
+                    yield Kind.BOOLEAN;
+                }
+                case "none" -> {
+                    emitAnyMatch(name, args, properties, true);
+                    negate();
+                    yield Kind.BOOLEAN;
+                }
+                default -> emitFallback(node, properties);
+            };
+        }
+
+        private Kind emitCount(Node[] args, int properties) {
+            var counter = code.newLocal();
+            code.iconst(0).istore(counter);
+
+            if (args.length == 2) {
+                emitLoop("count", args, properties, true, () -> {}, (_, _) -> code.iinc(counter, 1));
+            } else {
+                // stops once the limit is reached
+                var limit = code.newLocal();
+                Runnable storeLimit = () -> {
+                    emitAs(args[2], properties, Kind.RESULT, null);
+                    code.sconst("count")
+                        .invokestatic(OPERATIONS, "limit", "(" + RESULT_DESC + "L" + STRING + ";)I")
+                        .istore(limit);
+                };
+                emitLoop("count", args, properties, true, storeLimit, (_, end) -> code.iinc(counter, 1)
+                    .iload(counter)
+                    .iload(limit)
+                    .jump(0xA2, end)); // if_icmpge
+            }
+            code.iload(counter);
+            return Kind.COUNT;
+        }
+
+        private Kind emitFilter(Node[] args, int properties) {
+            var result = code.newLocal();
+            code.anew(ARRAY_LIST)
+                .op(0x59, 1) // dup
+                .invokespecial(ARRAY_LIST, "<init>", "()V")
+                .astore(result);
+            emitLoop("filter", args, properties, true, () -> {}, (item, _) -> code.aload(result)
+                .aload(item)
+                .invokevirtual(ARRAY_LIST, "add", "(L" + OBJECT + ";)Z")
+                .op(0x57, -1)); // pop
+            code.aload(result)
+                .invokestatic(OPERATIONS, "list", "(Ljava/util/List;)" + RESULT_DESC);
+            return Kind.RESULT;
+        }
+
+        /**
+         * Pushes whether the condition of some item is {@code expected},
+         * stopping at the first one that is.
+         */
+        private Kind emitAnyMatch(String functionName, Node[] args, int properties, boolean expected) {
+            var found = code.newLocal();
+            code.iconst(0).istore(found);
+            emitLoop(functionName, args, properties, expected, () -> {}, (_, end) -> code.iconst(1)
+                .istore(found)
+                .jump(0xA7, end)); // goto
+            code.iload(found);
+            return Kind.BOOLEAN;
+        }
+
+        @FunctionalInterface
+        private interface Match {
+            // item is the local holding the current item, end exits the loop
+            void emit(int item, Label end);
+        }
+
+        /**
+         * Emits {@code for (item : list) if (condition(item) == expected) onMatch}.
+         * {@code prepare} runs once the list has been evaluated, before the
+         * first item.
+         */
+        private void emitLoop(
+            String functionName,
+            Node[] args,
+            int properties,
+            boolean expected,
+            Runnable prepare,
+            Match onMatch
+        ) {
+            var iterator = code.newLocal();
+            emitAs(args[0], properties, Kind.RESULT, null);
+            code.sconst(functionName)
+                .invokestatic(OPERATIONS, "collection",
+                    "(" + RESULT_DESC + "L" + STRING + ";)L" + COLLECTION + ";")
+                .invokeinterface(COLLECTION, "iterator", "()L" + ITERATOR + ";")
+                .astore(iterator);
+            prepare.run();
+
+            var item = code.newLocal();
+            var itemProperties = code.newLocal();
+            var scanned = code.newLocal();
+            var loop = new Label();
+            var end = new Label();
+
+            code.iconst(0).istore(scanned);
+            code.mark(loop)
+                .aload(iterator)
+                .invokeinterface(ITERATOR, "hasNext", "()Z")
+                .jump(0x99, end) // ifeq
+                .iinc(scanned, 1)
+                .aload(iterator)
+                .invokeinterface(ITERATOR, "next", "()L" + OBJECT + ";")
+                .astore(item)
+                .aload(item)
+                .invokestatic(OPERATIONS, "propertiesOf", "(L" + OBJECT + ";)" + PROPERTIES_DESC)
+                .astore(itemProperties);
+
+            emitCondition(args[1], itemProperties);
+            code.jump(expected ? 0x99 : 0x9A, loop); // ifeq, ifne
+            onMatch.emit(item, end);
+            code.jump(0xA7, loop);
+            // the items visited are reported once, when the loop is left
+            code.mark(end)
+                .iload(scanned)
+                .invokestatic(PROFILER, "itemsScanned", "(I)V");
+        }
+
+        private Kind emitFallback(Node node, int properties) {
+            constant(fallback.compile(node), COMPILED);
+            code.aload(properties)
+                .invokeinterface(COMPILED, "evaluate", "(" + PROPERTIES_DESC + ")" + RESULT_DESC);
+            return Kind.RESULT;
+        }
+
+        private void constant(Object value, String type) {
+            var index = constants.size();
+            constants.add(value);
+            code.aload(0)
+                .getfield(GENERATED, "constants", "[Ljava/lang/Object;")
+                .iconst(index)
+                .op(0x32, -1) // aaload
+                .checkcast(type);
+        }
+
+        private void negate() {
+            code.iconst(1).op(0x82, -1); // ixor
+        }
+
+        /**
+         * Turns the flags left by a compare instruction into 0 or 1.
+         */
+        private void pushBoolean(int jumpIfFalse) {
+            var isFalse = new Label();
+            var end = new Label();
+            code.jump(jumpIfFalse, isFalse)
+                .iconst(1)
+                .jump(0xA7, end);
+            code.mark(isFalse).stack(code.stack() - 1);
+            code.iconst(0);
+            code.mark(end);
+        }
+    }
+}
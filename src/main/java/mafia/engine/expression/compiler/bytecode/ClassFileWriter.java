@@ -0,0 +1,456 @@
+package mafia.engine.expression.compiler.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer for the classes generated by {@link BytecodeCompiler}.
+ * <p>
+ * Classes are written as version 49 so that no {@code StackMapTable} has to be
+ * computed; the JVM verifies them by type inference instead. Only the constant
+ * pool entries and instructions the generator needs are supported.
+ * </p>
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolEntries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    int utf8(String s) {
+        return entry("U" + s, out -> {
+            out.writeByte(1);
+            out.writeUTF(s);
+        });
+    }
+
+    int classRef(String internalName) {
+        var name = utf8(internalName);
+        return entry("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int string(String s) {
+        var value = utf8(s);
+        return entry("S" + s, out -> {
+            out.writeByte(8);
+            out.writeShort(value);
+        });
+    }
+
+    int integer(int i) {
+        return entry("I" + i, out -> {
+            out.writeByte(3);
+            out.writeInt(i);
+        });
+    }
+
+    int floatConstant(float f) {
+        return entry("F" + Float.floatToRawIntBits(f), out -> {
+            out.writeByte(4);
+            out.writeFloat(f);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        var ownerIndex = classRef(owner);
+        var nameAndType = nameAndType(name, descriptor);
+        return entry(tag + owner + "." + name + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        var nameIndex = utf8(name);
+        var descriptorIndex = utf8(descriptor);
+        return entry("N" + name + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    private int entry(String key, PoolWrite write) {
+        var index = poolEntries.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            write.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolEntries.put(key, poolCount);
+        return poolCount++;
+    }
+
+    void field(int access, String name, String descriptor) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    void method(int access, String name, String descriptor, Code code) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            var body = code.bytes();
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + body.length);
+            out.writeShort(code.maxStack());
+            out.writeShort(code.maxLocals());
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toBytes(String thisClass, String superClass, String... interfaces) {
+        var thisIndex = classRef(thisClass);
+        var superIndex = classRef(superClass);
+        var interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndexes[i] = classRef(interfaces[i]);
+        }
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            out.write(pool.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndexes.length);
+            for (var i : interfaceIndexes) {
+                out.writeShort(i);
+            }
+            writeMembers(out, fields);
+            writeMembers(out, methods);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMembers(DataOutputStream out, List<byte[]> members) throws IOException {
+        out.writeShort(members.size());
+        for (var m : members) {
+            out.write(m);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PoolWrite {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static final class Label {
+        private int position = -1;
+        private final List<int[]> fixups = new ArrayList<>();
+    }
+
+    /**
+     * Instruction buffer of a single method. Keeps track of the operand stack
+     * depth so {@code max_stack} does not have to be computed separately.
+     */
+    final class Code {
+
+        private byte[] code = new byte[64];
+        private int length;
+        private int stack, maxStack;
+        private int maxLocals;
+
+        Code(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        int newLocal() {
+            return maxLocals++;
+        }
+
+        int maxStack() {
+            return maxStack;
+        }
+
+        int maxLocals() {
+            return maxLocals;
+        }
+
+        Code op(int opcode, int stackDelta) {
+            u1(opcode);
+            return adjust(stackDelta);
+        }
+
+        Code aload(int local) {
+            return local(0x19, local, 1);
+        }
+
+        Code astore(int local) {
+            return local(0x3A, local, -1);
+        }
+
+        Code iload(int local) {
+            return local(0x15, local, 1);
+        }
+
+        Code istore(int local) {
+            return local(0x36, local, -1);
+        }
+
+        private Code local(int opcode, int local, int stackDelta) {
+            u1(opcode);
+            u1(local);
+            return adjust(stackDelta);
+        }
+
+        Code iinc(int local, int increment) {
+            u1(0x84);
+            u1(local);
+            u1(increment);
+            return this;
+        }
+
+        Code iconst(int i) {
+            if (i >= -1 && i <= 5) {
+                return op(0x03 + i, 1);
+            }
+            if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+                u1(0x10);
+                u1(i);
+                return adjust(1);
+            }
+            if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+                u1(0x11);
+                u2(i);
+                return adjust(1);
+            }
+            return ldc(integer(i));
+        }
+
+        Code fconst(float f) {
+            if (f == 0f && Float.floatToRawIntBits(f) == 0) {
+                return op(0x0B, 1);
+            }
+            if (f == 1f) {
+                return op(0x0C, 1);
+            }
+            if (f == 2f) {
+                return op(0x0D, 1);
+            }
+            return ldc(floatConstant(f));
+        }
+
+        Code sconst(String s) {
+            return ldc(string(s));
+        }
+
+        private Code ldc(int index) {
+            if (index < 256) {
+                u1(0x12);
+                u1(index);
+            } else {
+                u1(0x13);
+                u2(index);
+            }
+            return adjust(1);
+        }
+
+        Code getstatic(String owner, String name, String descriptor) {
+            u1(0xB2);
+            u2(fieldRef(owner, name, descriptor));
+            return adjust(1);
+        }
+
+        Code getfield(String owner, String name, String descriptor) {
+            u1(0xB4);
+            u2(fieldRef(owner, name, descriptor));
+            return this;
+        }
+
+        Code putfield(String owner, String name, String descriptor) {
+            u1(0xB5);
+            u2(fieldRef(owner, name, descriptor));
+            return adjust(-2);
+        }
+
+        Code checkcast(String internalName) {
+            u1(0xC0);
+            u2(classRef(internalName));
+            return this;
+        }
+
+        Code anew(String internalName) {
+            u1(0xBB);
+            u2(classRef(internalName));
+            return adjust(1);
+        }
+
+        Code invokestatic(String owner, String name, String descriptor) {
+            u1(0xB8);
+            u2(methodRef(owner, name, descriptor));
+            return adjust(returnSlots(descriptor) - argumentSlots(descriptor));
+        }
+
+        Code invokevirtual(String owner, String name, String descriptor) {
+            u1(0xB6);
+            u2(methodRef(owner, name, descriptor));
+            return adjust(returnSlots(descriptor) - argumentSlots(descriptor) - 1);
+        }
+
+        Code invokespecial(String owner, String name, String descriptor) {
+            u1(0xB7);
+            u2(methodRef(owner, name, descriptor));
+            return adjust(returnSlots(descriptor) - argumentSlots(descriptor) - 1);
+        }
+
+        Code invokeinterface(String owner, String name, String descriptor) {
+            var arguments = argumentSlots(descriptor);
+            u1(0xB9);
+            u2(interfaceMethodRef(owner, name, descriptor));
+            u1(arguments + 1);
+            u1(0);
+            return adjust(returnSlots(descriptor) - arguments - 1);
+        }
+
+        Code jump(int opcode, Label label) {
+            var start = length;
+            u1(opcode);
+            if (label.position >= 0) {
+                u2(label.position - start);
+            } else {
+                label.fixups.add(new int[] { start, length });
+                u2(0);
+            }
+            // conditional jumps consume their operands, goto does not
+            return adjust(switch (opcode) {
+                case 0xA7 -> 0;
+                case 0x99, 0x9A, 0x9B, 0x9C, 0x9D, 0x9E -> -1;
+                default -> -2;
+            });
+        }
+
+        Code mark(Label label) {
+            label.position = length;
+            for (var fixup : label.fixups) {
+                var offset = label.position - fixup[0];
+                code[fixup[1]] = (byte) (offset >> 8);
+                code[fixup[1] + 1] = (byte) offset;
+            }
+            label.fixups.clear();
+            return this;
+        }
+
+        /**
+         * Sets the tracked stack depth at a join point, where the depth left
+         * by the fall-through path is not the depth of the jumping path.
+         */
+        Code stack(int depth) {
+            stack = depth;
+            return this;
+        }
+
+        int stack() {
+            return stack;
+        }
+
+        private Code adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+            return this;
+        }
+
+        private void u1(int b) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) b;
+        }
+
+        private void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(code, length);
+        }
+    }
+
+    private static int argumentSlots(String descriptor) {
+        var slots = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            var array = false;
+            while (descriptor.charAt(i) == '[') {
+                array = true;
+                i++;
+            }
+            var c = descriptor.charAt(i);
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            slots += !array && (c == 'J' || c == 'D') ? 2 : 1;
+        }
+        return slots;
+    }
+
+    private static int returnSlots(String descriptor) {
+        return switch (descriptor.charAt(descriptor.indexOf(')') + 1)) {
+            case 'V' -> 0;
+            case 'J', 'D' -> 2;
+            default -> 1;
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package mafia.engine.expression.evaluator;
+
+import java.util.Arrays;
+
+/**
+ * Three valued result of a condition. A condition that cannot be evaluated is
+ * {@link Truth#UNDEFINED} and carries the reason, instead of failing.
+ */
+public record Condition(Truth truth, UndefinedReason reason) {
+
+    public enum Truth {
+        TRUE,
+        FALSE,
+        UNDEFINED
+    }
+
+    public static final Condition TRUE = new Condition(Truth.TRUE, null);
+    public static final Condition FALSE = new Condition(Truth.FALSE, null);
+
+    private static final Condition[] UNDEFINED = Arrays.stream(UndefinedReason.values())
+        .map(reason -> new Condition(Truth.UNDEFINED, reason))
+        .toArray(Condition[]::new);
+
+    public static Condition undefined(UndefinedReason reason) {
+        return UNDEFINED[reason.ordinal()];
+    }
+
+    /**
+     * The condition held by {@code result}. Anything but a boolean is
+     * undefined.
+     */
+    public static Condition of(EvaluationResult result) {
+        if (result.result() instanceof Boolean b) {
+            return b ? TRUE : FALSE;
+        }
+        if (result.result() instanceof UndefinedReason reason) {
+            return undefined(reason);
+        }
+        return undefined(UndefinedReason.TYPE_MISMATCH);
+    }
+
+    public boolean isTrue() {
+        return truth == Truth.TRUE;
+    }
+
+    public boolean isUndefined() {
+        return truth == Truth.UNDEFINED;
+    }
+}
@@ -1,5 +1,47 @@
 package mafia.engine.expression.evaluator;
 
+import java.util.Arrays;
+import java.util.List;
+
 public record EvaluationResult(EvaluationType type, Object result) {
-    
+
+    public static final EvaluationResult VOID = new EvaluationResult(EvaluationType.VOID, null);
+    public static final EvaluationResult NULL = new EvaluationResult(EvaluationType.LITERAL, null);
+    public static final EvaluationResult TRUE = new EvaluationResult(EvaluationType.BOOLEAN, true);
+    public static final EvaluationResult FALSE = new EvaluationResult(EvaluationType.BOOLEAN, false);
+
+    private static final EvaluationResult[] UNDEFINED = Arrays.stream(UndefinedReason.values())
+        .map(reason -> new EvaluationResult(EvaluationType.UNDEFINED, reason))
+        .toArray(EvaluationResult[]::new);
+
+    /**
+     * Result of an expression that could not be evaluated, produced instead
+     * of an exception by the lenient evaluation.
+     */
+    public static EvaluationResult undefined(UndefinedReason reason) {
+        return UNDEFINED[reason.ordinal()];
+    }
+
+    public boolean isUndefined() {
+        return type == EvaluationType.UNDEFINED;
+    }
+
+    public static EvaluationResult of(boolean b) {
+        return b ? TRUE : FALSE;
+    }
+
+    public static EvaluationResult inferValue(Object raw) {
+        if (raw == null) {
+            return NULL;
+        }
+        return switch (raw) {
+            case Number n   -> new EvaluationResult(EvaluationType.NUMBER, n.floatValue());
+            case Boolean b  -> of(b);
+            case List<?> l  -> new EvaluationResult(EvaluationType.LIST, l);
+            case String s   -> s.equalsIgnoreCase("true") ? TRUE
+                                : s.equalsIgnoreCase("false") ? FALSE
+                                : new EvaluationResult(EvaluationType.LITERAL, s);
+            default         -> new EvaluationResult(EvaluationType.LITERAL, raw);
+        };
+    }
 }
@@ -6,5 +6,6 @@ public enum EvaluationType {
     LITERAL,
     LIST,
     ANY,
-    VOID
+    VOID,
+    UNDEFINED
 }
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiPredicate;
 
+import mafia.engine.expression.parser.Call;
 import mafia.engine.expression.parser.Node;
 import mafia.engine.property.Properties;
 import mafia.engine.property.PropertyHolder;
@@ -14,7 +15,7 @@ public class Evaluator {
 
     public EvaluationResult evaluate(Node node, Properties properties, String parentPropertyName) {
         if (node == null) {
-            return new EvaluationResult(EvaluationType.VOID, null);
+            return EvaluationResult.VOID;
         }
         
         var value = node.value();
@@ -22,13 +23,14 @@ public class Evaluator {
         return switch (node.type()) {
             case IDENTIFIER             -> {
                 if (properties.containsProperty(value)) {
-                    yield inferValue(properties.getProperty(value));
+                    yield EvaluationResult.inferValue(properties.getProperty(value));
                 }
                 yield new EvaluationResult(EvaluationType.LITERAL, value);
             }
             case FUNCTION               -> new EvaluationResult(EvaluationType.LITERAL, value);
             case NUMBER                 -> new EvaluationResult(EvaluationType.NUMBER, Float.valueOf(value));
-            case CALL                   -> evaluateCall(node, properties, parentPropertyName);
+            case BOOLEAN                -> EvaluationResult.of(Boolean.parseBoolean(value));
+            case CALL                   -> functionsEvaluator.evaluateFunction((Call) node, properties);
             case DOT                    -> evaluateDot(node, properties, parentPropertyName);
             case ARITHMETIC_OPERATOR    -> evaluateArithmetic(value, node, properties, parentPropertyName);
             case LOGICAL_OPERATOR       -> evaluateLogical(value, node, properties, parentPropertyName);
@@ -38,22 +40,6 @@ public class Evaluator {
         };
     }
 
-    private EvaluationResult evaluateCall(Node node, Properties properties, String parentPropertyName) {
-        Node callee = node.left();
-        Node argsNode = node.right();
-
-        Object result = functionsEvaluator.evaluateFunction(callee, argsNode, properties);
-
-        return switch (result) {
-            case Number _ -> new EvaluationResult(EvaluationType.NUMBER, result);
-            case List<?> _ -> new EvaluationResult(EvaluationType.LIST, result);
-            // default -> new EvaluationResult(EvaluationType.ANY, result);
-            default -> throw new IllegalStateException(
-                "Unexpected return type for call " + callee.value() + " : " + result.getClass()
-            );
-        };
-    }
-
     private EvaluationResult evaluateDot(Node node, Properties properties, String parentPropertyName) {
         var left = evaluate(node.left(), properties, parentPropertyName);
 
@@ -87,22 +73,7 @@ public class Evaluator {
 
         var raw = properties.getProperty(propertyName);
 
-        return inferValue(raw);
-    }
-
-    private EvaluationResult inferValue(Object raw) {
-        if (raw == null) {
-            return new EvaluationResult(EvaluationType.LITERAL, null);            
-        }
-        return switch (raw) {
-            case Number n   -> new EvaluationResult(EvaluationType.NUMBER, n.floatValue());
-            case Boolean b  -> new EvaluationResult(EvaluationType.BOOLEAN, b);
-            case List<?> l  -> new EvaluationResult(EvaluationType.LIST, l);
-            case String s   -> s.equalsIgnoreCase("true") ? new EvaluationResult(EvaluationType.BOOLEAN, true)
-                                : s.equalsIgnoreCase("false") ? new EvaluationResult(EvaluationType.BOOLEAN, false)
-                                : new EvaluationResult(EvaluationType.LITERAL, s);
-            default         -> new EvaluationResult(EvaluationType.LITERAL, raw);
-        };
+        return EvaluationResult.inferValue(raw);
     }
 
     private EvaluationResult evaluateArithmetic(
@@ -158,10 +129,11 @@ public class Evaluator {
         Properties properties,
         String parentPropertyName
     ) {
-        var left = evaluate(node.left(), properties, parentPropertyName);
-        requireBoolean(left);
+        // unary operators have no left hand side
+        var left = node.left() == null ? null : evaluate(node.left(), properties, parentPropertyName);
         var b = switch (value.toLowerCase()) {
             case "&&", "and" -> {
+                requireBoolean(left);
                 if (!(Boolean) left.result()) {
                     yield false;
                 }
@@ -171,6 +143,7 @@ public class Evaluator {
                 yield (Boolean) right.result();
             }
             case "||", "or" -> {
+                requireBoolean(left);
                 if ((Boolean) left.result()) {
                     yield true;
                 }
@@ -186,7 +159,7 @@ public class Evaluator {
             }
             default -> throw new IllegalStateException("Unexpected logical: " + value);
         };
-        return new EvaluationResult(EvaluationType.BOOLEAN, b);
+        return EvaluationResult.of(b);
     }
 
     private void requireBoolean(EvaluationResult r) {
@@ -0,0 +1,21 @@
+package mafia.engine.expression.evaluator;
+
+/**
+ * Why an expression evaluated leniently has no value. Each reason stands for
+ * an error the strict evaluation would have thrown.
+ */
+public enum UndefinedReason {
+    // a property accessed with '.' does not exist
+    MISSING_PROPERTY,
+    // an operand is a property holding null
+    NULL_VALUE,
+    // an operand is not of the type the operator requires
+    TYPE_MISMATCH,
+    DIVISION_BY_ZERO,
+    // a function was called with the wrong number or type of arguments
+    INVALID_ARGUMENTS,
+    // a property other than 'size' was accessed on a list
+    UNSUPPORTED,
+    // the expression could not be parsed or compiled
+    INVALID_EXPRESSION
+}
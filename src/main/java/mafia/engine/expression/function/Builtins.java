@@ -0,0 +1,288 @@
+package mafia.engine.expression.function;
+
+import static mafia.engine.expression.function.Function.Parameter.CONDITION;
+import static mafia.engine.expression.function.Function.Parameter.LIST;
+import static mafia.engine.expression.function.Function.Parameter.NUMBER;
+import static mafia.engine.expression.function.Function.Parameter.VALUE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import mafia.engine.expression.ExpressionProfiler;
+import mafia.engine.expression.checker.PropertyType.Kind;
+import mafia.engine.expression.evaluator.ArgumentMismatchException;
+import mafia.engine.expression.evaluator.EvaluationType;
+import mafia.engine.expression.evaluator.UndefinedReason;
+import mafia.engine.expression.function.Function.Arguments;
+import mafia.engine.expression.function.Function.Failure;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyHolder;
+
+/**
+ * The functions every expression can call. These are the reference
+ * implementations: the compilers specialise calls of the list functions,
+ * recognised by identity, and must return what these return and fail where
+ * these fail.
+ * <p>
+ * They fail by returning a {@link Failure} and pass an undefined argument
+ * on, so that strict and lenient evaluations share them.
+ * </p>
+ */
+public final class Builtins {
+
+    public static final Function COUNT = new Function("count", List.of(LIST, CONDITION), Kind.NUMBER,
+        (a, p) -> count("count", a, p, false));
+    public static final Function COUNT_LIMIT = new Function("count", List.of(LIST, CONDITION, NUMBER), Kind.NUMBER,
+        (a, p) -> count("count", a, p, true));
+    public static final Function FILTER = new Function("filter", List.of(LIST, CONDITION), Kind.LIST, Builtins::filter);
+    public static final Function CONTAINS = new Function("contains", List.of(LIST, CONDITION), Kind.BOOLEAN,
+        (a, p) -> anyMatch("contains", a, p, true));
+    public static final Function EXISTS = new Function("exists", List.of(LIST, CONDITION), Kind.BOOLEAN,
+        (a, p) -> anyMatch("exists", a, p, true));
+    public static final Function ANY = new Function("any", List.of(LIST, CONDITION), Kind.BOOLEAN,
+        (a, p) -> anyMatch("any", a, p, true));
+    public static final Function ALL = new Function("all", List.of(LIST, CONDITION), Kind.BOOLEAN,
+        (a, p) -> not(anyMatch("all", a, p, false)));
+    public static final Function NONE = new Function("none", List.of(LIST, CONDITION), Kind.BOOLEAN,
+        (a, p) -> not(anyMatch("none", a, p, true)));
+    public static final Function SUM = new Function("sum", List.of(LIST, VALUE), Kind.NUMBER,
+        (a, p) -> fold("sum", a, p, Float::sum));
+    public static final Function MIN = new Function("min", List.of(LIST, VALUE), Kind.NUMBER,
+        (a, p) -> fold("min", a, p, Math::min));
+    public static final Function MAX = new Function("max", List.of(LIST, VALUE), Kind.NUMBER,
+        (a, p) -> fold("max", a, p, Math::max));
+    public static final Function SIZE = new Function("size", List.of(LIST), Kind.NUMBER, (a, p) -> {
+        var list = list("size", a, p);
+        return list instanceof Collection<?> items ? Float.valueOf(items.size()) : list;
+    });
+
+    private static final List<Function> LIST_FUNCTIONS = List.of(COUNT, COUNT_LIMIT, FILTER, CONTAINS, EXISTS, ANY, ALL, NONE);
+
+    private Builtins() {}
+
+    static FunctionRegistry register(FunctionRegistry registry) {
+        for (var function : LIST_FUNCTIONS) {
+            registry.register(function);
+        }
+        return registry
+            .register(SUM)
+            .register(MIN)
+            .register(MAX)
+            .register(SIZE);
+    }
+
+    /**
+     * Whether {@code function} is one of the built-in list functions, whose
+     * calls the compilers specialise. A function registered under the same
+     * name with another arity is not, and runs its own implementation.
+     */
+    public static boolean isListFunction(Function function) {
+        for (var listFunction : LIST_FUNCTIONS) {
+            if (listFunction == function) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the condition of some item is {@code expected}, stopping at the
+     * first one that is.
+     */
+    private static Object anyMatch(String name, Arguments arguments, Properties properties, boolean expected) {
+        var list = list(name, arguments, properties);
+        if (!(list instanceof Collection<?> items)) {
+            return list;
+        }
+
+        var scanned = 0;
+        try {
+            for (var item : items) {
+                scanned++;
+                var matches = test(arguments, item);
+                if (!(matches instanceof Boolean b)) {
+                    return matches;
+                }
+                if (b == expected) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            ExpressionProfiler.itemsScanned(scanned);
+        }
+    }
+
+    private static Object filter(Arguments arguments, Properties properties) {
+        var list = list("filter", arguments, properties);
+        if (!(list instanceof Collection<?> items)) {
+            return list;
+        }
+
+        var result = new ArrayList<Object>();
+        var scanned = 0;
+        try {
+            for (var item : items) {
+                scanned++;
+                var matches = test(arguments, item);
+                if (!(matches instanceof Boolean b)) {
+                    return matches;
+                }
+                if (b) {
+                    result.add(item);
+                }
+            }
+            return result;
+        } finally {
+            ExpressionProfiler.itemsScanned(scanned);
+        }
+    }
+
+    /**
+     * Number of items matching the condition. When {@code bounded}, the third
+     * argument stops the count once that many items have matched.
+     */
+    private static Object count(String name, Arguments arguments, Properties properties, boolean bounded) {
+        var list = list(name, arguments, properties);
+        if (!(list instanceof Collection<?> items)) {
+            return list;
+        }
+
+        var max = Integer.MAX_VALUE;
+        if (bounded) {
+            var limit = limit(name, arguments, properties);
+            if (!(limit instanceof Number n)) {
+                return limit;
+            }
+            max = n.intValue();
+        }
+        if (items.isEmpty()) {
+            return 0;
+        }
+
+        var counter = 0;
+        var scanned = 0;
+        try {
+            for (var item : items) {
+                scanned++;
+                var matches = test(arguments, item);
+                if (!(matches instanceof Boolean b)) {
+                    return matches;
+                }
+                if (b && ++counter >= max) {
+                    break;
+                }
+            }
+            return counter;
+        } finally {
+            ExpressionProfiler.itemsScanned(scanned);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Fold {
+        float apply(float accumulated, float value);
+    }
+
+    /**
+     * The values of the items folded into one, from the first of them.
+     */
+    private static Object fold(String name, Arguments arguments, Properties properties, Fold fold) {
+        var list = list(name, arguments, properties);
+        if (!(list instanceof Collection<?> items)) {
+            return list;
+        }
+        if (items.isEmpty()) {
+            if (name.equals("sum")) {
+                return 0f;
+            }
+            return new Failure(UndefinedReason.INVALID_ARGUMENTS, () -> new ArgumentMismatchException(name + "() of an empty list"));
+        }
+
+        Float accumulated = null;
+        var scanned = 0;
+        try {
+            for (var item : items) {
+                scanned++;
+                var itemProperties = propertiesOf(item);
+                if (itemProperties == null) {
+                    return notAHolder(item);
+                }
+
+                var value = arguments.evaluate(1, itemProperties);
+                if (value.isUndefined()) {
+                    return value;
+                }
+                if (value.type() != EvaluationType.NUMBER) {
+                    return new Failure(UndefinedReason.TYPE_MISMATCH,
+                        () -> new IllegalStateException(name + "() requires numeric values, got " + value.type()));
+                }
+
+                var f = ((Number) value.result()).floatValue();
+                accumulated = accumulated == null ? f : fold.apply(accumulated, f);
+            }
+            return accumulated;
+        } finally {
+            ExpressionProfiler.itemsScanned(scanned);
+        }
+    }
+
+    // the collection of the first argument, or why there is none
+    private static Object list(String name, Arguments arguments, Properties properties) {
+        var list = arguments.evaluate(0, properties);
+        if (list.isUndefined()) {
+            return list;
+        }
+
+        var listObj = list.result();
+        if (!(listObj instanceof Collection<?>)) {
+            return new Failure(UndefinedReason.INVALID_ARGUMENTS, () -> new ArgumentMismatchException(name, List.class, 1, listObj));
+        }
+        return listObj;
+    }
+
+    private static Object limit(String name, Arguments arguments, Properties properties) {
+        var limit = arguments.evaluate(2, properties);
+        if (limit.isUndefined()) {
+            return limit;
+        }
+
+        var limitObj = limit.result();
+        if (!(limitObj instanceof Number)) {
+            return new Failure(UndefinedReason.INVALID_ARGUMENTS, () -> new ArgumentMismatchException(name, Number.class, 3, limitObj));
+        }
+        return limitObj;
+    }
+
+    /**
+     * The condition for one item, where anything but {@code true} does not
+     * match, or why it has no value.
+     */
+    private static Object test(Arguments arguments, Object item) {
+        var properties = propertiesOf(item);
+        if (properties == null) {
+            return notAHolder(item);
+        }
+
+        var result = arguments.evaluate(1, properties);
+        if (result.isUndefined()) {
+            return result;
+        }
+        return result.result() instanceof Boolean b && b;
+    }
+
+    private static Object not(Object result) {
+        return result instanceof Boolean b ? !b : result;
+    }
+
+    private static Properties propertiesOf(Object item) {
+        return item instanceof PropertyHolder p ? p.getProperties() : null;
+    }
+
+    private static Failure notAHolder(Object item) {
+        return new Failure(UndefinedReason.TYPE_MISMATCH, () -> new IllegalStateException(
+            "item " + item + " of type " + item.getClass() + "  does not contain any properties"
+        ));
+    }
+}
@@ -0,0 +1,149 @@
+package mafia.engine.expression.function;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import mafia.engine.expression.checker.PropertyType.Kind;
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.expression.evaluator.EvaluationType;
+import mafia.engine.expression.evaluator.UndefinedReason;
+import mafia.engine.property.Properties;
+
+/**
+ * A function of the expression language, registered in a
+ * {@link FunctionRegistry} with a fixed number of parameters. A call is
+ * resolved to its function when the expression is parsed.
+ * <p>
+ * {@code returns} is what the function returns for the type checker:
+ * {@link Kind#LIST} for a list of the items of its first argument,
+ * {@link Kind#BOOLEAN}, {@link Kind#NUMBER} or {@link Kind#ANY}.
+ * </p>
+ */
+public record Function(String name, List<Parameter> parameters, Kind returns, Implementation implementation) {
+
+    /**
+     * How an argument is evaluated: a list, a limit or other number for the
+     * receiver of the call, a condition or a value for each item of the list.
+     */
+    public enum Parameter {
+        LIST("list", false),
+        CONDITION("condition", true),
+        VALUE("value", true),
+        NUMBER("number", false);
+
+        private final String description;
+        private final boolean perItem;
+
+        Parameter(String description, boolean perItem) {
+            this.description = description;
+            this.perItem = perItem;
+        }
+
+        public String description() {
+            return description;
+        }
+
+        /**
+         * Whether the argument is evaluated for each item of the list instead
+         * of for the receiver.
+         */
+        public boolean perItem() {
+            return perItem;
+        }
+    }
+
+    /**
+     * The arguments of one call, evaluated on demand.
+     */
+    @FunctionalInterface
+    public interface Arguments {
+
+        /**
+         * Evaluates argument {@code index} for {@code properties}: the
+         * receiver of the call, or an item of the list.
+         */
+        EvaluationResult evaluate(int index, Properties properties);
+    }
+
+    @FunctionalInterface
+    public interface Implementation {
+
+        /**
+         * The result of a call for {@code receiver}: a {@link Number}, a
+         * {@link List} or a {@link Boolean}. A call that fails returns a
+         * {@link Failure} instead of throwing, and one that reads an undefined
+         * argument returns that argument.
+         */
+        Object apply(Arguments arguments, Properties receiver);
+    }
+
+    /**
+     * A failed call: the reason a lenient evaluation is undefined for, and
+     * the error a strict one throws, only created when it is thrown.
+     */
+    public record Failure(UndefinedReason reason, Supplier<? extends RuntimeException> error) {}
+
+    public Function {
+        parameters = List.copyOf(parameters);
+    }
+
+    public int arity() {
+        return parameters.size();
+    }
+
+    /**
+     * Calls the function and wraps what it returns, which must be of the
+     * declared type.
+     *
+     * @throws RuntimeException the error of a {@link Failure}
+     */
+    public EvaluationResult apply(Arguments arguments, Properties receiver) {
+        var result = implementation.apply(arguments, receiver);
+        if (result instanceof Failure failure) {
+            throw failure.error().get();
+        }
+
+        var evaluated = wrap(result);
+        if (evaluated == null) {
+            throw new IllegalStateException(
+                "Unexpected return type for call " + name + " : " + (result == null ? null : result.getClass())
+            );
+        }
+        return evaluated;
+    }
+
+    /**
+     * Calls the function with arguments that may be undefined, returning
+     * undefined where {@link #apply} throws.
+     */
+    public EvaluationResult applyLenient(Arguments arguments, Properties receiver) {
+        var result = implementation.apply(arguments, receiver);
+        if (result instanceof Failure failure) {
+            return EvaluationResult.undefined(failure.reason());
+        }
+        if (result instanceof EvaluationResult undefined) {
+            return undefined;
+        }
+
+        var evaluated = wrap(result);
+        return evaluated == null ? EvaluationResult.undefined(UndefinedReason.TYPE_MISMATCH) : evaluated;
+    }
+
+    // null unless the result is of the declared type
+    private EvaluationResult wrap(Object result) {
+        var evaluated = switch (result) {
+            case Number _ -> new EvaluationResult(EvaluationType.NUMBER, result);
+            case List<?> _ -> new EvaluationResult(EvaluationType.LIST, result);
+            case Boolean b -> EvaluationResult.of(b);
+            case null, default -> null;
+        };
+
+        var declared = switch (returns) {
+            case NUMBER -> EvaluationType.NUMBER;
+            case LIST -> EvaluationType.LIST;
+            case BOOLEAN -> EvaluationType.BOOLEAN;
+            default -> null;
+        };
+        return evaluated == null || declared != null && evaluated.type() != declared ? null : evaluated;
+    }
+}
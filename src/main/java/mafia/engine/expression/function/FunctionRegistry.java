@@ -0,0 +1,89 @@
+package mafia.engine.expression.function;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mafia.engine.expression.evaluator.ArgumentMismatchException;
+
+/**
+ * Functions callable from expressions, by name and number of arguments.
+ * <p>
+ * The {@link #standard()} registry holds the built-in functions and is the
+ * one used by the parser unless told otherwise. Functions can be added to it,
+ * but not replaced, so the compilers may rely on what a built-in does.
+ * </p>
+ */
+public final class FunctionRegistry {
+
+    private static final FunctionRegistry STANDARD = Builtins.register(new FunctionRegistry());
+
+    // overloads of each name by arity
+    private final Map<String, Map<Integer, Function>> functions = new ConcurrentHashMap<>();
+
+    public static FunctionRegistry standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Adds {@code function}, whose name must be a lower case word.
+     *
+     * @throws IllegalArgumentException if a function of the same name and
+     *         arity is already registered
+     */
+    public synchronized FunctionRegistry register(Function function) {
+        if (!function.name().matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid function name: " + function.name());
+        }
+
+        var overloads = functions.computeIfAbsent(function.name(), _ -> new ConcurrentHashMap<>());
+        if (overloads.putIfAbsent(function.arity(), function) != null) {
+            throw new IllegalArgumentException(
+                "Function already registered: %s/%d".formatted(function.name(), function.arity())
+            );
+        }
+        return this;
+    }
+
+    public boolean contains(String name) {
+        return functions.containsKey(name.toLowerCase());
+    }
+
+    /**
+     * The function called {@code name}, in any case, taking {@code arity}
+     * arguments.
+     *
+     * @throws IllegalStateException if there is no function of that name
+     * @throws ArgumentMismatchException if none of them takes that many
+     *         arguments
+     */
+    public Function resolve(String name, int arity) {
+        var overloads = functions.get(name.toLowerCase());
+        if (overloads == null) {
+            throw new IllegalStateException("Unknown function: " + name);
+        }
+
+        var function = overloads.get(arity);
+        if (function == null) {
+            var shortest = new TreeMap<>(overloads).firstEntry().getValue();
+            throw new ArgumentMismatchException(
+                shortest.name(),
+                shortest.parameters().stream().map(Function.Parameter::description).toArray(String[]::new)
+            );
+        }
+        return function;
+    }
+
+    /**
+     * The signature of every function, ordered by name and arity.
+     */
+    public String fingerprint() {
+        var fingerprint = new StringBuilder();
+        new TreeMap<>(functions).forEach((name, overloads) ->
+            new TreeMap<>(overloads).forEach((arity, function) ->
+                fingerprint.append(name).append(function.parameters()).append(": ").append(function.returns()).append('\n')
+            )
+        );
+        return fingerprint.toString();
+    }
+}
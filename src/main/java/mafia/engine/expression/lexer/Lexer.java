@@ -2,31 +2,22 @@ package mafia.engine.expression.lexer;
 
 import static java.lang.Character.*;
 
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-
 import mafia.engine.expression.lexer.Token.Type;
 import mafia.engine.expression.parser.Parser;
 
+/**
+ * Single pass scanner. Characters are classified directly and words are
+ * compared with the keywords in place, ignoring case, so no intermediate
+ * strings are created except for the token values themselves.
+ * <p>
+ * Keywords and word operators are only recognised as whole words and are
+ * emitted in lower case. Function names are ordinary identifiers, resolved
+ * by the parser when they are followed by a parenthesis.
+ * </p>
+ */
 public class Lexer {
 
-    private static final Pattern NUMBER = Pattern.compile("\\d+(\\.\\d+)?");
-    private static final Pattern IDENTIFIER = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
-    private static final Pattern ARITHMETIC = Pattern.compile("\\+|-|\\*|/");
-    private static final Pattern LOGICAL = Pattern.compile("&&|\\|\\||!|\\b(and|or|not)\\b", Pattern.CASE_INSENSITIVE);
-    private static final Pattern RELATIONAL = Pattern.compile("==|!=|<=|>=|<|>");
-    private static final Pattern KEYWORD = Pattern.compile("\\b(is in|is not|is)\\b", Pattern.CASE_INSENSITIVE);
-    private static final Pattern FUNCTIONS;
-    
-    private static final String[] functionNames = {"count", "filter", "contains"};
-
-    static {
-        String s = Arrays.stream(functionNames).collect(Collectors.joining("|"));
-        FUNCTIONS = Pattern.compile(s, Pattern.CASE_INSENSITIVE);
-    }
+    private static final String[] LOGICAL_OPERATORS = { "and", "or", "not" };
 
     public static void main(String[] args) {
         var lexer = new Lexer();
@@ -34,14 +25,23 @@ public class Lexer {
 
         System.out.println(parser.parse(lexer.tokenize(
             """
-                count(players, player.state is Alive and player.alignment is Good) + 
+                count(players, player.state is Alive and player.alignment is Good) +
                 count(players, player.state is Alive and player.alignment is Neutral) < 2
             """
         )));
     }
- 
-    public Queue<Token> tokenize(String s) {
-        Queue<Token> tokens = new LinkedList<>();
+
+    public TokenBuffer tokenize(String s) {
+        var tokens = new TokenBuffer(s.length() / 3 + 2);
+        tokenize(s, tokens);
+        return tokens;
+    }
+
+    /**
+     * Clears {@code tokens} and fills it with the tokens of {@code s}.
+     */
+    public void tokenize(String s, TokenBuffer tokens) {
+        tokens.clear();
 
         int i = 0;
         int length = s.length();
@@ -55,102 +55,128 @@ public class Lexer {
                 continue;
             }
 
-            // Single-character tokens
-            switch (c) {
-                case '(' -> {
-                    tokens.add(new Token(Type.OPEN_PARENTHESIS, c));
-                    i++;
-                    continue;
-                }
-                case ')' -> {
-                    tokens.add(new Token(Type.CLOSE_PARENTHESIS, c));
-                    i++;
-                    continue;
-                }
-                case '.' -> {
-                    tokens.add(new Token(Type.DOT, c));
-                    i++;
-                    continue;
-                }
-                case ',' -> {
-                    tokens.add(new Token(Type.SEPARATOR, c));
-                    i++;
-                    continue;
-                }
-            }
-
-            // try regex-based tokens
-            String remaining = s.substring(i);
-
-            // FUNCTIONS
-            var matcher = FUNCTIONS.matcher(remaining);
-            if (matcher.lookingAt()) {
-                String value = matcher.group();
-                tokens.add(new Token(Type.FUNCTION, value));
-                i += value.length();
+            if (isIdentifierStart(c)) {
+                i = word(s, i, tokens);
                 continue;
             }
 
-            // LOGICAL operators
-            matcher = ARITHMETIC.matcher(remaining);
-            if (matcher.lookingAt()) {
-                String value = matcher.group();
-                tokens.add(new Token(Type.ARITHMETIC_OPERATOR, value));
-                i += value.length();
+            if (isDigit(c)) {
+                i = number(s, i, tokens);
                 continue;
             }
 
-            // LOGICAL operators
-            matcher = LOGICAL.matcher(remaining);
-            if (matcher.lookingAt()) {
-                String value = matcher.group();
-                tokens.add(new Token(Type.LOGICAL_OPERATOR, value));
-                i += value.length();
-                continue;
+            var next = i + 1 < length ? s.charAt(i + 1) : '\0';
+            var token = switch (c) {
+                case '(' -> new Token(Type.OPEN_PARENTHESIS, c);
+                case ')' -> new Token(Type.CLOSE_PARENTHESIS, c);
+                case '.' -> new Token(Type.DOT, c);
+                case ',' -> new Token(Type.SEPARATOR, c);
+                case '+', '-', '*', '/' -> new Token(Type.ARITHMETIC_OPERATOR, c);
+                case '&' -> next == '&' ? new Token(Type.LOGICAL_OPERATOR, "&&") : null;
+                case '|' -> next == '|' ? new Token(Type.LOGICAL_OPERATOR, "||") : null;
+                case '!' -> next == '='
+                    ? new Token(Type.RELATIONAL_OPERATOR, "!=")
+                    : new Token(Type.LOGICAL_OPERATOR, c);
+                case '=' -> next == '=' ? new Token(Type.RELATIONAL_OPERATOR, "==") : null;
+                case '<' -> next == '='
+                    ? new Token(Type.RELATIONAL_OPERATOR, "<=")
+                    : new Token(Type.RELATIONAL_OPERATOR, c);
+                case '>' -> next == '='
+                    ? new Token(Type.RELATIONAL_OPERATOR, ">=")
+                    : new Token(Type.RELATIONAL_OPERATOR, c);
+                default -> null;
+            };
+
+            if (token == null) {
+                throw new IllegalArgumentException(
+                    "Unexpected character at position " + i + ": '" + c + "'"
+                );
             }
 
-            // RELATIONAL operators
-            matcher = RELATIONAL.matcher(remaining);
-            if (matcher.lookingAt()) {
-                String value = matcher.group();
-                tokens.add(new Token(Type.RELATIONAL_OPERATOR, value));
-                i += value.length();
-                continue;
-            }
+            tokens.add(token);
+            i += token.value().length();
+        }
 
-            // KEYWORDS
-            matcher = KEYWORD.matcher(remaining);
-            if (matcher.lookingAt()) {
-                String value = matcher.group();
-                tokens.add(new Token(Type.KEYWORD, value));
-                i += value.length();
-                continue;
-            }
+        tokens.add(Token.END);
+    }
 
-            // NUMBER
-            matcher = NUMBER.matcher(remaining);
-            if (matcher.lookingAt()) {
-                String value = matcher.group();
-                tokens.add(new Token(Type.NUMBER, value));
-                i += value.length();
-                continue;
+    private int number(String s, int start, TokenBuffer tokens) {
+        int i = digits(s, start);
+        // a fraction needs digits after the dot, otherwise the dot is its own token
+        if (i + 1 < s.length() && s.charAt(i) == '.' && isDigit(s.charAt(i + 1))) {
+            i = digits(s, i + 1);
+        }
+        tokens.add(new Token(Type.NUMBER, s.substring(start, i)));
+        return i;
+    }
+
+    private int word(String s, int start, TokenBuffer tokens) {
+        int end = wordEnd(s, start);
+
+        for (var operator : LOGICAL_OPERATORS) {
+            if (matches(s, start, end, operator)) {
+                tokens.add(new Token(Type.LOGICAL_OPERATOR, operator));
+                return end;
             }
+        }
 
-            // IDENTIFIER
-            matcher = IDENTIFIER.matcher(remaining);
-            if (matcher.lookingAt()) {
-                String value = matcher.group();
-                tokens.add(new Token(Type.IDENTIFIER, value));
-                i += value.length();
-                continue;
+        if (matches(s, start, end, "is")) {
+            // "is in" and "is not" are single keywords
+            int next = skipWhitespace(s, end);
+            if (next > end && next < s.length() && isIdentifierStart(s.charAt(next))) {
+                int nextEnd = wordEnd(s, next);
+                if (matches(s, next, nextEnd, "in")) {
+                    tokens.add(new Token(Type.KEYWORD, "is in"));
+                    return nextEnd;
+                }
+                if (matches(s, next, nextEnd, "not")) {
+                    tokens.add(new Token(Type.KEYWORD, "is not"));
+                    return nextEnd;
+                }
             }
+            tokens.add(new Token(Type.KEYWORD, "is"));
+            return end;
+        }
 
-            throw new IllegalArgumentException(
-                "Unexpected character at position " + i + ": '" + c + "'"
-            );
+        tokens.add(new Token(Type.IDENTIFIER, s.substring(start, end)));
+        return end;
+    }
+
+    // whether s[start, end) is exactly the lower case keyword, in any case
+    private static boolean matches(String s, int start, int end, String keyword) {
+        return end - start == keyword.length() && s.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
+    private static int wordEnd(String s, int i) {
+        while (i < s.length() && isIdentifierPart(s.charAt(i))) {
+            i++;
         }
+        return i;
+    }
 
-        tokens.add(Token.END);
-        return tokens;
-    }   
+    private static int digits(String s, int i) {
+        while (i < s.length() && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(String s, int i) {
+        while (i < s.length() && isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
 }
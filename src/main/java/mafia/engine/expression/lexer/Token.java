@@ -8,6 +8,7 @@ public record Token(Type type, String value) {
     public enum Type {
         NUMBER,
         IDENTIFIER,
+        BOOLEAN,                // folded constant, never produced by the lexer
 
         DOT,
 
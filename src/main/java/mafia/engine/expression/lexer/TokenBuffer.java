@@ -0,0 +1,75 @@
+package mafia.engine.expression.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Array-backed token sequence produced by the {@link Lexer}. The parser reads
+ * it through a cursor instead of removing tokens, so a buffer can be cleared
+ * and filled again for the next expression.
+ */
+public class TokenBuffer {
+
+    private Token[] tokens;
+    private int size;
+    private int position;
+
+    public TokenBuffer() {
+        this(16);
+    }
+
+    public TokenBuffer(int capacity) {
+        tokens = new Token[Math.max(capacity, 1)];
+    }
+
+    public void add(Token token) {
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+        }
+        tokens[size++] = token;
+    }
+
+    /**
+     * Returns the token at the cursor, or {@code null} past the end.
+     */
+    public Token peek() {
+        return position < size ? tokens[position] : null;
+    }
+
+    /**
+     * Returns the token at the cursor and moves past it, or {@code null} past
+     * the end.
+     */
+    public Token poll() {
+        return position < size ? tokens[position++] : null;
+    }
+
+    public Token get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return tokens[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public void rewind() {
+        position = 0;
+    }
+
+    public void clear() {
+        Arrays.fill(tokens, 0, size, null);
+        size = 0;
+        position = 0;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(tokens, size));
+    }
+}
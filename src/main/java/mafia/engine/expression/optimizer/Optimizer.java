@@ -0,0 +1,312 @@
+package mafia.engine.expression.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mafia.engine.expression.checker.PropertyType.Kind;
+import mafia.engine.expression.function.Builtins;
+import mafia.engine.expression.function.Function;
+import mafia.engine.expression.lexer.Token.Type;
+import mafia.engine.expression.parser.Call;
+import mafia.engine.expression.parser.Node;
+
+/**
+ * Simplifies parsed expressions before they are compiled.
+ * <p>
+ * Every rewrite keeps the result of the {@link mafia.engine.expression.evaluator.Evaluator},
+ * including the errors it raises: an operand is only dropped when it is
+ * known to produce a boolean, and nothing that can fail at runtime (such as
+ * a division by zero) is folded.
+ * </p>
+ * <p>
+ * The one exception are comparisons of {@code count()} with a literal, which
+ * are rewritten to scans that stop as soon as the comparison is decided:
+ * {@code count(l, c) > 0} becomes {@code exists(l, c)} and
+ * {@code count(l, c) < 3} counts at most three items. Errors that only the
+ * remaining items would have raised are not reported.
+ * </p>
+ */
+public class Optimizer {
+
+    // raised whenever a rewrite changes, so that stored trees are rebuilt
+    public static final int VERSION = 1;
+
+    /**
+     * Result of optimizing one expression. {@code rewrites} is empty when the
+     * tree was left unchanged.
+     */
+    public record Optimization(Node node, List<String> rewrites) {
+
+        public boolean changed() {
+            return !rewrites.isEmpty();
+        }
+    }
+
+    /**
+     * Optimizes {@code node} without modifying it.
+     */
+    public Optimization optimize(Node node) {
+        var rewrites = new ArrayList<String>();
+        var optimized = optimize(node, rewrites);
+        return new Optimization(optimized, List.copyOf(rewrites));
+    }
+
+    private Node optimize(Node node, List<String> rewrites) {
+        if (node == null || node.isLeaf()) {
+            return node;
+        }
+
+        var left = optimize(node.left(), rewrites);
+        var right = optimize(node.right(), rewrites);
+
+        var folded = switch (node.type()) {
+            case ARITHMETIC_OPERATOR -> foldArithmetic(node.value(), left, right, rewrites);
+            case LOGICAL_OPERATOR -> foldLogical(node.value().toLowerCase(), left, right, rewrites);
+            case RELATIONAL_OPERATOR -> foldRelational(node.value(), left, right, rewrites);
+            default -> null;
+        };
+
+        if (folded != null) {
+            return folded;
+        }
+
+        if (left == node.left() && right == node.right()) {
+            return node;
+        }
+        return node.withChildren(left, right);
+    }
+
+    private Node foldArithmetic(String value, Node left, Node right, List<String> rewrites) {
+        if (!isNumber(right)) {
+            return null;
+        }
+
+        var r = number(right);
+
+        // Unary minus
+        if (left == null) {
+            rewrites.add("fold -" + right.value());
+            return number(-r);
+        }
+
+        if (!isNumber(left)) {
+            return null;
+        }
+
+        var l = number(left);
+        var result = switch (value) {
+            case "+" -> l + r;
+            case "-" -> l - r;
+            case "*" -> l * r;
+            case "/" -> r == 0f ? null : l / r;
+            default -> null;
+        };
+
+        if (result == null) {
+            return null;
+        }
+
+        rewrites.add("fold " + left.value() + " " + value + " " + right.value());
+        return number(result);
+    }
+
+    private Node foldLogical(String value, Node left, Node right, List<String> rewrites) {
+        switch (value) {
+            case "!", "not" -> {
+                if (right != null && right.type() == Type.BOOLEAN) {
+                    rewrites.add("fold not " + right.value());
+                    return bool(!bool(right));
+                }
+
+                // not not x
+                if (isNegation(right) && isBoolean(right.right())) {
+                    rewrites.add("drop double negation");
+                    return right.right();
+                }
+                return null;
+            }
+            case "&&", "and", "||", "or" -> {}
+            default -> { return null; }
+        }
+
+        var isAnd = value.equals("&&") || value.equals("and");
+
+        // x and true, x or false: the result is x
+        if (right != null && right.type() == Type.BOOLEAN && bool(right) == isAnd && isBoolean(left)) {
+            rewrites.add("drop " + value + " " + right.value());
+            return left;
+        }
+
+        if (left == null || left.type() != Type.BOOLEAN) {
+            return null;
+        }
+
+        // false and x, true or x: x is never evaluated
+        if (bool(left) != isAnd) {
+            rewrites.add("fold " + left.value() + " " + value + " x");
+            return left;
+        }
+
+        // true and x, false or x: the result is x
+        if (isBoolean(right)) {
+            rewrites.add("drop " + left.value() + " " + value);
+            return right;
+        }
+        return null;
+    }
+
+    private Node foldRelational(String value, Node left, Node right, List<String> rewrites) {
+        if (isNumber(left) && isNumber(right)) {
+            Float l = number(left), r = number(right);
+            var result = switch (value) {
+                case "==" -> l.equals(r);
+                case "!=" -> !l.equals(r);
+                case "<" -> l < r;
+                case ">" -> l > r;
+                case "<=" -> l <= r;
+                case ">=" -> l >= r;
+                default -> null;
+            };
+
+            if (result == null) {
+                return null;
+            }
+
+            rewrites.add("fold " + left.value() + " " + value + " " + right.value());
+            return bool(result);
+        }
+
+        // Canonical form keeps the literal on the right: 2 < x becomes x > 2.
+        // Equality is left alone since it calls equals on the left operand.
+        if (isNumber(left) && right != null) {
+            var mirrored = switch (value) {
+                case "<" -> ">";
+                case ">" -> "<";
+                case "<=" -> ">=";
+                case ">=" -> "<=";
+                default -> null;
+            };
+
+            if (mirrored != null) {
+                rewrites.add("canonicalize " + left.value() + " " + value + " x");
+                var canonical = new Node(Type.RELATIONAL_OPERATOR, mirrored, right, left);
+                var bounded = boundCount(mirrored, right, left, rewrites);
+                return bounded != null ? bounded : canonical;
+            }
+        }
+        return boundCount(value, left, right, rewrites);
+    }
+
+    /**
+     * Rewrites {@code count(...) op k} so that the scan stops once the
+     * comparison is decided. Equality is left alone: count() returns an
+     * integer, which never equals the float literal.
+     */
+    private Node boundCount(String value, Node left, Node right, List<String> rewrites) {
+        if (!isNumber(right) || !value.matches("[<>]=?")) {
+            return null;
+        }
+
+        var k = number(right);
+        if (!(k >= 0) || Float.isInfinite(k)) {
+            return null;
+        }
+
+        if (isCall(left, Builtins.COUNT)) {
+            var args = ((Call) left).arguments();
+            var existence = switch (value) {
+                case ">" -> k < 1 ? Builtins.EXISTS : null;
+                case ">=" -> k <= 1 && k > 0 ? Builtins.EXISTS : null;
+                case "<" -> k <= 1 && k > 0 ? Builtins.NONE : null;
+                case "<=" -> k < 1 ? Builtins.NONE : null;
+                default -> null;
+            };
+
+            if (existence != null) {
+                rewrites.add("count " + value + " " + right.value() + " to " + existence.name());
+                return new Call(existence, args);
+            }
+        }
+
+        // every count is at least 0, so no term of a sum needs to go past k
+        var limit = number((float) Math.floor(k) + 1);
+        var bounded = bound(left, limit);
+        if (bounded == left) {
+            return null;
+        }
+
+        rewrites.add("bound count " + value + " " + right.value());
+        return new Node(Type.RELATIONAL_OPERATOR, value, bounded, right);
+    }
+
+    private static Node bound(Node node, Node limit) {
+        if (isCall(node, Builtins.COUNT)) {
+            var call = (Call) node;
+            return new Call(Builtins.COUNT_LIMIT, call.argument(0), call.argument(1), limit);
+        }
+
+        if (node != null && node.type() == Type.ARITHMETIC_OPERATOR
+            && node.value().equals("+") && node.left() != null) {
+            var left = bound(node.left(), limit);
+            var right = bound(node.right(), limit);
+            var changed = left != node.left() || right != node.right();
+            if (changed && isCountSum(left) && isCountSum(right)) {
+                return new Node(node.type(), node.value(), left, right);
+            }
+        }
+        return node;
+    }
+
+    private static boolean isCountSum(Node node) {
+        return isCall(node, Builtins.COUNT_LIMIT)
+            || node.type() == Type.ARITHMETIC_OPERATOR && node.value().equals("+");
+    }
+
+    // calls of the built-in, not of a function registered under the same name
+    private static boolean isCall(Node node, Function function) {
+        return node instanceof Call call && call.function() == function;
+    }
+
+    /**
+     * Whether {@code node} evaluates to a boolean or fails, so that it can
+     * stand in for a logical operator applied to it.
+     */
+    private static boolean isBoolean(Node node) {
+        if (node == null) {
+            return false;
+        }
+
+        return switch (node.type()) {
+            case BOOLEAN, LOGICAL_OPERATOR, RELATIONAL_OPERATOR, KEYWORD -> true;
+            case CALL -> node instanceof Call call && call.function().returns() == Kind.BOOLEAN;
+            default -> false;
+        };
+    }
+
+    private static boolean isNegation(Node node) {
+        return node != null
+            && node.type() == Type.LOGICAL_OPERATOR
+            && node.left() == null
+            && (node.value().equals("!") || node.value().equalsIgnoreCase("not"));
+    }
+
+    private static boolean isNumber(Node node) {
+        return node != null && node.type() == Type.NUMBER;
+    }
+
+    private static float number(Node node) {
+        return Float.parseFloat(node.value());
+    }
+
+    private static Node number(float f) {
+        return new Node(Type.NUMBER, Float.toString(f));
+    }
+
+    private static boolean bool(Node node) {
+        return Boolean.parseBoolean(node.value());
+    }
+
+    private static Node bool(boolean b) {
+        return new Node(Type.BOOLEAN, Boolean.toString(b));
+    }
+}
@@ -0,0 +1,91 @@
+package mafia.engine.expression.parser;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import mafia.engine.expression.function.Function;
+import mafia.engine.expression.lexer.Token.Type;
+
+/**
+ * A call of a function resolved when the expression was parsed. Like any
+ * other call node its arguments are chained to the right with separators,
+ * and they are also kept in an array so nothing walks the chain again.
+ */
+@Accessors(fluent = true)
+public final class Call extends Node {
+
+    @Getter
+    private final Function function;
+
+    private final Node[] arguments;
+
+    public Call(Function function, Node... arguments) {
+        this(function, new Node(Type.FUNCTION, function.name()), chain(arguments, 0));
+    }
+
+    private Call(Function function, Node callee, Node arguments) {
+        super(Type.CALL, "call", callee, arguments);
+        this.function = function;
+        this.arguments = unchain(arguments);
+        if (this.arguments.length != function.arity()) {
+            throw new IllegalArgumentException(
+                "%s() takes %d arguments, got %d".formatted(function.name(), function.arity(), this.arguments.length)
+            );
+        }
+    }
+
+    public int arity() {
+        return arguments.length;
+    }
+
+    public Node argument(int index) {
+        return arguments[index];
+    }
+
+    public Node[] arguments() {
+        return arguments.clone();
+    }
+
+    @Override
+    public Node withChildren(Node left, Node right) {
+        return new Call(function, left, right);
+    }
+
+    @Override
+    public Node clone() {
+        var copy = super.clone();
+        return new Call(function, copy.left(), copy.right());
+    }
+
+    /**
+     * The arguments chained to the right of a call: {@code (a , (b , c))}.
+     */
+    public static Node[] unchain(Node arguments) {
+        if (arguments == null) {
+            return new Node[0];
+        }
+
+        var count = 1;
+        for (var curr = arguments; curr.type() == Type.SEPARATOR; curr = curr.right()) {
+            count++;
+        }
+
+        var result = new Node[count];
+        var curr = arguments;
+        for (int i = 0; i < count - 1; i++) {
+            result[i] = curr.left();
+            curr = curr.right();
+        }
+        result[count - 1] = curr;
+        return result;
+    }
+
+    private static Node chain(Node[] arguments, int i) {
+        if (i >= arguments.length) {
+            return null;
+        }
+        if (i == arguments.length - 1) {
+            return arguments[i];
+        }
+        return new Node(Type.SEPARATOR, ",", arguments[i], chain(arguments, i + 1));
+    }
+}
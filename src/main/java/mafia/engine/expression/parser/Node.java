@@ -137,6 +137,13 @@ public class Node implements Cloneable {
         }  
     }
 
+    /**
+     * A node like this one with other children.
+     */
+    public Node withChildren(Node left, Node right) {
+        return new Node(type, value, left, right);
+    }
+
     @Override
     public Node clone() {
         return new Node(
@@ -1,19 +1,34 @@
 package mafia.engine.expression.parser;
 
-import java.util.Queue;
+import java.util.ArrayList;
 
 import org.apache.commons.lang3.tuple.Pair;
 
+import mafia.engine.expression.function.FunctionRegistry;
 import mafia.engine.expression.lexer.Token;
+import mafia.engine.expression.lexer.TokenBuffer;
 import mafia.engine.expression.lexer.Token.Type;
 
 public class Parser {
+
+    private final FunctionRegistry functions;
+
+    public Parser() {
+        this(FunctionRegistry.standard());
+    }
+
+    /**
+     * Creates a parser resolving calls against {@code functions}.
+     */
+    public Parser(FunctionRegistry functions) {
+        this.functions = functions;
+    }
     
-    public Node parse(Queue<Token> tokens) {
+    public Node parse(TokenBuffer tokens) {
         return parse(tokens, 0.0f, false);
     }
 
-    private Node parse(final Queue<Token> tokens, final float minBindingPower, final boolean requireClosingParenthesis) {
+    private Node parse(final TokenBuffer tokens, final float minBindingPower, final boolean requireClosingParenthesis) {
         if (tokens.peek() == null || tokens.peek() == Token.END) {
             return null;    
         }
@@ -21,9 +36,16 @@ public class Parser {
         var type = token.type();
         var value = token.value();
         Node lhs = switch (type) {
-            case NUMBER, IDENTIFIER -> new Node(tokens.poll());
+            case NUMBER -> new Node(tokens.poll());
+            case IDENTIFIER -> {
+                tokens.poll();
+                // a word followed by '(' calls the function of that name
+                var next = tokens.peek();
+                yield next != null && next.type() == Type.OPEN_PARENTHESIS
+                    ? parseCall(token, tokens)
+                    : new Node(token);
+            }
             case OPEN_PARENTHESIS -> parseParenthesisBody(tokens);
-            case FUNCTION -> parseFunctionBody(tokens,token);
             // unary operators
             case ARITHMETIC_OPERATOR -> {
                 var condition = value.equals("-");
@@ -84,21 +106,7 @@ public class Parser {
         return lhs;
     }
 
-    private Node parseFunctionBody(final Queue<Token> tokens, Token token) {
-        var functionNode = new Node(token);
-        if (tokens.peek() == null || tokens.peek().type() == Type.END) {
-            throw new IllegalStateException("Missing function body: " + functionNode.value());
-        }
-
-        if (tokens.peek().type() != Type.FUNCTION) {
-            throw unexpectedToken(tokens);
-        }
-
-        var callee = new Node(tokens.poll());
-        return parseCall(callee, tokens);
-    }
-
-    private Node parseParenthesisBody(final Queue<Token> tokens) {
+    private Node parseParenthesisBody(final TokenBuffer tokens) {
         tokens.poll();
         var lhs = parse(tokens, 0.0f, true);
         var close = tokens.poll();
@@ -108,22 +116,17 @@ public class Parser {
         return lhs;
     }
 
-    private Node parseCall(Node callee, Queue<Token> tokens) {
+    private Node parseCall(Token callee, TokenBuffer tokens) {
         tokens.poll(); // '('
 
-        Node args = null;
+        var arguments = new ArrayList<Node>();
 
         if (tokens.peek().type() != Type.CLOSE_PARENTHESIS) {
-            args = parse(tokens, 0.0f, false);
+            arguments.add(parse(tokens, 0.0f, true));
 
             while (tokens.peek().type() == Type.SEPARATOR) {
                 tokens.poll();
-                args = new Node(
-                    Type.SEPARATOR,
-                    ",",
-                    args,
-                    parse(tokens, 0.0f, true)
-                );
+                arguments.add(parse(tokens, 0.0f, true));
             }
         }
 
@@ -131,11 +134,16 @@ public class Parser {
             throw new IllegalStateException("Expected ')'");
         }
 
-        return new Node(Type.CALL, "call", callee, args);
+        if (arguments.contains(null)) {
+            throw new IllegalStateException("Missing argument of " + callee.value() + "()");
+        }
+
+        var function = functions.resolve(callee.value(), arguments.size());
+        return new Call(function, arguments.toArray(Node[]::new));
     }
 
     private Node parseUnaryRight(
-        Queue<Token> tokens,
+        TokenBuffer tokens,
         boolean requireClosingParenthesis,
         String value,
         boolean condition,
@@ -177,7 +185,7 @@ public class Parser {
         };
     }
 
-    private IllegalStateException unexpectedToken(Queue<Token> tokens) {
+    private IllegalStateException unexpectedToken(TokenBuffer tokens) {
         return new IllegalStateException("Unexpected token: " + tokens.peek().value() + " with type: " + tokens.peek().type());
     }
 }
@@ -103,10 +103,13 @@ public class PlayerEngine {
                 case "nightkill", "daykill" -> {
                     var targetProperties = ctx.target().properties();
                     var actorProperties = ctx.actor().properties();
-                    if (targetProperties.getProperty("killer") == null) {
-                        targetProperties.addProperty("killer", new ArrayList<Player>());
+                    // replaced instead of modified so the change is published
+                    var killers = new ArrayList<Player>();
+                    if (targetProperties.getProperty("killer") != null) {
+                        killers.addAll((List<Player>) targetProperties.getProperty("killer"));
                     }
-                    ((List<Player>) targetProperties.getProperty("killer")).add(ctx.actor());
+                    killers.add(ctx.actor());
+                    targetProperties.addProperty("killer", killers);
         
                     actorProperties.addProperty("killed", ctx.target());
                 }
@@ -136,7 +139,7 @@ public class PlayerEngine {
         int heals = player.attemptedActions().getOrDefault(PlayerAction.HEAL, 0);
         int takedowns = player.attemptedActions().getOrDefault(PlayerAction.TAKEDOWN, 0);
 
-        boolean isOverKill = config.getBooleanConfiguration("general", "overkillRule");
+        boolean isOverKill = config.getBooleanConfiguration(GameConfiguration.OVERKILL_RULE);
 
         boolean isSaved = isOverKill ? kills == heals : kills >= 1 && heals >= 1;
         boolean isKilled = isOverKill ? kills != heals : kills >= 1 && heals < 1;
@@ -0,0 +1,25 @@
+package mafia.engine.player;
+
+import java.util.List;
+
+import mafia.engine.property.PropertyTable;
+
+/**
+ * The players of a game with their state, alignment, role and the flags set
+ * during the game mirrored in columns, for the aggregate rules over them.
+ */
+public class PlayerTable extends PropertyTable<Player> {
+
+    private static final List<Column> COLUMNS = List.of(
+        Column.enumeration(PlayerState.class, "state"),
+        Column.symbol("alignment"),
+        Column.symbol("role", "roleName"),
+        Column.flag("votedOut"),
+        Column.flag("killed"),
+        Column.flag("takendown")
+    );
+
+    public PlayerTable(List<Player> players) {
+        super(players, COLUMNS);
+    }
+}
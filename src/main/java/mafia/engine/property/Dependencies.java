@@ -0,0 +1,128 @@
+package mafia.engine.property;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Property keys read while evaluating something, grouped by the
+ * {@link Properties} they were read from.
+ * <p>
+ * Reads are recorded by {@link Properties} itself for the evaluation passed to
+ * {@link #track(Dependencies, Supplier)} on the current thread. Collections
+ * are covered through the property holding them, so they have to be replaced
+ * rather than modified in place for a change to be seen.
+ * </p>
+ */
+public final class Dependencies {
+
+    private static final ThreadLocal<Dependencies> CURRENT = new ThreadLocal<>();
+    // number of evaluations being tracked on any thread, so untracked reads stay cheap
+    private static final AtomicInteger TRACKING = new AtomicInteger();
+
+    private final Map<Properties, Reads> reads = new IdentityHashMap<>();
+
+    // keys read from one source, and its state before the first of them
+    private static final class Reads {
+        final Object version;
+        final Set<String> keys = new HashSet<>();
+
+        Reads(Object version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Runs {@code evaluation}, recording every property it reads into
+     * {@code dependencies}. When called inside another tracked evaluation the
+     * reads are recorded there as well.
+     */
+    public static <T> T track(Dependencies dependencies, Supplier<T> evaluation) {
+        var parent = CURRENT.get();
+        CURRENT.set(dependencies);
+        TRACKING.incrementAndGet();
+        try {
+            return evaluation.get();
+        } finally {
+            TRACKING.decrementAndGet();
+            CURRENT.set(parent);
+            if (parent != null) {
+                parent.addAll(dependencies);
+            }
+        }
+    }
+
+    /**
+     * Records {@code dependencies} into the evaluation tracked on this thread,
+     * if any. Used when a result is reused instead of being recomputed.
+     */
+    public static void replay(Dependencies dependencies) {
+        if (TRACKING.get() == 0) {
+            return;
+        }
+
+        var current = CURRENT.get();
+        if (current != null) {
+            current.addAll(dependencies);
+        }
+    }
+
+    /**
+     * Whether an evaluation is being tracked on this thread.
+     */
+    static boolean tracking() {
+        return TRACKING.get() != 0 && CURRENT.get() != null;
+    }
+
+    static void read(Properties properties, String propertyName) {
+        if (TRACKING.get() == 0) {
+            return;
+        }
+
+        var current = CURRENT.get();
+        if (current != null) {
+            current.add(properties, propertyName);
+        }
+    }
+
+    public Set<Properties> sources() {
+        return reads.keySet();
+    }
+
+    public boolean dependsOn(Properties properties, String propertyName) {
+        var read = reads.get(properties);
+        return read != null && read.keys.contains(propertyName);
+    }
+
+    /**
+     * Whether a recorded property has been written since it was read, which
+     * a listener added after the evaluation would have missed.
+     */
+    public boolean changedSinceRead() {
+        for (var entry : reads.entrySet()) {
+            var read = entry.getValue();
+            if (entry.getKey().changedSince(read.version, read.keys)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(Properties properties, String propertyName) {
+        var read = reads.get(properties);
+        if (read == null) {
+            read = new Reads(properties.version());
+            reads.put(properties, read);
+        }
+        read.keys.add(propertyName);
+    }
+
+    private void addAll(Dependencies other) {
+        other.reads.forEach((properties, read) ->
+            reads.computeIfAbsent(properties, _ -> new Reads(read.version)).keys.addAll(read.keys)
+        );
+    }
+}
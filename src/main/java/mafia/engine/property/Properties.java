@@ -1,42 +1,423 @@
 package mafia.engine.property;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
 
+/**
+ * Named properties of a player, a role or the game.
+ * <p>
+ * The properties are held in an immutable {@link State} that every write
+ * replaces as a whole, so a reader on another thread always sees a complete
+ * state and {@link #snapshot()} only has to keep the current one.
+ * </p>
+ */
 @Accessors(fluent = true)
-@RequiredArgsConstructor
 public class Properties {
 
     @Getter
     private final String propertyName;
 
-    @Getter
-    private Map<String, Object> properties = new HashMap<>();
+    private volatile State state;
+    private final boolean snapshot;
+
+    private volatile List<PropertyListener> listeners;
+    // state other components keep per receiver, dropped together with it
+    private volatile Map<Object, Object> attachments;
+
+    public Properties(String propertyName) {
+        this(propertyName, State.EMPTY, false);
+    }
+
+    private Properties(String propertyName, State state, boolean snapshot) {
+        this.propertyName = propertyName;
+        this.state = state;
+        this.snapshot = snapshot;
+    }
 
     public Properties addProperty(String propertyName, Object property) {
-        properties.put(propertyName, property);
+        write(s -> s.with(propertyName, property, 0));
+        changed(propertyName);
         return this;
     }
     
     public Properties addProperties(Map<String, Object> properties) {
-        this.properties.putAll(properties);
+        write(s -> {
+            for (var entry : properties.entrySet()) {
+                s = s.with(entry.getKey(), entry.getValue(), 0);
+            }
+            return s;
+        });
+        properties.keySet().forEach(this::changed);
+        return this;
+    }
+
+    public Properties addLong(String propertyName, long value) {
+        write(s -> s.with(propertyName, Primitive.LONG, value));
+        changed(propertyName);
+        return this;
+    }
+
+    public Properties addDouble(String propertyName, double value) {
+        write(s -> s.with(propertyName, Primitive.DOUBLE, Double.doubleToRawLongBits(value)));
+        changed(propertyName);
+        return this;
+    }
+
+    public Properties addBoolean(String propertyName, boolean value) {
+        write(s -> s.with(propertyName, Primitive.BOOLEAN, value ? 1 : 0));
+        changed(propertyName);
         return this;
     }
 
     public Object removeProperty(String propertyName) {
-        return properties.remove(propertyName);
+        var previous = write(s -> s.without(propertyName));
+        changed(propertyName);
+        return previous.get(previous.shape().slot(propertyName));
+    }
+
+    /**
+     * An immutable copy of these properties as they are now. It shares the
+     * current state instead of copying it, and later writes to this object
+     * leave it unchanged. Values are not copied, so a nested holder has to be
+     * snapshot on its own. Writing to a snapshot throws
+     * {@link UnsupportedOperationException}.
+     */
+    public Properties snapshot() {
+        return snapshot ? this : new Properties(propertyName, state, true);
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
     }
         
     public Object getProperty(String propertyName) {
-        return properties.get(propertyName);
+        Dependencies.read(this, propertyName);
+        var current = state;
+        return current.get(current.shape().slot(propertyName));
     }
 
     public boolean containsProperty(String propertyName) {
-        return properties.containsKey(propertyName);
+        Dependencies.read(this, propertyName);
+        return state.shape().slot(propertyName) >= 0;
+    }
+
+    /**
+     * Same as {@link #getProperty(String)}, using the slot cached by
+     * {@code site} when this object has the shape it saw last.
+     */
+    public Object getProperty(PropertySite site) {
+        Dependencies.read(this, site.name());
+        var current = state;
+        return current.get(site.slot(current.shape()));
+    }
+
+    public boolean containsProperty(PropertySite site) {
+        Dependencies.read(this, site.name());
+        return site.slot(state.shape()) >= 0;
+    }
+
+    /**
+     * Returns a numeric property as a long, without boxing when it was added
+     * with {@link #addLong} or {@link #addDouble}.
+     */
+    public long getLong(String propertyName) {
+        Dependencies.read(this, propertyName);
+        var current = state;
+        var slot = current.shape().slot(propertyName);
+        return switch (current.kind(slot)) {
+            case LONG -> current.primitives()[slot];
+            case DOUBLE -> (long) Double.longBitsToDouble(current.primitives()[slot]);
+            case null -> {
+                if (current.get(slot) instanceof Number n) {
+                    yield n.longValue();
+                }
+                throw notA("number", propertyName);
+            }
+            default -> throw notA("number", propertyName);
+        };
+    }
+
+    public double getDouble(String propertyName) {
+        Dependencies.read(this, propertyName);
+        var current = state;
+        var slot = current.shape().slot(propertyName);
+        return switch (current.kind(slot)) {
+            case LONG -> current.primitives()[slot];
+            case DOUBLE -> Double.longBitsToDouble(current.primitives()[slot]);
+            case null -> {
+                if (current.get(slot) instanceof Number n) {
+                    yield n.doubleValue();
+                }
+                throw notA("number", propertyName);
+            }
+            default -> throw notA("number", propertyName);
+        };
+    }
+
+    public boolean getBoolean(String propertyName) {
+        Dependencies.read(this, propertyName);
+        var current = state;
+        var slot = current.shape().slot(propertyName);
+        return switch (current.kind(slot)) {
+            case BOOLEAN -> current.primitives()[slot] != 0;
+            case null -> {
+                if (current.get(slot) instanceof Boolean b) {
+                    yield b;
+                }
+                throw notA("boolean", propertyName);
+            }
+            default -> throw notA("boolean", propertyName);
+        };
+    }
+
+    /**
+     * Whether the property read by {@code site} holds a number, boxed or not.
+     */
+    public boolean isNumber(PropertySite site) {
+        Dependencies.read(this, site.name());
+        var current = state;
+        var slot = site.slot(current.shape());
+        return switch (current.kind(slot)) {
+            case LONG, DOUBLE -> true;
+            case BOOLEAN -> false;
+            case null -> current.get(slot) instanceof Number;
+        };
+    }
+
+    /**
+     * Numeric value of the property read by {@code site} as the expression
+     * engine uses it, without boxing. Only valid when {@link #isNumber} holds.
+     */
+    public float getFloat(PropertySite site) {
+        var current = state;
+        var slot = site.slot(current.shape());
+        return switch (current.kind(slot)) {
+            case LONG -> current.primitives()[slot];
+            case DOUBLE -> (float) Double.longBitsToDouble(current.primitives()[slot]);
+            case null -> ((Number) current.get(slot)).floatValue();
+            default -> throw notA("number", site.name());
+        };
+    }
+
+    public Shape shape() {
+        return state.shape();
+    }
+
+    /**
+     * Copy of the properties in insertion order.
+     */
+    public Map<String, Object> properties() {
+        var current = state;
+        var map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < current.shape().size(); i++) {
+            map.put(current.shape().key(i), current.get(i));
+        }
+        return map;
+    }
+
+    /**
+     * Replaces the state with {@code change} applied to it, returning the
+     * state it replaced. Writers are serialised, readers never wait.
+     */
+    private State write(UnaryOperator<State> change) {
+        if (snapshot) {
+            throw new UnsupportedOperationException("Snapshot of " + propertyName + " is read-only");
+        }
+
+        synchronized (this) {
+            var previous = state;
+            state = change.apply(previous);
+            return previous;
+        }
+    }
+
+    private IllegalStateException notA(String type, String propertyName) {
+        return new IllegalStateException(
+            "Property '%s' of %s is not a %s".formatted(propertyName, this.propertyName, type)
+        );
+    }
+
+    // marks a slot whose value is held unboxed in primitives
+    private enum Primitive {
+        LONG,
+        DOUBLE,
+        BOOLEAN
+    }
+
+    /**
+     * The properties at one point in time. Its arrays are never written once
+     * it is published: a change copies them into a new state, sharing the
+     * shape and every value it does not replace.
+     */
+    private record State(Shape shape, Object[] values, long[] primitives) {
+
+        static final State EMPTY = new State(Shape.EMPTY, new Object[0], null);
+
+        Object get(int slot) {
+            if (slot < 0) {
+                return null;
+            }
+
+            var value = values[slot];
+            if (value instanceof Primitive kind) {
+                var bits = primitives[slot];
+                return switch (kind) {
+                    case LONG -> bits;
+                    case DOUBLE -> Double.longBitsToDouble(bits);
+                    case BOOLEAN -> bits != 0;
+                };
+            }
+            return value;
+        }
+
+        Primitive kind(int slot) {
+            return slot >= 0 && values[slot] instanceof Primitive kind ? kind : null;
+        }
+
+        boolean holdsSame(State other, String propertyName) {
+            var slot = shape.slot(propertyName);
+            var otherSlot = other.shape.slot(propertyName);
+            if (slot < 0 || otherSlot < 0) {
+                return slot == otherSlot;
+            }
+
+            var kind = kind(slot);
+            if (kind != other.kind(otherSlot)) {
+                return false;
+            }
+            return kind == null ? values[slot] == other.values[otherSlot] : primitives[slot] == other.primitives[otherSlot];
+        }
+
+        /**
+         * This state with {@code value} in the slot of {@code propertyName},
+         * which is added if needed. {@code bits} is the unboxed value when
+         * {@code value} is a {@link Primitive}.
+         */
+        State with(String propertyName, Object value, long bits) {
+            var slot = shape.slot(propertyName);
+            var next = shape;
+            if (slot < 0) {
+                next = shape.with(propertyName);
+                slot = next.size() - 1;
+            }
+
+            var nextValues = Arrays.copyOf(values, next.size());
+            nextValues[slot] = value;
+
+            var nextPrimitives = primitives;
+            if (value instanceof Primitive || primitives != null) {
+                nextPrimitives = primitives == null ? new long[next.size()] : Arrays.copyOf(primitives, next.size());
+                nextPrimitives[slot] = bits;
+            }
+            return new State(next, nextValues, nextPrimitives);
+        }
+
+        State without(String propertyName) {
+            var slot = shape.slot(propertyName);
+            if (slot < 0) {
+                return this;
+            }
+
+            var next = shape.without(propertyName);
+            var nextValues = new Object[next.size()];
+            var nextPrimitives = primitives == null ? null : new long[next.size()];
+            for (int i = 0, j = 0; i < shape.size(); i++) {
+                if (i != slot) {
+                    nextValues[j] = values[i];
+                    if (nextPrimitives != null) {
+                        nextPrimitives[j] = primitives[i];
+                    }
+                    j++;
+                }
+            }
+            return new State(next, nextValues, nextPrimitives);
+        }
+    }
+
+    // listeners are told apart by identity, a table equals any list of the same rows
+    public synchronized void addListener(PropertyListener listener) {
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        if (indexOf(listener) < 0) {
+            listeners.add(listener);
+        }
+    }
+
+    public synchronized void removeListener(PropertyListener listener) {
+        int index = listeners == null ? -1 : indexOf(listener);
+        if (index >= 0) {
+            listeners.remove(index);
+        }
+    }
+
+    private int indexOf(PropertyListener listener) {
+        for (int i = 0; i < listeners.size(); i++) {
+            if (listeners.get(i) == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T attachment(Object key) {
+        var current = attachments;
+        return current == null ? null : (T) current.get(key);
+    }
+
+    public void attach(Object key, Object value) {
+        var current = attachments;
+        if (current == null) {
+            synchronized (this) {
+                if (attachments == null) {
+                    attachments = new ConcurrentHashMap<>();
+                }
+                current = attachments;
+            }
+        }
+        current.put(key, value);
+    }
+
+    // the current state, for comparing with a later one in changedSince
+    Object version() {
+        return state;
+    }
+
+    /**
+     * Whether one of {@code propertyNames} holds another value than it did
+     * in {@code version}.
+     */
+    boolean changedSince(Object version, Set<String> propertyNames) {
+        var current = state;
+        if (current == version) {
+            return false;
+        }
+        for (var propertyName : propertyNames) {
+            if (!current.holdsSame((State) version, propertyName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void changed(String propertyName) {
+        var current = listeners;
+        if (current == null) {
+            return;
+        }
+        for (var listener : current) {
+            listener.propertyChanged(this, propertyName);
+        }
     }
 
 
@@ -48,7 +429,7 @@ public class Properties {
                 properties = %s    
             }
             """
-            .formatted(propertyName, formatObject(properties, 1));
+            .formatted(propertyName, formatObject(properties(), 1));
     }
 
     private String formatObject(Object obj, int indentLevel) {
@@ -0,0 +1,12 @@
+package mafia.engine.property;
+
+@FunctionalInterface
+public interface PropertyListener {
+
+    /**
+     * Called after {@code propertyName} of {@code properties} was added,
+     * replaced or removed.
+     */
+    public void propertyChanged(Properties properties, String propertyName);
+
+}
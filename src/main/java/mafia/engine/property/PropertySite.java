@@ -0,0 +1,36 @@
+package mafia.engine.property;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * A place that reads one property by name, such as an identifier in a
+ * compiled expression. It remembers the slot found for the last shape it
+ * saw, so reading objects of that shape again skips the name lookup.
+ */
+@Accessors(fluent = true)
+public final class PropertySite {
+
+    @Getter
+    private final String name;
+
+    // replaced as a whole, so racing readers always see a matching pair
+    private Cache cache;
+
+    public PropertySite(String name) {
+        this.name = name;
+    }
+
+    int slot(Shape shape) {
+        var current = cache;
+        if (current != null && current.shape() == shape) {
+            return current.slot();
+        }
+
+        var slot = shape.slot(name);
+        cache = new Cache(shape, slot);
+        return slot;
+    }
+
+    private record Cache(Shape shape, int slot) {}
+}
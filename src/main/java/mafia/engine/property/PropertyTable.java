@@ -0,0 +1,378 @@
+package mafia.engine.property;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A fixed list of property holders that mirrors some of their properties in
+ * columns, kept up to date as a {@link PropertyListener} of every row.
+ * <p>
+ * Besides the value of each row, a column keeps the set of rows holding each
+ * distinct value, so a {@link Selection} is answered with a few bitwise
+ * operations instead of reading the properties of every row. While a row
+ * holds a value that does not fit its column, such as a missing flag, the
+ * column answers nothing and callers read the properties themselves.
+ * </p>
+ * <p>
+ * The rows usually outlive the table, so it must be {@link #detach()
+ * detached} once it is no longer used.
+ * </p>
+ */
+public class PropertyTable<T extends PropertyHolder> extends AbstractList<T>
+    implements RandomAccess, PropertyListener {
+
+    /**
+     * A property mirrored by the table, read by following {@code path} from
+     * each row through nested property holders.
+     */
+    public record Column(Kind kind, List<String> path, Class<? extends Enum<?>> enumType) {
+
+        public enum Kind {
+            ENUM,       // byte[] of ordinals
+            SYMBOL,     // int[] of ids of strings
+            FLAG        // bits of booleans
+        }
+
+        public static Column enumeration(Class<? extends Enum<?>> enumType, String... path) {
+            return new Column(Kind.ENUM, List.of(path), enumType);
+        }
+
+        public static Column symbol(String... path) {
+            return new Column(Kind.SYMBOL, List.of(path), null);
+        }
+
+        public static Column flag(String... path) {
+            return new Column(Kind.FLAG, List.of(path), null);
+        }
+    }
+
+    /**
+     * A condition on the columns of a row, following the semantics of the
+     * expression it was compiled from.
+     */
+    public sealed interface Selection {
+
+        /** Rows whose value at {@code path} prints as {@code word}. */
+        record Equals(List<String> path, String word) implements Selection {}
+
+        /** Rows whose flag at {@code path} is set. */
+        record Flag(List<String> path) implements Selection {}
+
+        record Not(Selection selection) implements Selection {}
+
+        record And(Selection left, Selection right) implements Selection {}
+
+        record Or(Selection left, Selection right) implements Selection {}
+    }
+
+    private static final Object MISSING = new Object();
+
+    private final List<T> items;
+    private final Properties[] rows;
+    private final Map<Properties, Integer> rowIndex = new IdentityHashMap<>();
+    private final Map<List<String>, Values> columns = new HashMap<>();
+    // holders reached through a path, listened to as well
+    private final Set<Properties> nested = Collections.newSetFromMap(new IdentityHashMap<>());
+    // names of every property any row ever had
+    private final Set<String> keys = new HashSet<>();
+    private boolean detached;
+
+    public PropertyTable(List<T> items, List<Column> columns) {
+        this.items = List.copyOf(items);
+        this.rows = new Properties[this.items.size()];
+
+        for (int row = 0; row < rows.length; row++) {
+            var properties = this.items.get(row).getProperties();
+            rows[row] = properties;
+            rowIndex.put(properties, row);
+            var shape = properties.shape();
+            for (int slot = 0; slot < shape.size(); slot++) {
+                keys.add(shape.key(slot));
+            }
+        }
+
+        for (var column : columns) {
+            var values = new Values(column);
+            this.columns.put(column.path(), values);
+            for (int row = 0; row < rows.length; row++) {
+                values.update(row);
+            }
+        }
+
+        for (var properties : rows) {
+            properties.addListener(this);
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Rows matching {@code selection}, or {@code null} when the columns cannot
+     * tell: a column is missing or holds a value it does not mirror, or a row
+     * has a property named like one of {@code identifiers}, which would
+     * shadow them in the expression.
+     */
+    public synchronized BitSet select(Selection selection, Collection<String> identifiers) {
+        if (detached) {
+            return null;
+        }
+        for (var identifier : identifiers) {
+            if (keys.contains(identifier)) {
+                return null;
+            }
+        }
+
+        var selected = rows(selection);
+        if (selected != null && Dependencies.tracking()) {
+            // the properties a row by row evaluation would have read
+            var paths = new ArrayList<List<String>>();
+            collectPaths(selection, paths);
+            for (var properties : rows) {
+                for (var identifier : identifiers) {
+                    properties.containsProperty(identifier);
+                }
+                for (var path : paths) {
+                    read(properties, path);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Stops listening to the rows and the holders reached from them. The
+     * table keeps its rows, but its columns answer nothing from then on.
+     */
+    public synchronized void detach() {
+        detached = true;
+        for (var properties : rows) {
+            properties.removeListener(this);
+        }
+        for (var properties : nested) {
+            properties.removeListener(this);
+        }
+        nested.clear();
+    }
+
+    @Override
+    public synchronized void propertyChanged(Properties properties, String propertyName) {
+        if (detached) {
+            return;
+        }
+        var row = rowIndex.get(properties);
+        if (row != null) {
+            keys.add(propertyName);
+            for (var values : columns.values()) {
+                if (values.column.path().getFirst().equals(propertyName)) {
+                    values.update(row);
+                }
+            }
+            return;
+        }
+
+        // a nested holder is rarely shared by many rows, so all of them are read again
+        for (var values : columns.values()) {
+            if (values.column.path().indexOf(propertyName) > 0) {
+                for (int r = 0; r < rows.length; r++) {
+                    values.update(r);
+                }
+            }
+        }
+    }
+
+    private BitSet rows(Selection selection) {
+        return switch (selection) {
+            case Selection.Equals e -> {
+                var values = usable(e.path());
+                yield values == null || values.column.kind() == Column.Kind.FLAG ? null : values.matching(e.word());
+            }
+            case Selection.Flag f -> {
+                var values = usable(f.path());
+                yield values == null || values.column.kind() != Column.Kind.FLAG ? null : (BitSet) values.flags.clone();
+            }
+            case Selection.Not n -> {
+                var selected = rows(n.selection());
+                if (selected != null) {
+                    selected.flip(0, rows.length);
+                }
+                yield selected;
+            }
+            case Selection.And a -> {
+                var left = rows(a.left());
+                var right = left == null ? null : rows(a.right());
+                if (right == null) {
+                    yield null;
+                }
+                left.and(right);
+                yield left;
+            }
+            case Selection.Or o -> {
+                var left = rows(o.left());
+                var right = left == null ? null : rows(o.right());
+                if (right == null) {
+                    yield null;
+                }
+                left.or(right);
+                yield left;
+            }
+        };
+    }
+
+    private Values usable(List<String> path) {
+        var values = columns.get(path);
+        return values == null || !values.irregular.isEmpty() ? null : values;
+    }
+
+    private static void collectPaths(Selection selection, List<List<String>> paths) {
+        switch (selection) {
+            case Selection.Equals e -> paths.add(e.path());
+            case Selection.Flag f -> paths.add(f.path());
+            case Selection.Not n -> collectPaths(n.selection(), paths);
+            case Selection.And a -> {
+                collectPaths(a.left(), paths);
+                collectPaths(a.right(), paths);
+            }
+            case Selection.Or o -> {
+                collectPaths(o.left(), paths);
+                collectPaths(o.right(), paths);
+            }
+        }
+    }
+
+    private Object read(Properties properties, List<String> path) {
+        Object value = null;
+        for (int i = 0; i < path.size(); i++) {
+            if (i > 0) {
+                if (!(value instanceof PropertyHolder holder)) {
+                    return MISSING;
+                }
+                properties = holder.getProperties();
+                if (nested.add(properties)) {
+                    properties.addListener(this);
+                }
+            }
+
+            var name = path.get(i);
+            value = properties.getProperty(name);
+            if (value == null && !properties.containsProperty(name)) {
+                return MISSING;
+            }
+        }
+        return value;
+    }
+
+    private final class Values {
+
+        private final Column column;
+        // rows whose value does not fit the column
+        private final BitSet irregular = new BitSet();
+
+        private byte[] ordinals;
+        private BitSet[] byOrdinal;
+
+        private int[] ids;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<BitSet> byId = new ArrayList<>();
+
+        private BitSet flags;
+
+        Values(Column column) {
+            this.column = column;
+            switch (column.kind()) {
+                case ENUM -> {
+                    ordinals = new byte[rows.length];
+                    byOrdinal = new BitSet[column.enumType().getEnumConstants().length];
+                    for (int i = 0; i < byOrdinal.length; i++) {
+                        byOrdinal[i] = new BitSet(rows.length);
+                    }
+                }
+                case SYMBOL -> ids = new int[rows.length];
+                case FLAG -> flags = new BitSet(rows.length);
+            }
+        }
+
+        void update(int row) {
+            var value = read(rows[row], column.path());
+            irregular.clear(row);
+
+            switch (column.kind()) {
+                case ENUM -> {
+                    byOrdinal[ordinals[row] & 0xFF].clear(row);
+                    ordinals[row] = 0;
+                    if (column.enumType().isInstance(value) && ((Enum<?>) value).ordinal() < 256) {
+                        ordinals[row] = (byte) ((Enum<?>) value).ordinal();
+                        byOrdinal[ordinals[row] & 0xFF].set(row);
+                    } else {
+                        irregular.set(row);
+                    }
+                }
+                case SYMBOL -> {
+                    if (ids[row] > 0) {
+                        byId.get(ids[row] - 1).clear(row);
+                    }
+                    ids[row] = 0;
+                    // "true" and "false" are read as booleans, not as words
+                    if (value instanceof String s && !s.equalsIgnoreCase("true") && !s.equalsIgnoreCase("false")) {
+                        ids[row] = id(s);
+                        byId.get(ids[row] - 1).set(row);
+                    } else {
+                        irregular.set(row);
+                    }
+                }
+                case FLAG -> {
+                    flags.clear(row);
+                    if (value instanceof Boolean b) {
+                        flags.set(row, b);
+                    } else {
+                        irregular.set(row);
+                    }
+                }
+            }
+        }
+
+        BitSet matching(String word) {
+            var matching = new BitSet(rows.length);
+            if (column.kind() == Column.Kind.ENUM) {
+                // the expression compares what the constants print
+                var constants = column.enumType().getEnumConstants();
+                for (int i = 0; i < constants.length; i++) {
+                    if (constants[i].toString().equals(word)) {
+                        matching.or(byOrdinal[i]);
+                    }
+                }
+            } else {
+                var id = dictionary.get(word);
+                if (id != null) {
+                    matching.or(byId.get(id - 1));
+                }
+            }
+            return matching;
+        }
+
+        // ids start at 1, so that 0 is no value
+        private int id(String s) {
+            return dictionary.computeIfAbsent(s, _ -> {
+                byId.add(new BitSet(rows.length));
+                return byId.size();
+            });
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package mafia.engine.property;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Layout of a {@link Properties}: which slot holds which property. Shapes are
+ * immutable and shared, so every {@link Properties} that got the same keys in
+ * the same order has the same shape, and a slot found once for a shape is
+ * valid for all of them.
+ */
+public final class Shape {
+
+    public static final Shape EMPTY = new Shape(new String[0]);
+
+    private final String[] keys;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    private Shape(String[] keys) {
+        this.keys = keys;
+        for (int i = 0; i < keys.length; i++) {
+            slots.put(keys[i], i);
+        }
+    }
+
+    /**
+     * Returns the slot of {@code key}, or {@code -1} if this shape has none.
+     */
+    public int slot(String key) {
+        var slot = slots.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    public String key(int slot) {
+        return keys[slot];
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the shape with {@code key} appended in a new last slot.
+     */
+    public Shape with(String key) {
+        return transitions.computeIfAbsent(key, k -> {
+            var extended = Arrays.copyOf(keys, keys.length + 1);
+            extended[keys.length] = k;
+            return new Shape(extended);
+        });
+    }
+
+    /**
+     * Returns the shape without {@code key}, following the transitions from
+     * {@link #EMPTY} so the result is shared as well.
+     */
+    public Shape without(String key) {
+        var shape = EMPTY;
+        for (var k : keys) {
+            if (!k.equals(key)) {
+                shape = shape.with(k);
+            }
+        }
+        return shape;
+    }
+}
@@ -65,10 +65,7 @@ public class VoteResult {
             }
         }
 
-        var isAnonymousVoting = configuration.getConfiguration(
-                                    "general", 
-                                    "anonymousVoting"
-                                ).getBooleanValue();
+        var isAnonymousVoting = configuration.getBooleanConfiguration(GameConfiguration.ANONYMOUS_VOTING);
 
         if (!isAnonymousVoting) {
             if (playerVotes.get(target) == null) {
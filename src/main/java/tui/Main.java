@@ -1,5 +1,6 @@
 package tui;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -11,23 +12,43 @@ import host.Host;
 
 import mafia.engine.config.PresetsConfig;
 import mafia.engine.config.RoleConfig;
-import mafia.engine.config.loader.Loader;
-import mafia.engine.core.GameConfiguration;
-import mafia.engine.core.GameRules;
+import mafia.engine.config.RuleSet;
+import mafia.engine.config.loader.ConfigRepository;
+import mafia.engine.config.loader.RuleBundle;
+import mafia.engine.config.loader.RuleSetWatcher;
 import mafia.engine.player.Player;
 import mafia.engine.util.StreamUtils;
 
 public class Main {
     
     public static void main(String[] args) throws Exception {
-        RoleConfig primaryRoleConfig = Loader.load("mafia-engine/PrimaryRoles.yaml", RoleConfig.class);
-        RoleConfig secondaryRoleConfig = Loader.load("mafia-engine/SecondaryRoles.yaml", RoleConfig.class);
-        PresetsConfig presetsConfig = Loader.load("mafia-engine/Presets.yaml", PresetsConfig.class);
-        GameConfiguration gameConfig = Loader.load("mafia-engine/GameConfiguration.yaml", GameConfiguration.class);
-        GameRules gameRules  = Loader.load("mafia-engine/GameRules.yaml", GameRules.class);
+        var directory = Path.of("mafia-engine");
+        if (args.length > 0 && args[0].equals("compile-rules")) {
+            // compile-rules [directory]: writes the bundle read by later starts
+            if (args.length > 1) {
+                directory = Path.of(args[1]);
+            }
+            var bundle = directory.resolve(RuleBundle.FILE_NAME);
+            RuleBundle.compile(directory, bundle);
+            System.out.println("Compiled rules to " + bundle);
+            return;
+        }
+
+        // later games pick up edits to the rule files without a restart
+        RuleSetWatcher ruleSets = RuleSetWatcher.watch(directory);
+        ruleSets.onReload(version -> System.out.println("Loaded rule set version " + version.number()));
+        RuleSet ruleSet = ruleSets.current().ruleSet();
+        if (Boolean.getBoolean("mafia.config.timings")) {
+            ConfigRepository.yaml().timings().forEach((file, time) ->
+                System.out.println("Loaded " + file + " in " + time.toMillis() + " ms")
+            );
+        }
+        RoleConfig primaryRoleConfig = ruleSet.primaryRoles();
+        RoleConfig secondaryRoleConfig = ruleSet.secondaryRoles();
+        PresetsConfig presetsConfig = ruleSet.presets();
 
         Host host = new Host();
-        host.configure(gameConfig, gameRules);
+        host.configure(ruleSets);
         host.preset(presetsConfig.getPresets().get(1));
         host.loadRoles(primaryRoleConfig.getRoles(), secondaryRoleConfig.getRoles());
         
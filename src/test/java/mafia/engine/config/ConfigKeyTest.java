@@ -0,0 +1,43 @@
+package mafia.engine.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ConfigKeyTest {
+
+    @Test
+    void internsOneKeyPerName() {
+        var key = ConfigKey.of("keyTest", "interned");
+
+        assertSame(key, ConfigKey.of("keyTest", "interned"));
+        assertSame(key, ConfigKey.find("keyTest", "interned"));
+        assertEquals("keyTest.interned", key.toString());
+        assertTrue(key.index() < ConfigKey.count());
+    }
+
+    @Test
+    void separatesNamesByCategory() {
+        var general = ConfigKey.of("keyTest", "timer");
+        var other = ConfigKey.of("keyTestOther", "timer");
+
+        assertNotSame(general, other);
+        assertTrue(general.index() != other.index());
+        assertEquals("keyTest", general.category());
+        assertEquals("timer", other.configurationName());
+    }
+
+    @Test
+    void findingANameDoesNotInternIt() {
+        var count = ConfigKey.count();
+
+        assertNull(ConfigKey.find("keyTest", "neverAdded"));
+        assertNull(ConfigKey.find("keyTestMissing", "neverAdded"));
+        assertNull(ConfigKey.find("keyTest", "neverAdded"));
+        assertEquals(count, ConfigKey.count());
+    }
+}
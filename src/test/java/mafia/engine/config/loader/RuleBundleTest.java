@@ -0,0 +1,93 @@
+package mafia.engine.config.loader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import mafia.engine.config.RuleSet;
+
+class RuleBundleTest {
+
+    // every field of the rule set, whose classes have no equals of their own
+    private static final ObjectMapper FIELDS = new ObjectMapper()
+        .setVisibility(PropertyAccessor.ALL, Visibility.NONE)
+        .setVisibility(PropertyAccessor.FIELD, Visibility.ANY)
+        .registerModule(new SimpleModule().addSerializer(Duration.class, ToStringSerializer.instance));
+
+    @Test
+    void opensTheRuleSetItWasCompiledFrom() throws Exception {
+        withRuleFiles(directory -> {
+            var bundle = directory.resolve(RuleBundle.FILE_NAME);
+            RuleBundle.compile(directory, bundle);
+
+            assertTrue(Files.size(bundle) > 0);
+            assertEquals(fields(Loader.loadRuleSet(directory)), fields(RuleBundle.open(directory)));
+        });
+    }
+
+    @Test
+    void readsTheRuleFilesWhenTheyChangedSinceTheBundle() throws Exception {
+        withRuleFiles(directory -> {
+            RuleBundle.compile(directory, directory.resolve(RuleBundle.FILE_NAME));
+            var compiled = Loader.loadRuleSet(directory).configuration().getVersion();
+
+            var file = directory.resolve(RuleSet.CONFIGURATION);
+            Files.writeString(file, Files.readString(file).replaceFirst(compiled, compiled + "9"));
+
+            var opened = RuleBundle.open(directory);
+            assertEquals(compiled + "9", opened.configuration().getVersion());
+            assertEquals(fields(Loader.loadRuleSet(directory)), fields(opened));
+        });
+    }
+
+    @Test
+    void readsTheRuleFilesWhenTheBundleIsCorrupt() throws Exception {
+        withRuleFiles(directory -> {
+            var bundle = directory.resolve(RuleBundle.FILE_NAME);
+            RuleBundle.compile(directory, bundle);
+            var bytes = Files.readAllBytes(bundle);
+            Files.write(bundle, Arrays.copyOf(bytes, bytes.length / 2));
+
+            assertEquals(fields(Loader.loadRuleSet(directory)), fields(RuleBundle.open(directory)));
+        });
+    }
+
+    @FunctionalInterface
+    private interface DirectoryTest {
+        void run(Path directory) throws Exception;
+    }
+
+    // runs test on a copy of the rule files of the working directory
+    private static void withRuleFiles(DirectoryTest test) throws Exception {
+        var directory = Files.createTempDirectory("rules");
+        try {
+            for (var file : RuleSet.FILES) {
+                Files.copy(Path.of(file), directory.resolve(file));
+            }
+            test.run(directory);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static JsonNode fields(RuleSet ruleSet) {
+        return FIELDS.valueToTree(ruleSet);
+    }
+}
@@ -0,0 +1,102 @@
+package mafia.engine.config.loader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.config.RuleSet;
+
+class RuleSetWatcherTest {
+
+    @Test
+    void reloadPublishesTheNextVersion() throws Exception {
+        withRuleFiles(directory -> {
+            try (var watcher = RuleSetWatcher.watch(directory)) {
+                var published = new CopyOnWriteArrayList<RuleSetWatcher.Version>();
+                watcher.onReload(published::add);
+                assertEquals(1, watcher.current().number());
+
+                var version = watcher.current().ruleSet().configuration().getVersion();
+                replace(directory.resolve(RuleSet.CONFIGURATION), version, version + "9");
+                var reloaded = watcher.reload();
+
+                assertTrue(reloaded.number() > 1, "version " + reloaded.number());
+                assertEquals(version + "9", reloaded.ruleSet().configuration().getVersion());
+                assertTrue(published.contains(reloaded));
+            }
+        });
+    }
+
+    @Test
+    void keepsTheCurrentVersionWhenTheRuleFilesAreRejected() throws Exception {
+        withRuleFiles(directory -> {
+            try (var watcher = RuleSetWatcher.watch(directory)) {
+                var initial = watcher.current();
+
+                replace(directory.resolve(RuleSet.CONFIGURATION), "overkillRule", "overkillRules");
+                assertThrows(IllegalStateException.class, watcher::reload);
+                assertSame(initial, watcher.current());
+
+                replace(directory.resolve(RuleSet.CONFIGURATION), "overkillRules", "overkillRule");
+                replace(directory.resolve(RuleSet.RULES), "player.alignment is Evil", "player.allegiance is Evil");
+                assertThrows(RuntimeException.class, watcher::reload);
+                assertSame(initial, watcher.current());
+            }
+        });
+    }
+
+    @Test
+    void gamesKeepTheVersionTheyStartedWith() throws Exception {
+        withRuleFiles(directory -> {
+            try (var watcher = RuleSetWatcher.watch(directory)) {
+                var started = watcher.current();
+                var configuration = started.ruleSet().configuration();
+                var version = configuration.getVersion();
+                var rules = List.copyOf(started.ruleSet().rules().getRules().keySet());
+
+                replace(directory.resolve(RuleSet.CONFIGURATION), version, version + "9");
+                var reloaded = watcher.reload();
+
+                assertNotSame(configuration, reloaded.ruleSet().configuration());
+                assertSame(configuration, started.ruleSet().configuration());
+                assertEquals(version, configuration.getVersion());
+                assertEquals(rules, List.copyOf(started.ruleSet().rules().getRules().keySet()));
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface DirectoryTest {
+        void run(Path directory) throws Exception;
+    }
+
+    // runs test on a copy of the rule files of the working directory
+    private static void withRuleFiles(DirectoryTest test) throws Exception {
+        var directory = Files.createTempDirectory("rules");
+        try {
+            for (var file : RuleSet.FILES) {
+                Files.copy(Path.of(file), directory.resolve(file));
+            }
+            test.run(directory);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void replace(Path file, String text, String replacement) throws Exception {
+        Files.writeString(file, Files.readString(file).replaceFirst(text, replacement));
+    }
+}
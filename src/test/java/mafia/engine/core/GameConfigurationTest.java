@@ -0,0 +1,117 @@
+package mafia.engine.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.config.ConfigKey;
+import mafia.engine.config.Configuration;
+import mafia.engine.config.ValueType;
+
+class GameConfigurationTest {
+
+    private final Configuration overkill = configuration("overkillRule", ValueType.BOOLEAN, true);
+    private final Configuration timer = configuration("miscellaneousTimer", ValueType.DURATION, "90s");
+    private final GameConfiguration game = new GameConfiguration();
+
+    GameConfigurationTest() {
+        game.setVersion("1.0");
+        game.setConfigurations(Map.of(
+            "general", List.of(overkill, configuration("overkillRule", ValueType.BOOLEAN, false)),
+            "other", List.of(timer)
+        ));
+    }
+
+    @Test
+    void findsConfigurationsByKeyAndByName() {
+        assertSame(overkill, game.getConfiguration(GameConfiguration.OVERKILL_RULE));
+        assertSame(overkill, game.getConfiguration("general", "overkillRule"));
+        assertSame(timer, game.getConfiguration(GameConfiguration.MISCELLANEOUS_TIMER));
+        assertTrue(game.getBooleanConfiguration(GameConfiguration.OVERKILL_RULE));
+        assertTrue(game.getBooleanConfiguration("general", "overkillRule"));
+        assertEquals(Duration.ofSeconds(90), game.getDurationConfiguration(GameConfiguration.MISCELLANEOUS_TIMER));
+        assertEquals(Duration.ofSeconds(90), game.getDurationConfiguration("other", "miscellaneousTimer"));
+    }
+
+    @Test
+    void returnsNothingForConfigurationsThatWereNotLoaded() {
+        var count = ConfigKey.count();
+
+        assertNull(game.getConfiguration(GameConfiguration.SECRET_ROLES));
+        assertNull(game.getConfiguration("other", "overkillRule"));
+        assertNull(game.getConfiguration("general", "notLoaded"));
+        assertEquals(count, ConfigKey.count());
+
+        var e = assertThrows(IllegalStateException.class, () -> game.getBooleanConfiguration(GameConfiguration.SECRET_ROLES));
+        assertEquals("Missing configuration: general.secretRoles", e.getMessage());
+        e = assertThrows(IllegalStateException.class, () -> game.getDurationConfiguration("general", "notLoaded"));
+        assertEquals("Missing configuration: general.notLoaded", e.getMessage());
+    }
+
+    @Test
+    void findsKeysInternedAfterTheConfigurationsWereSet() {
+        var later = ConfigKey.of("gameConfigurationTest", "later");
+        assertNull(game.getConfiguration(later));
+
+        var configuration = configuration("later", ValueType.BOOLEAN, false);
+        game.setConfigurations(Map.of("gameConfigurationTest", List.of(configuration)));
+        assertSame(configuration, game.getConfiguration(later));
+        assertFalse(game.getBooleanConfiguration("gameConfigurationTest", "later"));
+        assertNull(game.getConfiguration(GameConfiguration.OVERKILL_RULE));
+    }
+
+    @Test
+    void keepsItsViewUntilItChanges() {
+        var view = game.getProperties();
+        assertSame(view, game.getProperties());
+        assertTrue(view.isSnapshot());
+        assertEquals("1.0", view.getProperty("version"));
+
+        game.setVersion("1.1");
+        var versioned = game.getProperties();
+        assertNotSame(view, versioned);
+        assertEquals("1.1", versioned.getProperty("version"));
+        assertEquals("1.0", view.getProperty("version"));
+
+        var configurations = Map.of("other", List.of(timer));
+        game.setConfigurations(configurations);
+        assertNotSame(versioned, game.getProperties());
+        assertSame(configurations, game.getProperties().getProperty("configurations"));
+    }
+
+    @Test
+    void configurationsKeepTheirViewUntilTheyChange() {
+        var view = timer.getProperties();
+        assertSame(view, timer.getProperties());
+        assertEquals("90s", view.getProperty("value"));
+
+        timer.setValue("2m");
+        var changed = timer.getProperties();
+        assertNotSame(view, changed);
+        assertEquals("2m", changed.getProperty("value"));
+        assertEquals(Duration.ofMinutes(2), timer.getDurationValue());
+
+        timer.setDisplayName("Timer");
+        assertNotSame(changed, timer.getProperties());
+        assertEquals("Timer", timer.getProperties().getProperty("displayName"));
+        assertEquals("90s", view.getProperty("value"));
+    }
+
+    private static Configuration configuration(String name, ValueType type, Object value) {
+        var configuration = new Configuration();
+        configuration.setConfigurationName(name);
+        configuration.setValueType(type);
+        configuration.setValue(value);
+        return configuration;
+    }
+}
@@ -0,0 +1,237 @@
+package mafia.engine.expression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import mafia.engine.config.loader.ConfigRepository;
+import mafia.engine.core.GameRules;
+import mafia.engine.core.GameSchema;
+import mafia.engine.expression.ExpressionEngine.Backend;
+import mafia.engine.expression.evaluator.Condition;
+import mafia.engine.expression.evaluator.EvaluationResult;
+import mafia.engine.player.Player;
+import mafia.engine.player.PlayerState;
+import mafia.engine.player.PlayerTable;
+import mafia.engine.property.Properties;
+import mafia.engine.role.Role;
+
+/**
+ * Evaluates the shipped rules and a set of edge cases with every backend and
+ * compares each result with the reference {@link ExpressionEngine#interpret}.
+ * Errors must match too, and the lenient form of an expression must be
+ * undefined exactly where the interpreter fails or yields no boolean. Rules
+ * over the game run with the players in a plain list and in a
+ * {@link PlayerTable}, whose columns answer the aggregates they can.
+ */
+class ExpressionBackendsTest {
+
+    private static final List<String> GAME_EXPRESSIONS = List.of(
+        "2 * 3 + 1 > 6",
+        "1 + 2 * 3 - 4 / 2 == 5",
+        "-nightCounter < 0",
+        "not not (nightCounter > 2)",
+        "nightCounter / 0",
+        "1 / 0 > 1",
+        "nightCounter is 3",
+        "nightCounter is in 3",
+        "nightCounter != 3",
+        "flag and nightCounter > 2",
+        "flag + 1",
+        "flag is in phrase",
+        "missing + 1",
+        "missing > 2 or ticks > 5",
+        "1 < 2 or missing",
+        "1 > 2 and missing",
+        "ticks + 1 == 8",
+        "ratio * 4 == 1",
+        "open and ticks > ratio",
+        "open + 1",
+        "ticks.size",
+        "game.players.size",
+        "size(game.players)",
+        "max(nightCounter, 7) - min(nightCounter, 7)",
+        "count(game.players, player.state is DEAD) >= 3",
+        "count(game.players, player.state is not ALIVE) == 0",
+        "count(game.players, player.state is ALIVE, 2)",
+        "count(game.players, player.state is ALIVE, nightCounter) > 1",
+        "count(game.players, player.state is in allowed)",
+        "count(game.players, player.name is in phrase)",
+        "count(game.players, player.role.roleName is in Killer, Psycho) > 0",
+        "count(game.players, player.score > 2) + count(game.players, player.state is ALIVE)",
+        "count(game.players, player.takendown or player.votedOut) < 3",
+        "count(filter(game.players, player.state is ALIVE), player.alignment is Good)",
+        "count(nightCounter, x) + count(nightCounter, y)",
+        "filter(game.players, player.alignment is Evil)",
+        "contains(game.players, player.role.roleName is Godfather)",
+        "all(game.players, player.state is ALIVE) or none(game.players, player.alignment is Evil)",
+        "exists(game.players, player.missing > 1) or count(game.players, player.state is ALIVE) > 1",
+        "any(game.players, player.killed)",
+        "sum(game.players, 1)"
+    );
+
+    // selections the columns of a player table answer, or decline for some rows
+    private static final List<String> TABLE_EXPRESSIONS = List.of(
+        "count(game.players, not (player.state is ALIVE))",
+        "count(game.players, player.state is DEAD or player.alignment is Neutral)",
+        "count(game.players, player.state is SAVED or not player.votedOut)",
+        "count(game.players, not player.votedOut or player.takendown)",
+        "count(game.players, player.killed and player.state is not SAVED)",
+        "count(game.players, player.alignment is Evil)",
+        "count(game.players, player.alignment is not Good and player.role.roleName is not Psycho)",
+        "filter(game.players, player.role.roleName is Vigilante or player.alignment is Neutral)",
+        "contains(game.players, player.alignment is Good and not (player.state is ALIVE))",
+        "all(game.players, player.state is ALIVE or player.state is not ALIVE)",
+        "none(game.players, player.takendown)",
+        "any(game.players, player.votedOut)",
+        "exists(game.players, player.role.roleName is Civilian)",
+        "count(game.players, player.state is KILLED, 1)",
+        "count(filter(game.players, player.state is not DEAD), not (player.alignment is Good)) > 1"
+    );
+
+    private static final List<String> PLAYER_EXPRESSIONS = List.of(
+        "player.state is not ALIVE",
+        "player.role.roleName is in (Killer, Doctor)",
+        "player.killed.alignment is Good",
+        "player.killer.size == 0",
+        "player.score * 2 > 3",
+        "player.soulmate.score > 0",
+        "player.name + 1",
+        "player.missing + 1",
+        "not player.votedOut"
+    );
+
+    private final List<Player> players = new ArrayList<>();
+    private final Properties game = new Properties("game");
+    // the same players, in a table
+    private final Properties table = new Properties("game");
+
+    ExpressionBackendsTest() {
+        var roles = List.of(
+            role("Killer", "Evil"),
+            role("Doctor", "Good"),
+            role("Psycho", "Neutral"),
+            role("Civilian", "Good"),
+            role("Detective", "Good"),
+            role("Godfather", "Evil")
+        );
+        var states = PlayerState.values();
+        for (int i = 0; i < 12; i++) {
+            var role = roles.get(i % roles.size());
+            var player = new Player().name("p" + i).role(role).alignment(role.getAlignment()).state(states[i * 7 % states.length]);
+            player.getProperties().addDouble("score", i * 0.5);
+            if (i % 3 != 0) {
+                player.getProperties().addProperty("allowed", i % 2 == 0 ? "ALIVE, KILLED" : "DEAD,SAVED");
+            }
+            players.add(player);
+        }
+        players.get(0).getProperties().addProperty("soulmate", players.get(1));
+        players.get(1).getProperties().addProperty("soulmate", players.get(0));
+        players.get(2).getProperties().addProperty("takendown", true);
+        players.get(3).getProperties().addProperty("killed", players.get(4));
+
+        var playerTable = new PlayerTable(players);
+        // written after the table mirrors them: a state, a flag that is not a boolean,
+        // a nested role name and a property shadowing an identifier of the rules
+        players.get(5).state(PlayerState.DEAD);
+        players.get(6).getProperties().addProperty("votedOut", "yes");
+        roles.get(3).setRoleName("Vigilante");
+        players.get(7).getProperties().addProperty("Evil", "Good");
+
+        for (var receiver : List.of(game, table)) {
+            receiver.addProperty("players", receiver == game ? players : playerTable)
+                .addProperty("nightCounter", 3)
+                .addProperty("flag", "true")
+                .addProperty("phrase", "p1, p3 ,p5")
+                .addLong("ticks", 7)
+                .addDouble("ratio", 0.25)
+                .addBoolean("open", true);
+        }
+    }
+
+    @TestFactory
+    Stream<DynamicTest> closuresMatchInterpreter() throws Exception {
+        return compare(Backend.CLOSURE);
+    }
+
+    @TestFactory
+    Stream<DynamicTest> bytecodeMatchesInterpreter() throws Exception {
+        return compare(Backend.BYTECODE);
+    }
+
+    private Stream<DynamicTest> compare(Backend backend) throws Exception {
+        var rules = ConfigRepository.yaml().load(Path.of("GameRules.yaml"), GameRules.class);
+        var byScope = GameSchema.rulesByScope(rules);
+
+        // loaded together like a game does, so repeated aggregates are shared
+        var engine = new ExpressionEngine(backend, new ExpressionCache(1024));
+        engine.loadExpressions(byScope, GameSchema.SCHEMA);
+
+        var tests = new ArrayList<DynamicTest>();
+        byScope.forEach((scope, scopeRules) -> {
+            for (var rule : scopeRules) {
+                tests.add(test(engine, rule, receivers(scope)));
+            }
+        });
+        for (var expression : GAME_EXPRESSIONS) {
+            tests.add(test(engine, expression, List.of(game, table)));
+        }
+        for (var expression : TABLE_EXPRESSIONS) {
+            tests.add(test(engine, expression, List.of(game, table)));
+        }
+        for (var expression : PLAYER_EXPRESSIONS) {
+            tests.add(test(engine, expression, receivers("player")));
+        }
+        return tests.stream();
+    }
+
+    private DynamicTest test(ExpressionEngine engine, String expression, List<Properties> receivers) {
+        return DynamicTest.dynamicTest(expression, () -> {
+            for (var receiver : receivers) {
+                var expected = outcome(() -> engine.interpret(expression, receiver));
+                assertEquals(expected, outcome(() -> engine.evalaute(expression, receiver)), "compiled on " + label(receiver));
+                assertEquals(expected, outcome(() -> engine.evaluateReactive(expression, receiver)), "reactive on " + label(receiver));
+                assertEquals(truth(expected), engine.test(expression, receiver).truth(), "lenient on " + label(receiver));
+            }
+        });
+    }
+
+    private String label(Properties receiver) {
+        return receiver == table ? "table" : receiver.propertyName();
+    }
+
+    private List<Properties> receivers(String scope) {
+        return scope.equals("player") ? players.stream().map(Player::getProperties).toList() : List.of(game, table);
+    }
+
+    // the result, or the type and message of the exception thrown instead
+    private static Object outcome(Supplier<?> evaluation) {
+        try {
+            return evaluation.get();
+        } catch (RuntimeException e) {
+            return Map.entry(e.getClass(), String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static Condition.Truth truth(Object outcome) {
+        return outcome instanceof EvaluationResult result
+            ? Condition.of(result).truth()
+            : Condition.Truth.UNDEFINED;
+    }
+
+    private static Role role(String name, String alignment) {
+        var role = new Role();
+        role.setRoleName(name);
+        role.setAlignment(alignment);
+        role.setAbilities(new ArrayList<>());
+        return role;
+    }
+}
@@ -0,0 +1,88 @@
+package mafia.engine.expression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.expression.ExpressionEngine.Backend;
+import mafia.engine.property.Properties;
+
+class ExpressionCacheTest {
+
+    @Test
+    void compilesEachExpressionOncePerBackend() {
+        var cache = new ExpressionCache(8);
+        var entry = cache.get("1 + 2 > 2", Backend.CLOSURE);
+
+        assertSame(entry, cache.get("1 + 2 > 2", Backend.CLOSURE));
+        assertNotSame(entry, cache.get("1 + 2 > 2", Backend.BYTECODE));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void concurrentLookupsGetTheSameEntry() throws Exception {
+        var cache = new ExpressionCache(64);
+        var tasks = new ArrayList<Callable<ExpressionCache.Entry>>();
+        for (int i = 0; i < 32; i++) {
+            tasks.add(() -> cache.get("count(game.players, player.score > 1) > 2", Backend.CLOSURE));
+        }
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var first = executor.submit(tasks.getFirst()).get();
+            for (var future : executor.invokeAll(tasks)) {
+                assertSame(first, future.get());
+            }
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void staysWithinItsSize() {
+        var cache = new ExpressionCache(4);
+        for (int i = 0; i < 20; i++) {
+            cache.get("nightCounter > " + i, Backend.CLOSURE);
+        }
+        assertTrue(cache.size() <= 4, "size " + cache.size());
+    }
+
+    @Test
+    void keepsExpressionsInUseOverOnesThatAreNot() {
+        var cache = new ExpressionCache(4);
+        var used = cache.get("nightCounter > 0", Backend.CLOSURE);
+        for (int i = 1; i < 20; i++) {
+            assertSame(used, cache.get("nightCounter > 0", Backend.CLOSURE));
+            cache.get("nightCounter > " + i, Backend.CLOSURE);
+        }
+        assertSame(used, cache.get("nightCounter > 0", Backend.CLOSURE));
+    }
+
+    @Test
+    void evictedExpressionsStillEvaluate() {
+        var cache = new ExpressionCache(1);
+        var properties = new Properties("game").addLong("nightCounter", 3);
+        var entry = cache.get("nightCounter * 2", Backend.CLOSURE);
+        cache.get("nightCounter * 3", Backend.CLOSURE);
+
+        assertEquals(1, cache.size());
+        assertEquals(6.0f, entry.compiled().evaluate(properties).result());
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        var cache = new ExpressionCache(8);
+        var first = assertThrows(RuntimeException.class, () -> cache.get("1 +", Backend.CLOSURE));
+        var second = assertThrows(RuntimeException.class, () -> cache.get("1 +", Backend.CLOSURE));
+
+        assertNotSame(first, second);
+        assertEquals(first.getMessage(), second.getMessage());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,128 @@
+package mafia.engine.expression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.expression.ExpressionEngine.Backend;
+import mafia.engine.expression.checker.Schema;
+import mafia.engine.expression.evaluator.Condition;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyHolder;
+
+class ExpressionEngineTest {
+
+    private final ExpressionEngine engine = new ExpressionEngine(Backend.CLOSURE, new ExpressionCache(64));
+    private final List<PropertyHolder> holders = new ArrayList<>();
+
+    ExpressionEngineTest() {
+        for (int i = 0; i < 6; i++) {
+            var properties = new Properties("player").addLong("score", i);
+            if (i != 4) {
+                properties.addProperty("name", "p" + i);
+            }
+            holders.add(() -> properties);
+        }
+    }
+
+    @Test
+    void evaluateAllSetsTheHoldersTheConditionIsTrueFor() {
+        assertEquals(bits(3, 4, 5), engine.evaluateAll("player.score > 2", holders));
+        assertEquals(bits(), engine.evaluateAll("player.score > 9", holders));
+    }
+
+    @Test
+    void evaluateAllLeavesUndefinedConditionsUnset() {
+        assertEquals(bits(0, 1, 2, 3, 5), engine.evaluateAll("player.name is not p9", holders));
+        assertEquals(bits(), engine.evaluateAll("player.score >", holders));
+    }
+
+    @Test
+    void firstMatchIsTheFirstTrueExpressionPerHolder() {
+        var matches = engine.firstMatch(List.of("player.score > 3", "player.score is 1", "player.score > 0"), holders);
+        assertEquals(List.of(-1, 1, 2, 2, 0, 0), boxed(matches));
+    }
+
+    @Test
+    void firstMatchAgreesWithEvaluateAll() {
+        var expressions = List.of("player.name is p2", "player.missing > 1", "player.score < 2");
+        var matches = engine.firstMatch(expressions, holders);
+        for (int h = 0; h < holders.size(); h++) {
+            int first = -1;
+            for (int i = 0; i < expressions.size() && first < 0; i++) {
+                if (engine.evaluateAll(expressions.get(i), holders).get(h)) {
+                    first = i;
+                }
+            }
+            assertEquals(first, matches[h], "holder " + h);
+        }
+    }
+
+    @Test
+    void invalidExpressionsThrowANewExceptionForEachStrictCaller() {
+        var properties = holders.getFirst().getProperties();
+        var cause = assertThrows(RuntimeException.class, () -> engine.interpret("player.score >", properties));
+        assertEquals(Condition.Truth.UNDEFINED, engine.test("player.score >", properties).truth());
+
+        var first = assertThrows(RuntimeException.class, () -> engine.evalaute("player.score >", properties));
+        var second = assertThrows(RuntimeException.class, () -> engine.evalaute("player.score >", properties));
+        assertNotSame(first, second);
+        assertEquals(cause.getClass(), first.getClass());
+        assertEquals(cause.getMessage(), first.getMessage());
+        assertEquals(first.getMessage(), second.getMessage());
+    }
+
+    @Test
+    void reactiveFailuresAreCopiedForEachCaller() {
+        var properties = holders.getFirst().getProperties();
+        var first = assertThrows(RuntimeException.class, () -> engine.evaluateReactive("player.score / 0 > 1", properties));
+        var second = assertThrows(RuntimeException.class, () -> engine.evaluateReactive("player.score / 0 > 1", properties));
+
+        assertNotSame(first, second);
+        assertEquals(first.getClass(), second.getClass());
+        assertEquals(first.getMessage(), second.getMessage());
+    }
+
+    @Test
+    void sharedCallsOnlyDependOnWhatTheyRead() {
+        var shared = "count(game.players, player.score > 1)";
+        var first = shared + " + count(game.players, player.bonus > 0)";
+        var second = shared + " + size(filter(game.players, player.score > 3))";
+        var game = new Properties("game").addProperty("players", holders);
+
+        for (var backend : Backend.values()) {
+            var engine = new ExpressionEngine(backend, new ExpressionCache(64));
+            engine.loadExpressions(Map.of("game", List.of(first, second)), new Schema());
+            engine.evalaute(second, game);
+            var computed = engine.memoStatistics().misses();
+
+            // only the first expression reads it, so the shared count stays valid
+            holders.getFirst().getProperties().addLong("bonus", 1);
+            assertEquals(engine.interpret(second, game), engine.evalaute(second, game), backend.name());
+            assertEquals(computed, engine.memoStatistics().misses(), backend.name());
+        }
+    }
+
+    private static BitSet bits(int... indices) {
+        var bits = new BitSet();
+        for (var i : indices) {
+            bits.set(i);
+        }
+        return bits;
+    }
+
+    private static List<Integer> boxed(int[] values) {
+        var list = new ArrayList<Integer>();
+        for (var v : values) {
+            list.add(v);
+        }
+        return list;
+    }
+}
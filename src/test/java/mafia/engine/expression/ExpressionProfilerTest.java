@@ -0,0 +1,73 @@
+package mafia.engine.expression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.expression.ExpressionEngine.Backend;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyHolder;
+
+class ExpressionProfilerTest {
+
+    // the items each list function visits, stopping early where it can
+    private static final Map<String, Long> SCANNED = Map.of(
+        "count(game.players, player.score > 1)", 5L,
+        "count(game.players, player.score > 0, 2)", 3L,
+        "exists(game.players, player.score is 1)", 2L,
+        "all(game.players, player.score < 9)", 5L,
+        "size(filter(game.players, player.score > 2))", 5L,
+        "sum(game.players, player.score)", 5L
+    );
+
+    private final Properties game = new Properties("game");
+
+    ExpressionProfilerTest() {
+        var players = new ArrayList<PropertyHolder>();
+        for (int i = 0; i < 5; i++) {
+            var properties = new Properties("player").addLong("score", i);
+            players.add(() -> properties);
+        }
+        game.addProperty("players", players);
+    }
+
+    @Test
+    void countsTheItemsVisitedOnEveryBackend() {
+        for (var backend : Backend.values()) {
+            var engine = new ExpressionEngine(backend, new ExpressionCache(16));
+            var profiler = engine.enableProfiling();
+            SCANNED.keySet().forEach(expression -> engine.evalaute(expression, game));
+
+            for (var statistics : profiler.snapshot()) {
+                assertEquals((long) SCANNED.get(statistics.rule()), statistics.itemsScanned(), backend + " " + statistics.rule());
+            }
+            assertEquals(SCANNED.size(), profiler.snapshot().size());
+        }
+    }
+
+    @Test
+    void countsTheItemsVisitedByLenientEvaluations() {
+        var engine = new ExpressionEngine(Backend.CLOSURE, new ExpressionCache(16));
+        var profiler = engine.enableProfiling();
+        engine.test("exists(game.players, player.score is 1)", game);
+        engine.test("all(game.players, player.missing < 9)", game);
+
+        for (var statistics : profiler.snapshot()) {
+            var expected = statistics.rule().startsWith("exists") ? 2L : 1L;
+            assertEquals(expected, statistics.itemsScanned(), statistics.rule());
+        }
+    }
+
+    @Test
+    void countsNothingWhileProfilingIsDisabled() {
+        var engine = new ExpressionEngine(Backend.BYTECODE, new ExpressionCache(16));
+        engine.evalaute("count(game.players, player.score > 1)", game);
+
+        var profiler = engine.enableProfiling();
+        engine.evalaute("count(game.players, player.score > 1)", game);
+        assertEquals(5L, profiler.snapshot().getFirst().itemsScanned());
+    }
+}
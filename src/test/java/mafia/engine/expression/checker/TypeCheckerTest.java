@@ -0,0 +1,92 @@
+package mafia.engine.expression.checker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.expression.lexer.Lexer;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.expression.parser.Parser;
+
+class TypeCheckerTest {
+
+    private enum State { ALIVE, DEAD }
+
+    private static final Schema SCHEMA = new Schema()
+        .declare("game", "players", PropertyType.list("player"))
+        .declare("game", "nightCounter", PropertyType.NUMBER)
+        .declare("player", "score", PropertyType.NUMBER)
+        .declare("player", "name", PropertyType.STRING)
+        .declare("player", "alive", PropertyType.BOOLEAN)
+        .declare("player", "state", PropertyType.enumOf(State.class))
+        .declare("player", "role", PropertyType.holder("role"))
+        .declare("role", "roleName", PropertyType.STRING);
+
+    private final Lexer lexer = new Lexer();
+    private final Parser parser = new Parser();
+    private final TypeChecker checker = new TypeChecker(SCHEMA);
+
+    @Test
+    void acceptsRulesThatFitTheSchema() {
+        check("count(game.players, player.alive and player.score > 1) + nightCounter > 2", "game");
+        check("sum(game.players, player.score) / game.players.size >= 1", "game");
+        check("player.role.roleName is Doctor or not player.alive", "player");
+        check("player.name == 3", "player");
+    }
+
+    @Test
+    void rejectsOperandsOfTheWrongType() {
+        assertRejected("Arithmetic operator '+' requires numeric operands, got string", "player.name + 1", "player");
+        assertRejected("Unary '-' requires a number, got boolean", "-player.alive", "player");
+        assertRejected("Expected boolean, got number", "player.score and player.alive", "player");
+        assertRejected("Numeric comparison required, got string", "player.role.roleName > 1", "player");
+    }
+
+    @Test
+    void rejectsPropertiesThatAreNotDeclared() {
+        assertRejected("Property 'missing' is not declared for player", "player.missing > 1", "player");
+        assertRejected("Property 'missing' is not declared for role", "player.role.missing", "player");
+        assertRejected("Only 'size' property is supported for lists", "game.players.count > 1", "game");
+        assertRejected("Left side of '.' must be an identifier, got number", "player.score.value", "player");
+    }
+
+    @Test
+    void checksArgumentsAgainstTheFunction() {
+        assertRejected("First argument of count() must be a list, got number", "count(nightCounter, player.alive)", "game");
+        assertRejected("Third argument of count() must be a number, got list of player",
+            "count(game.players, player.alive, game.players) > 1", "game");
+        assertRejected("Values of sum() must be numbers, got string", "sum(game.players, player.name)", "game");
+        // conditions are checked against the items of the list
+        assertRejected("Property 'missing' is not declared for player", "exists(game.players, player.missing)", "game");
+    }
+
+    @Test
+    void checksEnumConstants() {
+        assertRejected("'ALIV' is not a State", "player.state is ALIV", "player");
+        assertTrue(check("player.state is not DEAD", "player") instanceof EnumComparison);
+        assertSame(State.ALIVE, ((EnumComparison) check("player.state is ALIVE", "player")).constant());
+    }
+
+    @Test
+    void leavesScopesWithoutDeclarationsToTheRuntime() {
+        var node = parse("ability.target.name + 1");
+        assertSame(node, checker.check("ability.target.name + 1", node, "ability"));
+        assertSame(node, checker.check("ability.target.name + 1", node, null));
+    }
+
+    private Node check(String expression, String scope) {
+        return checker.check(expression, parse(expression), scope);
+    }
+
+    private void assertRejected(String message, String expression, String scope) {
+        var e = assertThrows(TypeMismatchException.class, () -> check(expression, scope));
+        assertEquals("Rule '" + expression + "': " + message, e.getMessage());
+    }
+
+    private Node parse(String expression) {
+        return parser.parse(lexer.tokenize(expression));
+    }
+}
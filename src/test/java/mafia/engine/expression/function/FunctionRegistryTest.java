@@ -0,0 +1,97 @@
+package mafia.engine.expression.function;
+
+import static mafia.engine.expression.function.Function.Parameter.CONDITION;
+import static mafia.engine.expression.function.Function.Parameter.LIST;
+import static mafia.engine.expression.function.Function.Parameter.NUMBER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.expression.ExpressionCache;
+import mafia.engine.expression.ExpressionEngine;
+import mafia.engine.expression.ExpressionEngine.Backend;
+import mafia.engine.expression.checker.PropertyType.Kind;
+import mafia.engine.expression.evaluator.ArgumentMismatchException;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyHolder;
+
+class FunctionRegistryTest {
+
+    // overloads of built-in list functions, which the compilers must not take for the built-ins
+    private static final Function ALL_OF_FIRST = new Function("all", List.of(LIST, CONDITION, NUMBER), Kind.BOOLEAN,
+        (a, p) -> first(a, p).stream().allMatch(item -> test(a, item)));
+    private static final Function FILTER_FIRST = new Function("filter", List.of(LIST, CONDITION, NUMBER), Kind.LIST,
+        (a, p) -> new ArrayList<>(first(a, p).stream().filter(item -> test(a, item)).toList()));
+
+    static {
+        FunctionRegistry.standard().register(ALL_OF_FIRST).register(FILTER_FIRST);
+    }
+
+    @Test
+    void resolvesByNameAndArity() {
+        var registry = FunctionRegistry.standard();
+        assertSame(Builtins.COUNT, registry.resolve("count", 2));
+        assertSame(Builtins.COUNT_LIMIT, registry.resolve("COUNT", 3));
+        assertSame(ALL_OF_FIRST, registry.resolve("all", 3));
+        assertThrows(IllegalStateException.class, () -> registry.resolve("average", 2));
+        assertThrows(ArgumentMismatchException.class, () -> registry.resolve("size", 2));
+    }
+
+    @Test
+    void rejectsDuplicatesAndInvalidNames() {
+        var registry = Builtins.register(new FunctionRegistry());
+        var size = new Function("size", List.of(LIST), Kind.NUMBER, (_, _) -> 0f);
+        assertThrows(IllegalArgumentException.class, () -> registry.register(size));
+        assertThrows(IllegalArgumentException.class,
+            () -> registry.register(new Function("Size", List.of(LIST, NUMBER), Kind.NUMBER, (_, _) -> 0f)));
+    }
+
+    @Test
+    void onlyTheBuiltInsAreListFunctions() {
+        assertTrue(Builtins.isListFunction(Builtins.COUNT));
+        assertTrue(Builtins.isListFunction(Builtins.NONE));
+        assertFalse(Builtins.isListFunction(Builtins.SUM));
+        assertFalse(Builtins.isListFunction(ALL_OF_FIRST));
+        assertFalse(Builtins.isListFunction(FILTER_FIRST));
+    }
+
+    @Test
+    void overloadsOfListFunctionsRunTheirOwnImplementation() {
+        var game = new Properties("game");
+        var players = new ArrayList<PropertyHolder>();
+        for (int i = 0; i < 5; i++) {
+            var properties = new Properties("player").addLong("score", i == 1 ? 0 : i);
+            players.add(() -> properties);
+        }
+        game.addProperty("players", players);
+
+        for (var backend : Backend.values()) {
+            var engine = new ExpressionEngine(backend, new ExpressionCache(16));
+            assertEquals(false, engine.evalaute("all(game.players, player.score > 0, 2)", game).result(), backend.name());
+            assertEquals(true, engine.evalaute("all(game.players, player.score < 2, 2)", game).result(), backend.name());
+            assertEquals(players.subList(0, 2), engine.evalaute("filter(game.players, player.score < 3, 2)", game).result(), backend.name());
+            for (var expression : List.of("all(game.players, player.score < 2, 2)", "size(filter(game.players, player.score < 3, 2)) == 2")) {
+                assertEquals(engine.interpret(expression, game), engine.evalaute(expression, game), backend + " " + expression);
+            }
+        }
+    }
+
+    // the first items of the list, as many as the third argument
+    private static List<Object> first(Function.Arguments arguments, Properties properties) {
+        var items = (Collection<?>) arguments.evaluate(0, properties).result();
+        var n = ((Number) arguments.evaluate(2, properties).result()).intValue();
+        return items.stream().limit(n).map(Object.class::cast).toList();
+    }
+
+    private static boolean test(Function.Arguments arguments, Object item) {
+        return Boolean.TRUE.equals(arguments.evaluate(1, ((PropertyHolder) item).getProperties()).result());
+    }
+}
@@ -0,0 +1,126 @@
+package mafia.engine.expression.lexer;
+
+import static mafia.engine.expression.lexer.Token.Type.ARITHMETIC_OPERATOR;
+import static mafia.engine.expression.lexer.Token.Type.CLOSE_PARENTHESIS;
+import static mafia.engine.expression.lexer.Token.Type.DOT;
+import static mafia.engine.expression.lexer.Token.Type.IDENTIFIER;
+import static mafia.engine.expression.lexer.Token.Type.KEYWORD;
+import static mafia.engine.expression.lexer.Token.Type.LOGICAL_OPERATOR;
+import static mafia.engine.expression.lexer.Token.Type.NUMBER;
+import static mafia.engine.expression.lexer.Token.Type.OPEN_PARENTHESIS;
+import static mafia.engine.expression.lexer.Token.Type.RELATIONAL_OPERATOR;
+import static mafia.engine.expression.lexer.Token.Type.SEPARATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.expression.lexer.Token.Type;
+
+class LexerTest {
+
+    private final Lexer lexer = new Lexer();
+
+    @Test
+    void readsKeywordsInAnyCaseAsLowerCase() {
+        assertTokens("player.state IS NOT Dead AND not x Or y",
+            token(IDENTIFIER, "player"), token(DOT, "."), token(IDENTIFIER, "state"), token(KEYWORD, "is not"),
+            token(IDENTIFIER, "Dead"), token(LOGICAL_OPERATOR, "and"), token(LOGICAL_OPERATOR, "not"),
+            token(IDENTIFIER, "x"), token(LOGICAL_OPERATOR, "or"), token(IDENTIFIER, "y"));
+        assertTokens("role Is\n\tIn roles", token(IDENTIFIER, "role"), token(KEYWORD, "is in"), token(IDENTIFIER, "roles"));
+        assertTokens("state is", token(IDENTIFIER, "state"), token(KEYWORD, "is"));
+    }
+
+    @Test
+    void readsKeywordsOnlyAsWholeWords() {
+        assertTokens("island order notice android isin",
+            token(IDENTIFIER, "island"), token(IDENTIFIER, "order"), token(IDENTIFIER, "notice"),
+            token(IDENTIFIER, "android"), token(IDENTIFIER, "isin"));
+        assertTokens("is inside", token(KEYWORD, "is"), token(IDENTIFIER, "inside"));
+        assertTokens("is nothing", token(KEYWORD, "is"), token(IDENTIFIER, "nothing"));
+        assertTokens("is(in)", token(KEYWORD, "is"), token(OPEN_PARENTHESIS, "("), token(IDENTIFIER, "in"), token(CLOSE_PARENTHESIS, ")"));
+        assertTokens("_count1 Count", token(IDENTIFIER, "_count1"), token(IDENTIFIER, "Count"));
+    }
+
+    @Test
+    void readsFractionsOnlyWithDigitsAfterTheDot() {
+        assertTokens("1.5 12", token(NUMBER, "1.5"), token(NUMBER, "12"));
+        assertTokens("3.size", token(NUMBER, "3"), token(DOT, "."), token(IDENTIFIER, "size"));
+        assertTokens("1.2.3", token(NUMBER, "1.2"), token(DOT, "."), token(NUMBER, "3"));
+        assertTokens("4.", token(NUMBER, "4"), token(DOT, "."));
+        assertTokens("2x", token(NUMBER, "2"), token(IDENTIFIER, "x"));
+    }
+
+    @Test
+    void readsTheLongestOperator() {
+        assertTokens("a<=b>=c==d!=e<f>g",
+            token(IDENTIFIER, "a"), token(RELATIONAL_OPERATOR, "<="), token(IDENTIFIER, "b"), token(RELATIONAL_OPERATOR, ">="),
+            token(IDENTIFIER, "c"), token(RELATIONAL_OPERATOR, "=="), token(IDENTIFIER, "d"), token(RELATIONAL_OPERATOR, "!="),
+            token(IDENTIFIER, "e"), token(RELATIONAL_OPERATOR, "<"), token(IDENTIFIER, "f"), token(RELATIONAL_OPERATOR, ">"),
+            token(IDENTIFIER, "g"));
+        assertTokens("!a&&b||-c",
+            token(LOGICAL_OPERATOR, "!"), token(IDENTIFIER, "a"), token(LOGICAL_OPERATOR, "&&"), token(IDENTIFIER, "b"),
+            token(LOGICAL_OPERATOR, "||"), token(ARITHMETIC_OPERATOR, "-"), token(IDENTIFIER, "c"));
+        assertTokens("f(a, b)",
+            token(IDENTIFIER, "f"), token(OPEN_PARENTHESIS, "("), token(IDENTIFIER, "a"), token(SEPARATOR, ","),
+            token(IDENTIFIER, "b"), token(CLOSE_PARENTHESIS, ")"));
+    }
+
+    @Test
+    void rejectsCharactersThatStartNoToken() {
+        assertRejected("Unexpected character at position 2: '='", "a = b");
+        assertRejected("Unexpected character at position 1: '&'", "a&b");
+        assertRejected("Unexpected character at position 5: '|'", "a || | b");
+        assertRejected("Unexpected character at position 0: '#'", "#");
+        // identifiers are ASCII only
+        assertRejected("Unexpected character at position 5: '\u00e9'", "name \u00e9");
+    }
+
+    @Test
+    void endsEveryExpressionWithTheEndToken() {
+        assertEquals(List.of(Token.END), all(lexer.tokenize("")));
+        assertEquals(List.of(Token.END), all(lexer.tokenize(" \n\t ")));
+        assertSame(Token.END, lexer.tokenize("a + 1").get(3));
+    }
+
+    @Test
+    void refillsABufferItIsGiven() {
+        var buffer = new TokenBuffer(1);
+        lexer.tokenize("count(game.players, player.alive) > 1", buffer);
+        assertEquals(13, buffer.size());
+        buffer.poll();
+        buffer.poll();
+
+        lexer.tokenize("x or y", buffer);
+        assertEquals(0, buffer.position());
+        assertEquals(List.of(token(IDENTIFIER, "x"), token(LOGICAL_OPERATOR, "or"), token(IDENTIFIER, "y"), Token.END), all(buffer));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.get(4));
+    }
+
+    private void assertTokens(String expression, Token... expected) {
+        var tokens = new ArrayList<>(List.of(expected));
+        tokens.add(Token.END);
+        assertEquals(tokens, all(lexer.tokenize(expression)), expression);
+    }
+
+    private void assertRejected(String message, String expression) {
+        var e = assertThrows(IllegalArgumentException.class, () -> lexer.tokenize(expression));
+        assertEquals(message, e.getMessage());
+    }
+
+    private static Token token(Type type, String value) {
+        return new Token(type, value);
+    }
+
+    private static List<Token> all(TokenBuffer buffer) {
+        var tokens = new ArrayList<Token>();
+        for (int i = 0; i < buffer.size(); i++) {
+            tokens.add(buffer.get(i));
+        }
+        return tokens;
+    }
+}
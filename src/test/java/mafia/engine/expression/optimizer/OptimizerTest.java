@@ -0,0 +1,167 @@
+package mafia.engine.expression.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.expression.evaluator.Evaluator;
+import mafia.engine.expression.function.Builtins;
+import mafia.engine.expression.lexer.Lexer;
+import mafia.engine.expression.optimizer.Optimizer.Optimization;
+import mafia.engine.expression.parser.Call;
+import mafia.engine.expression.parser.Node;
+import mafia.engine.expression.parser.Parser;
+import mafia.engine.property.Properties;
+import mafia.engine.property.PropertyHolder;
+
+class OptimizerTest {
+
+    private final Lexer lexer = new Lexer();
+    private final Parser parser = new Parser();
+    private final Optimizer optimizer = new Optimizer();
+
+    @Test
+    void foldsNumbers() {
+        assertFolded("7.0", "1 + 2 * 3");
+        assertFolded("-1.0", "-2 + 1");
+        assertRewritten("nightCounter > 2.5", "nightCounter > 5 / 2");
+        assertFolded("true", "1 < 2");
+        assertFolded("false", "2 <= 1");
+    }
+
+    @Test
+    void leavesWhatCanFailAtRuntime() {
+        assertUnchanged("1 / 0");
+        assertUnchanged("1 / 0 > 2");
+        assertUnchanged("not not nightCounter");
+        // true and false are identifiers until a comparison folds into one
+        assertUnchanged("nightCounter > 1 and true");
+    }
+
+    @Test
+    void simplifiesLogicalOperators() {
+        assertRewritten("nightCounter > 1", "not not nightCounter > 1");
+        assertFolded("false", "not (1 < 2)");
+        assertRewritten("nightCounter > 1", "1 < 2 and nightCounter > 1");
+        assertRewritten("nightCounter > 1", "nightCounter > 1 and 1 < 2");
+        assertRewritten("nightCounter > 1", "2 < 1 or nightCounter > 1");
+        assertRewritten("nightCounter > 1", "nightCounter > 1 or 2 < 1");
+        assertFolded("false", "2 < 1 and nightCounter");
+        assertFolded("true", "1 < 2 or nightCounter");
+    }
+
+    @Test
+    void keepsLiteralsOnTheRightOfComparisons() {
+        assertRewritten("nightCounter > 2", "2 < nightCounter");
+        assertRewritten("nightCounter <= 2", "2 >= nightCounter");
+        assertUnchanged("2 == nightCounter");
+        assertUnchanged("nightCounter < 2");
+    }
+
+    @Test
+    void listsTheRewritesApplied() {
+        var optimization = optimize("1 + 2 > nightCounter and 1 < 2");
+        assertEquals(List.of("fold 1 + 2", "canonicalize 3.0 > x", "fold 1 < 2", "drop and true"), optimization.rewrites());
+        assertTrue(optimization.changed());
+    }
+
+    @Test
+    void leavesTheTreeItWasGiven() {
+        var node = parse("1 + 2 > nightCounter");
+        var before = node.detailedString();
+        optimizer.optimize(node);
+        assertEquals(before, node.detailedString());
+    }
+
+    @Test
+    void turnsCountsComparedWithZeroOrOneIntoExistence() {
+        assertRewritten("exists(game.players, player.score > 1)", "count(game.players, player.score > 1) > 0");
+        assertRewritten("exists(game.players, player.score > 1)", "count(game.players, player.score > 1) >= 1");
+        assertRewritten("exists(game.players, player.score > 1)", "0 < count(game.players, player.score > 1)");
+        assertRewritten("none(game.players, player.score > 1)", "count(game.players, player.score > 1) < 1");
+        assertRewritten("none(game.players, player.score > 1)", "count(game.players, player.score > 1) <= 0");
+
+        var call = (Call) optimize("count(game.players, player.score > 1) > 0").node();
+        assertSame(Builtins.EXISTS, call.function());
+    }
+
+    @Test
+    void boundsCountsComparedWithLargerNumbers() {
+        assertRewritten("count(game.players, player.score > 1, 3.0) < 2", "count(game.players, player.score > 1) < 2");
+        assertRewritten("count(game.players, player.score > 1, 4.0) >= 3.5", "count(game.players, player.score > 1) >= 3.5");
+        assertRewritten(
+            "count(game.players, player.score > 1, 2.0) + count(game.players, player.score < 3, 2.0) > 1",
+            "count(game.players, player.score > 1) + count(game.players, player.score < 3) > 1"
+        );
+
+        var bounded = optimize("count(game.players, player.score > 1) < 2").node();
+        assertSame(Builtins.COUNT_LIMIT, ((Call) bounded.left()).function());
+        assertEquals(List.of("bound count < 2"), optimize("count(game.players, player.score > 1) < 2").rewrites());
+    }
+
+    @Test
+    void leavesCountsThatCannotStopEarly() {
+        assertUnchanged("count(game.players, player.score > 1) == 0");
+        assertUnchanged("count(game.players, player.score > 1) * 2 < 3");
+        assertUnchanged("count(game.players, player.score > 1) + nightCounter < 3");
+        assertUnchanged("count(game.players, player.score > 1) - count(game.players, player.score < 1) < 3");
+        assertUnchanged("count(game.players, player.score > 1, 2) < 5");
+    }
+
+    @Test
+    void boundedCountsKeepTheirResults() {
+        var game = new Properties("game");
+        var players = new ArrayList<PropertyHolder>();
+        for (int i = 0; i < 5; i++) {
+            var properties = new Properties("player").addLong("score", i);
+            players.add(() -> properties);
+        }
+        game.addProperty("players", players);
+
+        var evaluator = new Evaluator();
+        for (var k : List.of("0", "1", "2", "2.5", "3", "5", "9")) {
+            for (var op : List.of("<", "<=", ">", ">=")) {
+                for (var count : List.of("count(game.players, player.score > 1)", "count(game.players, player.score > 1) + count(game.players, player.score < 2)")) {
+                    var expression = count + " " + op + " " + k;
+                    var optimized = optimize(expression).node();
+                    assertEquals(evaluator.evaluate(parse(expression), game, "game"), evaluator.evaluate(optimized, game, "game"), expression);
+                }
+            }
+        }
+    }
+
+    private void assertRewritten(String expected, String expression) {
+        var optimization = optimize(expression);
+        assertEquals(parse(expected).detailedString(), optimization.node().detailedString(), expression);
+        assertTrue(optimization.changed(), expression);
+    }
+
+    // a literal, which may be negative or a boolean, which the parser reads as something else
+    private void assertFolded(String literal, String expression) {
+        var optimization = optimize(expression);
+        assertTrue(optimization.node().isLeaf(), expression);
+        assertEquals(literal, optimization.node().value(), expression);
+        assertTrue(optimization.changed(), expression);
+    }
+
+    private void assertUnchanged(String expression) {
+        var node = parse(expression);
+        var optimization = optimizer.optimize(node);
+        assertSame(node, optimization.node(), expression);
+        assertFalse(optimization.changed(), expression);
+    }
+
+    private Optimization optimize(String expression) {
+        return optimizer.optimize(parse(expression));
+    }
+
+    private Node parse(String expression) {
+        return parser.parse(lexer.tokenize(expression));
+    }
+}
@@ -0,0 +1,220 @@
+package mafia.engine.property;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PropertiesTest {
+
+    @Test
+    void sharesTheShapeOfTheSameKeysInTheSameOrder() {
+        var first = new Properties("player").addProperty("name", "Ann").addProperty("score", 1);
+        var second = new Properties("player").addProperty("name", "Bob").addProperty("score", 2);
+        var reversed = new Properties("player").addProperty("score", 3).addProperty("name", "Cid");
+
+        assertSame(first.shape(), second.shape());
+        assertNotSame(first.shape(), reversed.shape());
+        assertEquals(1, first.shape().slot("score"));
+        assertEquals(0, reversed.shape().slot("score"));
+        assertEquals(-1, first.shape().slot("missing"));
+    }
+
+    @Test
+    void keepsTheShapeWhenAPropertyIsReplaced() {
+        var properties = new Properties("player").addProperty("name", "Ann").addProperty("score", 1);
+        var shape = properties.shape();
+
+        properties.addProperty("score", 5);
+        assertSame(shape, properties.shape());
+        assertEquals(5, properties.getProperty("score"));
+    }
+
+    @Test
+    void removingAPropertyLeadsToTheSharedShape() {
+        var properties = new Properties("player").addProperty("name", "Ann").addProperty("role", "Doctor").addProperty("score", 1);
+        var without = new Properties("player").addProperty("name", "Bob").addProperty("score", 2);
+
+        assertEquals("Doctor", properties.removeProperty("role"));
+        assertSame(without.shape(), properties.shape());
+        assertEquals(1, properties.getProperty("score"));
+        assertFalse(properties.containsProperty("role"));
+        assertNull(properties.removeProperty("role"));
+    }
+
+    @Test
+    void sitesReadTheSlotOfEachShape() {
+        var site = new PropertySite("score");
+        var first = new Properties("player").addProperty("name", "Ann").addProperty("score", 1);
+        var second = new Properties("player").addProperty("score", 2).addProperty("name", "Bob");
+        var without = new Properties("player").addProperty("name", "Cid");
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(1, first.getProperty(site));
+            assertEquals(2, second.getProperty(site));
+            assertNull(without.getProperty(site));
+            assertFalse(without.containsProperty(site));
+        }
+
+        second.removeProperty("name");
+        second.addProperty("role", "Doctor");
+        assertEquals(2, second.getProperty(site));
+        assertTrue(second.containsProperty(site));
+    }
+
+    @Test
+    void listsThePropertiesInTheOrderTheyWereAdded() {
+        var properties = new Properties("game").addProperty("phase", "Night").addProperty("players", List.of());
+        properties.addProperty("phase", "Day");
+
+        assertEquals(List.of("phase", "players"), List.copyOf(properties.properties().keySet()));
+        assertEquals("Day", properties.properties().get("phase"));
+    }
+
+    @Test
+    void readsPrimitivesWithoutBoxingAndBoxesThemOnRequest() {
+        var game = new Properties("game").addLong("timer", 30).addDouble("ratio", 0.5).addBoolean("night", true);
+
+        assertEquals(30L, game.getLong("timer"));
+        assertEquals(30.0, game.getDouble("timer"));
+        assertEquals(0L, game.getLong("ratio"));
+        assertEquals(0.5, game.getDouble("ratio"));
+        assertTrue(game.getBoolean("night"));
+
+        assertEquals(30L, game.getProperty("timer"));
+        assertEquals(0.5, game.getProperty("ratio"));
+        assertEquals(true, game.getProperty("night"));
+        assertEquals(30L, game.properties().get("timer"));
+    }
+
+    @Test
+    void readsBoxedValuesThroughTheTypedAccessors() {
+        var game = new Properties("game").addProperty("nightCounter", 2).addProperty("ratio", 1.5f).addProperty("night", false);
+
+        assertEquals(2L, game.getLong("nightCounter"));
+        assertEquals(1.5, game.getDouble("ratio"));
+        assertFalse(game.getBoolean("night"));
+    }
+
+    @Test
+    void changesBetweenPrimitiveAndBoxedValues() {
+        var game = new Properties("game").addProperty("phase", "Night").addLong("timer", 30);
+        var shape = game.shape();
+
+        game.addProperty("timer", "stopped");
+        assertEquals("stopped", game.getProperty("timer"));
+        game.addDouble("timer", 2.5);
+        assertEquals(2.5, game.getProperty("timer"));
+        game.addLong("phase", 4);
+        assertEquals(4L, game.getLong("phase"));
+        assertSame(shape, game.shape());
+
+        game.removeProperty("phase");
+        assertEquals(2.5, game.getDouble("timer"));
+    }
+
+    @Test
+    void rejectsTypedReadsOfOtherValues() {
+        var player = new Properties("player").addProperty("name", "Ann").addBoolean("alive", true).addLong("score", 1);
+
+        var e = assertThrows(IllegalStateException.class, () -> player.getLong("name"));
+        assertEquals("Property 'name' of player is not a number", e.getMessage());
+        assertThrows(IllegalStateException.class, () -> player.getDouble("alive"));
+        assertThrows(IllegalStateException.class, () -> player.getBoolean("score"));
+        assertThrows(IllegalStateException.class, () -> player.getLong("missing"));
+    }
+
+    @Test
+    void sitesReadNumbersAsFloats() {
+        var score = new PropertySite("score");
+        var alive = new PropertySite("alive");
+        var name = new PropertySite("name");
+        var unboxed = new Properties("player").addProperty("name", "Ann").addBoolean("alive", true).addLong("score", 3);
+        var boxed = new Properties("player").addProperty("score", 2.5).addProperty("alive", true);
+
+        assertTrue(unboxed.isNumber(score));
+        assertEquals(3f, unboxed.getFloat(score));
+        assertTrue(boxed.isNumber(score));
+        assertEquals(2.5f, boxed.getFloat(score));
+
+        assertFalse(unboxed.isNumber(alive));
+        assertFalse(boxed.isNumber(alive));
+        assertFalse(unboxed.isNumber(name));
+        assertFalse(boxed.isNumber(name));
+    }
+
+    @Test
+    void snapshotsKeepTheValuesTheyWereTaken() {
+        var player = new Properties("player").addProperty("name", "Ann").addLong("score", 1);
+        var snapshot = player.snapshot();
+
+        player.addLong("score", 2);
+        player.addProperty("role", "Doctor");
+        player.removeProperty("name");
+
+        assertTrue(snapshot.isSnapshot());
+        assertFalse(player.isSnapshot());
+        assertEquals(1L, snapshot.getLong("score"));
+        assertEquals("Ann", snapshot.getProperty("name"));
+        assertFalse(snapshot.containsProperty("role"));
+        assertEquals(2L, player.getLong("score"));
+        assertSame(snapshot, snapshot.snapshot());
+    }
+
+    @Test
+    void snapshotsAreReadOnly() {
+        var snapshot = new Properties("player").addProperty("name", "Ann").snapshot();
+
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.addProperty("name", "Bob"));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.addLong("score", 1));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.removeProperty("name"));
+        assertEquals("Ann", snapshot.getProperty("name"));
+    }
+
+    @Test
+    void tellsEachListenerOnceAboutEveryWrite() {
+        var player = new Properties("player");
+        var changes = new ArrayList<String>();
+        PropertyListener listener = (properties, propertyName) -> {
+            assertSame(player, properties);
+            changes.add(propertyName);
+        };
+        player.addListener(listener);
+        player.addListener(listener);
+
+        player.addProperty("name", "Ann").addLong("score", 1).addBoolean("alive", true);
+        player.addProperties(Map.of("role", "Doctor"));
+        player.removeProperty("score");
+        assertEquals(List.of("name", "score", "alive", "role", "score"), changes);
+
+        player.removeListener(listener);
+        player.addLong("score", 2);
+        assertEquals(5, changes.size());
+    }
+
+    @Test
+    void tracksWhichPropertiesChangedSinceAVersion() {
+        var player = new Properties("player").addProperty("name", "Ann").addLong("score", 1);
+        var version = player.version();
+        assertFalse(player.changedSince(version, Set.of("name", "score")));
+
+        player.addProperty("role", "Doctor");
+        player.addProperty("name", player.getProperty("name"));
+        player.addLong("score", 1);
+        assertFalse(player.changedSince(version, Set.of("name", "score")));
+        assertTrue(player.changedSince(version, Set.of("role")));
+
+        player.addLong("score", 2);
+        assertTrue(player.changedSince(version, Set.of("name", "score")));
+    }
+}
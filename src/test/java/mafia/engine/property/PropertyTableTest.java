@@ -0,0 +1,122 @@
+package mafia.engine.property;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import mafia.engine.property.PropertyTable.Column;
+import mafia.engine.property.PropertyTable.Selection;
+
+class PropertyTableTest {
+
+    private enum State { ALIVE, DEAD }
+
+    private record Row(Properties properties) implements PropertyHolder {
+        @Override
+        public Properties getProperties() {
+            return properties;
+        }
+    }
+
+    private static final Selection ALIVE = new Selection.Equals(List.of("state"), "ALIVE");
+    private static final Selection GOOD = new Selection.Equals(List.of("alignment"), "Good");
+    private static final Selection VOTED_OUT = new Selection.Flag(List.of("votedOut"));
+    private static final Selection DOCTOR = new Selection.Equals(List.of("role", "name"), "Doctor");
+    private static final Set<String> IDENTIFIERS = Set.of("player", "ALIVE", "Good", "Doctor");
+
+    private final List<Row> rows = new ArrayList<>();
+    private final Properties doctor = new Properties("role").addProperty("name", "Doctor");
+    private final PropertyTable<Row> table;
+
+    PropertyTableTest() {
+        var killer = new Properties("role").addProperty("name", "Killer");
+        for (int i = 0; i < 5; i++) {
+            rows.add(new Row(new Properties("player")
+                .addProperty("state", i % 2 == 0 ? State.ALIVE : State.DEAD)
+                .addProperty("alignment", i < 3 ? "Good" : "Evil")
+                .addProperty("votedOut", i == 4)
+                .addProperty("role", new Row(i == 1 ? doctor : killer))));
+        }
+        table = new PropertyTable<>(rows, List.of(
+            Column.enumeration(State.class, "state"),
+            Column.symbol("alignment"),
+            Column.flag("votedOut"),
+            Column.symbol("role", "name")
+        ));
+    }
+
+    @Test
+    void selectsWithTheColumns() {
+        assertEquals(bits(0, 2, 4), table.select(ALIVE, IDENTIFIERS));
+        assertEquals(bits(0, 2), table.select(new Selection.And(ALIVE, GOOD), IDENTIFIERS));
+        assertEquals(bits(0, 1, 2, 4), table.select(new Selection.Or(GOOD, VOTED_OUT), IDENTIFIERS));
+        assertEquals(bits(1, 3), table.select(new Selection.Not(ALIVE), IDENTIFIERS));
+        assertEquals(bits(1), table.select(DOCTOR, IDENTIFIERS));
+    }
+
+    @Test
+    void followsWritesToRowsAndNestedHolders() {
+        table.select(DOCTOR, IDENTIFIERS);
+        rows.get(0).properties().addProperty("state", State.DEAD);
+        rows.get(3).properties().addProperty("alignment", "Good");
+        doctor.addProperty("name", "Nurse");
+
+        assertEquals(bits(2, 4), table.select(ALIVE, IDENTIFIERS));
+        assertEquals(bits(0, 1, 2, 3), table.select(GOOD, IDENTIFIERS));
+        assertEquals(bits(), table.select(DOCTOR, IDENTIFIERS));
+    }
+
+    @Test
+    void declinesIrregularRows() {
+        rows.get(2).properties().addProperty("votedOut", "yes");
+        assertEquals(null, table.select(VOTED_OUT, IDENTIFIERS));
+        assertEquals(null, table.select(new Selection.Not(VOTED_OUT), IDENTIFIERS));
+        assertEquals(bits(0, 2, 4), table.select(ALIVE, IDENTIFIERS));
+
+        rows.get(2).properties().addProperty("votedOut", false);
+        assertEquals(bits(4), table.select(VOTED_OUT, IDENTIFIERS));
+    }
+
+    @Test
+    void declinesShadowedIdentifiers() {
+        rows.get(1).properties().addProperty("Good", "Evil");
+        assertEquals(null, table.select(GOOD, IDENTIFIERS));
+        assertEquals(bits(0, 2, 4), table.select(ALIVE, Set.of("player", "ALIVE")));
+    }
+
+    @Test
+    void answersNothingOnceDetached() {
+        var changes = new int[1];
+        var counting = new PropertyTable<>(rows, List.of(Column.symbol("role", "name"))) {
+            @Override
+            public synchronized void propertyChanged(Properties properties, String propertyName) {
+                changes[0]++;
+                super.propertyChanged(properties, propertyName);
+            }
+        };
+        counting.select(DOCTOR, IDENTIFIERS);
+        doctor.addProperty("name", "Nurse");
+        assertEquals(1, changes[0]);
+
+        counting.detach();
+        assertEquals(null, counting.select(DOCTOR, IDENTIFIERS));
+        // neither the rows nor the holders reached from them call the table any more
+        rows.get(0).properties().addProperty("state", State.DEAD);
+        doctor.addProperty("name", "Doctor");
+        assertEquals(1, changes[0]);
+        assertEquals(rows, counting);
+    }
+
+    private static BitSet bits(int... indices) {
+        var bits = new BitSet();
+        for (var i : indices) {
+            bits.set(i);
+        }
+        return bits;
+    }
+}